@@ -1,29 +1,60 @@
 package org.green.jmh.cab;
 
 import org.green.cab.Cab;
-import org.green.cab.CabBackingOff;
-import org.green.cab.CabBlocking;
-import org.green.cab.CabYielding;
 import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 
+/**
+ * The matrix of the Cab's parameters shared by the scalability benchmarks. The backing off parameters take effect
+ * for the BACKING_OFF strategy only and can be varied from the command line, e.g.:
+ * <pre>
+ *     ./gradlew jmh -Pinclude=".*EntryProducerBenchmark.*" -Pparams="strategy=BACKING_OFF;maxSpins=100,1000,10000"
+ * </pre>
+ * The payload tokens are burnt with Blackhole.consumeCPU() by the producers and the consumer for every entry or
+ * message, which emulates the cost of the payload's mutation.
+ */
 public class CabBenchmark {
-    private static final int CAB_SIZE = 10_000;
-    private static final int BACKING_OFF_MAX_SPINS = 1_000;
-    private static final int BACKING_OFF_MAX_YIELDS = 10_000;
 
-    private abstract static class CabSetup {
+    @State(Scope.Benchmark) // the parameters must be declared by a state class, the subclasses are the states
+    public abstract static class CabMatrix {
+        @Param({"BUSY_SPINNING", "YIELDING", "BACKING_OFF", "BLOCKING"})
+        CabStrategy strategy;
+
+        @Param({"1024", "16384"})
+        int bufferSize;
+
+        @Param({"1000"})
+        long maxSpins;
+
+        @Param({"10000"})
+        long maxYields;
+
+        @Param({"0", "100"})
+        long payloadTokens;
+
         Cab cab;
 
+        Cab newCab() {
+            return strategy.newCab(bufferSize, maxSpins, maxYields);
+        }
+    }
+
+    /**
+     * The threads of a benchmark are producers or senders, the entries and messages are consumed by a background
+     * consumer.
+     */
+    @State(Scope.Benchmark)
+    public static class ProducerSideSetup extends CabMatrix {
         private NilConsumer consumer;
 
         @Setup(Level.Trial)
         public void doSetup() {
-            cab = prepareCab();
-            consumer = new NilConsumer(cab);
+            cab = newCab();
+            consumer = new NilConsumer(cab, payloadTokens);
             consumer.start();
         }
 
@@ -31,31 +62,5 @@ public class CabBenchmark {
         public void doTearDown() throws InterruptedException {
             consumer.close();
         }
-
-        protected abstract Cab prepareCab();
-    }
-
-    @State(Scope.Benchmark)
-    public static class CabBlockingSetup extends CabSetup {
-        @Override
-        protected Cab prepareCab() {
-            return new CabBlocking(CAB_SIZE);
-        }
-    }
-
-    @State(Scope.Benchmark)
-    public static class CabBackingOffSetup extends CabSetup {
-        @Override
-        protected Cab prepareCab() {
-            return new CabBackingOff(CAB_SIZE, BACKING_OFF_MAX_SPINS, BACKING_OFF_MAX_YIELDS);
-        }
-    }
-
-    @State(Scope.Benchmark)
-    public static class CabYieldingSetup extends CabSetup {
-        @Override
-        protected Cab prepareCab() {
-            return new CabYielding(CAB_SIZE);
-        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,49 @@
+package org.green.jmh.cab;
+
+import org.green.cab.Cab;
+import org.green.cab.CabBackingOff;
+import org.green.cab.CabBlocking;
+import org.green.cab.CabBusySpinning;
+import org.green.cab.CabYielding;
+
+import java.util.function.Supplier;
+
+public enum CabStrategy {
+    BUSY_SPINNING {
+        @Override
+        public <E> Cab<E, Object> newCab(
+                final int bufferSize, final long maxSpins, final long maxYields, final Supplier<E> supplier) {
+            return new CabBusySpinning<>(bufferSize, supplier);
+        }
+    },
+
+    YIELDING {
+        @Override
+        public <E> Cab<E, Object> newCab(
+                final int bufferSize, final long maxSpins, final long maxYields, final Supplier<E> supplier) {
+            return new CabYielding<>(bufferSize, supplier);
+        }
+    },
+
+    BACKING_OFF {
+        @Override
+        public <E> Cab<E, Object> newCab(
+                final int bufferSize, final long maxSpins, final long maxYields, final Supplier<E> supplier) {
+            return new CabBackingOff<>(bufferSize, maxSpins, maxYields, supplier);
+        }
+    },
+
+    BLOCKING {
+        @Override
+        public <E> Cab<E, Object> newCab(
+                final int bufferSize, final long maxSpins, final long maxYields, final Supplier<E> supplier) {
+            return new CabBlocking<>(bufferSize, supplier);
+        }
+    };
+
+    public Cab newCab(final int bufferSize, final long maxSpins, final long maxYields) {
+        return newCab(bufferSize, maxSpins, maxYields, null);
+    }
+
+    public abstract <E> Cab<E, Object> newCab(int bufferSize, long maxSpins, long maxYields, Supplier<E> supplier);
+}
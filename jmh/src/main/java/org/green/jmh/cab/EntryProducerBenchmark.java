@@ -5,93 +5,112 @@ import org.green.cab.ConsumerInterruptedException;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.infra.Blackhole;
 
+/**
+ * The scalability matrix of entry processing. The producer's side is measured with 1, 2, 4 and 8 producer threads
+ * (or with -Pthreads=max for all the cores), the consumer's side is measured with the number of background
+ * producers.
+ */
 @Fork(3)
 @Measurement(iterations = 3)
 @Warmup(iterations = 3)
 @BenchmarkMode(Mode.Throughput)
 public class EntryProducerBenchmark extends CabBenchmark {
 
+    @State(Scope.Benchmark)
+    public static class ConsumerSideSetup extends CabMatrix {
+        @Param({"1", "2", "4"})
+        int producers;
+
+        private NilProducer[] backgroundProducers;
+
+        @Setup(Level.Trial)
+        public void doSetup() {
+            cab = newCab();
+            backgroundProducers = new NilProducer[producers];
+            for (int i = 0; i < producers; i++) {
+                backgroundProducers[i] = new NilProducer(cab, false, payloadTokens);
+                backgroundProducers[i].start();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() throws InterruptedException {
+            cab.consumerInterrupt();
+            for (final NilProducer producer : backgroundProducers) {
+                producer.close();
+            }
+        }
+    }
+
     @Benchmark
     @Threads(1)
-    public void oneEntryProducerWithCabBlocking(
-            final CabBlockingSetup cabSetup, final Blackhole blackhole)
+    public void oneEntryProducer(final ProducerSideSetup setup, final Blackhole blackhole)
             throws ConsumerInterruptedException, InterruptedException {
 
-        final Cab cab = cabSetup.cab;
-
-        final long ps = cab.producerNext();
-        blackhole.consume(cab.getEntry(ps));
-        cab.producerCommit(ps);
+        produce(setup, blackhole);
     }
 
     @Benchmark
     @Threads(2)
-    public void twoEntryProducersWithCabBlocking(
-            final CabBlockingSetup cabSetup, final Blackhole blackhole)
+    public void twoEntryProducers(final ProducerSideSetup setup, final Blackhole blackhole)
             throws ConsumerInterruptedException, InterruptedException {
 
-        final Cab cab = cabSetup.cab;
-
-        final long ps = cab.producerNext();
-        blackhole.consume(cab.getEntry(ps));
-        cab.producerCommit(ps);
+        produce(setup, blackhole);
     }
 
     @Benchmark
-    @Threads(1)
-    public void oneEntryProducerWithCabBackingOff(
-            final CabBackingOffSetup cabSetup, final Blackhole blackhole)
+    @Threads(4)
+    public void fourEntryProducers(final ProducerSideSetup setup, final Blackhole blackhole)
             throws ConsumerInterruptedException, InterruptedException {
 
-        final Cab cab = cabSetup.cab;
-
-        final long ps = cab.producerNext();
-        blackhole.consume(cab.getEntry(ps));
-        cab.producerCommit(ps);
+        produce(setup, blackhole);
     }
 
     @Benchmark
-    @Threads(2)
-    public void twoEntryProducersWithCabBackingOff(
-            final CabBackingOffSetup cabSetup, final Blackhole blackhole)
+    @Threads(8)
+    public void eightEntryProducers(final ProducerSideSetup setup, final Blackhole blackhole)
             throws ConsumerInterruptedException, InterruptedException {
 
-        final Cab cab = cabSetup.cab;
-
-        final long ps = cab.producerNext();
-        blackhole.consume(cab.getEntry(ps));
-        cab.producerCommit(ps);
+        produce(setup, blackhole);
     }
 
     @Benchmark
-    @Threads(1)
-    public void oneEntryProducerWithCabYielding(
-            final CabBackingOffSetup cabSetup, final Blackhole blackhole)
-            throws ConsumerInterruptedException, InterruptedException {
-
-        final Cab cab = cabSetup.cab;
-
-        final long ps = cab.producerNext();
-        blackhole.consume(cab.getEntry(ps));
-        cab.producerCommit(ps);
+    @Threads(1) // the only consumer
+    public void entryConsumer(final ConsumerSideSetup setup, final Blackhole blackhole)
+            throws InterruptedException {
+
+        final Cab cab = setup.cab;
+
+        final long cs = cab.consumerNext();
+        blackhole.consume(cab.getEntry(cs));
+        if (setup.payloadTokens > 0) {
+            Blackhole.consumeCPU(setup.payloadTokens);
+        }
+        cab.consumerCommit(cs);
     }
 
-    @Benchmark
-    @Threads(2)
-    public void twoEntryProducersWithCabYielding(
-            final CabYieldingSetup cabSetup, final Blackhole blackhole)
+    private static void produce(final ProducerSideSetup setup, final Blackhole blackhole)
             throws ConsumerInterruptedException, InterruptedException {
 
-        final Cab cab = cabSetup.cab;
+        final Cab cab = setup.cab;
 
         final long ps = cab.producerNext();
         blackhole.consume(cab.getEntry(ps));
+        if (setup.payloadTokens > 0) {
+            Blackhole.consumeCPU(setup.payloadTokens);
+        }
         cab.producerCommit(ps);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,101 @@
+package org.green.jmh.cab;
+
+import org.green.cab.Cab;
+import org.green.cab.ConsumerInterruptedException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency from producerNext() of an entry up to the moment the consumer has received it. The entries
+ * are produced at a fixed offered load, so, the percentiles are comparable between the strategies, while the pauses
+ * between the entries let the backing off and blocking consumers fall asleep.
+ * <p>
+ * The busy spinning consumer occupies a core, so, it must be run on a machine with at least two free cores.
+ */
+@Fork(3)
+@Measurement(iterations = 3)
+@Warmup(iterations = 3)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LatencyBenchmark {
+    private static final int CAB_SIZE = 1_024;
+    private static final int BACKING_OFF_MAX_SPINS = 1_000;
+    private static final int BACKING_OFF_MAX_YIELDS = 10_000;
+
+    @State(Scope.Benchmark)
+    public static class LatencySetup {
+        @Param({"BUSY_SPINNING", "YIELDING", "BACKING_OFF", "BLOCKING"})
+        CabStrategy strategy;
+
+        @Param({"1000", "10000", "100000"}) // 1M, 100K and 10K entries per second
+        long intervalNanos;
+
+        Cab cab;
+        SequenceConsumer consumer;
+
+        private Pacer pacer;
+
+        @Setup(Level.Trial)
+        public void doSetup() {
+            cab = strategy.newCab(CAB_SIZE, BACKING_OFF_MAX_SPINS, BACKING_OFF_MAX_YIELDS);
+            consumer = new SequenceConsumer(cab);
+            consumer.start();
+            pacer = new Pacer(intervalNanos);
+        }
+
+        @Setup(Level.Invocation)
+        public void doPace() { // the waiting isn't measured
+            pacer.await();
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() throws InterruptedException {
+            consumer.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.SampleTime)
+    public long oneWayLatency(final LatencySetup setup)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        return deliver(setup);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 100)
+    @Measurement(iterations = 1_000)
+    public long coldOneWayLatency(final LatencySetup setup) // the consumer has waited since the previous iteration
+            throws ConsumerInterruptedException, InterruptedException {
+
+        return deliver(setup);
+    }
+
+    private static long deliver(final LatencySetup setup)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        final Cab cab = setup.cab;
+
+        final long ps = cab.producerNext();
+        cab.producerCommit(ps);
+
+        setup.consumer.awaitConsumed(ps);
+        return ps;
+    }
+}
@@ -0,0 +1,220 @@
+package org.green.jmh.cab;
+
+import org.green.cab.Cab;
+import org.green.cab.CabLatencyHistogram;
+import org.green.cab.ConsumerInterruptedException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An open-loop load generator. The producers publish entries and the senders send messages at fixed rates, each
+ * event carries the time it was intended to be published at, and the consumer records the latency from that time.
+ * So, a producer blocked by a full buffer doesn't postpone the following events and the queueing delay near
+ * the saturation is reported instead of being hidden (coordinated omission).
+ * <p>
+ * The events are pre-allocated, so, the generator doesn't allocate in steady state. Usage:
+ * <pre>
+ *     LoadGenerator [strategy=BACKING_OFF] [bufferSize=1024] [maxSpins=1000] [maxYields=10000]
+ *                   [producers=1] [rate=100000] [senders=0] [messageRatio=0.01]
+ *                   [warmupSeconds=5] [durationSeconds=10]
+ * </pre>
+ * The rate is the total number of entries per second, the senders send messageRatio * rate messages per second.
+ */
+public class LoadGenerator {
+    private static final long MAX_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99, 100};
+
+    private final Cab<Event, Object> cab;
+    private final Publisher[] publishers;
+    private final Consumer consumer;
+
+    public LoadGenerator(final Map<String, String> options) {
+        final CabStrategy strategy = CabStrategy.valueOf(option(options, "strategy", "BACKING_OFF"));
+        final int bufferSize = Integer.parseInt(option(options, "bufferSize", "1024"));
+        final long maxSpins = Long.parseLong(option(options, "maxSpins", "1000"));
+        final long maxYields = Long.parseLong(option(options, "maxYields", "10000"));
+        final int producers = Integer.parseInt(option(options, "producers", "1"));
+        final double rate = Double.parseDouble(option(options, "rate", "100000"));
+        final int senders = Integer.parseInt(option(options, "senders", "0"));
+        final double messageRatio = Double.parseDouble(option(options, "messageRatio", "0.01"));
+        final long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option(options, "warmupSeconds", "5")));
+        final long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option(options, "durationSeconds", "10")));
+
+        System.out.println("strategy=" + strategy + " bufferSize=" + bufferSize +
+                " maxSpins=" + maxSpins + " maxYields=" + maxYields +
+                " producers=" + producers + " rate=" + rate +
+                " senders=" + senders + " messageRatio=" + messageRatio +
+                " warmupSeconds=" + TimeUnit.NANOSECONDS.toSeconds(warmupNanos) +
+                " durationSeconds=" + TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+
+        cab = strategy.newCab(bufferSize, maxSpins, maxYields, Event::new);
+
+        final long startTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100); // let the threads start
+        final long measurementStartTime = startTime + warmupNanos;
+        final long endTime = measurementStartTime + durationNanos;
+
+        publishers = new Publisher[producers + senders];
+        long expectedEvents = 0;
+        for (int i = 0; i < producers; i++) {
+            publishers[i] = new Publisher("Producer#" + i, cab, false,
+                    (long) (TimeUnit.SECONDS.toNanos(1) * producers / rate), startTime, endTime);
+            expectedEvents += publishers[i].eventCount;
+        }
+        for (int i = 0; i < senders; i++) {
+            publishers[producers + i] = new Publisher("Sender#" + i, cab, true,
+                    (long) (TimeUnit.SECONDS.toNanos(1) * senders / (rate * messageRatio)), startTime, endTime);
+            expectedEvents += publishers[producers + i].eventCount;
+        }
+
+        consumer = new Consumer(cab, expectedEvents, measurementStartTime);
+    }
+
+    public void run() throws InterruptedException {
+        consumer.start();
+        for (final Publisher publisher : publishers) {
+            publisher.start();
+        }
+
+        for (final Publisher publisher : publishers) {
+            publisher.join();
+        }
+        consumer.join();
+
+        final double seconds = (consumer.lastTime - consumer.measurementStartTime) / 1e9;
+        final long measured = consumer.entryLatencies.totalCount() + consumer.messageLatencies.totalCount();
+
+        System.out.printf("throughput: %.0f events/s%n", measured / seconds);
+        report("entries", consumer.entryLatencies);
+        report("messages", consumer.messageLatencies);
+    }
+
+    private static void report(final String name, final CabLatencyHistogram histogram) {
+        if (histogram.totalCount() == 0) {
+            return;
+        }
+
+        System.out.printf("%s: count %d, mean %.0f ns%n", name, histogram.totalCount(), histogram.mean());
+        for (final double percentile : PERCENTILES) {
+            System.out.printf("\tp%-6s %12d ns%n", percentile, histogram.valueAtPercentile(percentile));
+        }
+    }
+
+    private static String option(final Map<String, String> options, final String name, final String defaultValue) {
+        final String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    static final class Event {
+        long intendedTime;
+    }
+
+    static final class Publisher extends Thread {
+        private final Cab<Event, Object> cab;
+        private final boolean messages;
+        private final long intervalNanos;
+        private final long startTime;
+
+        final long eventCount;
+
+        Publisher(final String name, final Cab<Event, Object> cab, final boolean messages,
+                  final long intervalNanos, final long startTime, final long endTime) {
+            super(name);
+            this.cab = cab;
+            this.messages = messages;
+            this.intervalNanos = Math.max(intervalNanos, 1);
+            this.startTime = startTime;
+            this.eventCount = (endTime - startTime) / this.intervalNanos;
+        }
+
+        @Override
+        public void run() {
+            final Event[] messagesToSend = {new Event(), new Event()}; // a message is consumed when the next one
+            // is sent, so, two of them are enough to be reused
+
+            try {
+                for (long i = 0; i < eventCount; i++) {
+                    final long intendedTime = startTime + i * intervalNanos;
+                    awaitTime(intendedTime); // the schedule never shifts, so, late events are published at once
+
+                    if (messages) {
+                        final Event message = messagesToSend[(int) (i & 1)];
+                        message.intendedTime = intendedTime;
+                        cab.send(message);
+                    } else {
+                        final long sequence = cab.producerNext();
+                        cab.getEntry(sequence).intendedTime = intendedTime;
+                        cab.producerCommit(sequence);
+                    }
+                }
+            } catch (final ConsumerInterruptedException | InterruptedException e) {
+                e.printStackTrace(System.err);
+            }
+        }
+
+        private static void awaitTime(final long time) {
+            long now;
+            while ((now = System.nanoTime()) < time) {
+                if (time - now > MAX_SPIN_NANOS) {
+                    LockSupport.parkNanos(time - now - MAX_SPIN_NANOS);
+                }
+            }
+        }
+    }
+
+    static final class Consumer extends Thread {
+        private final Cab<Event, Object> cab;
+        private final long expectedEvents;
+
+        final long measurementStartTime;
+        final CabLatencyHistogram entryLatencies = new CabLatencyHistogram();
+        final CabLatencyHistogram messageLatencies = new CabLatencyHistogram();
+        long lastTime;
+
+        Consumer(final Cab<Event, Object> cab, final long expectedEvents, final long measurementStartTime) {
+            super(Consumer.class.getSimpleName());
+            this.cab = cab;
+            this.expectedEvents = expectedEvents;
+            this.measurementStartTime = measurementStartTime;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (long i = 0; i < expectedEvents; i++) {
+                    final long sequence = cab.consumerNext();
+
+                    final boolean message = sequence == Cab.MESSAGE_RECEIVED_SEQUENCE;
+                    final Event event = message ? (Event) cab.getMessage() : cab.getEntry(sequence);
+                    final long intendedTime = event.intendedTime;
+
+                    cab.consumerCommit(sequence);
+
+                    final long now = System.nanoTime();
+                    if (intendedTime >= measurementStartTime) {
+                        (message ? messageLatencies : entryLatencies).record(now - intendedTime);
+                        lastTime = now;
+                    }
+                }
+            } catch (final InterruptedException ignore) {
+                cab.consumerInterrupt();
+            }
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> options = new HashMap<>();
+        for (final String arg : args) {
+            final int eqIdx = arg.indexOf('=');
+            if (eqIdx < 1) {
+                System.err.println("Cannot recognize the option: " + arg);
+                return;
+            }
+            options.put(arg.substring(0, eqIdx), arg.substring(eqIdx + 1));
+        }
+
+        new LoadGenerator(options).run();
+    }
+}
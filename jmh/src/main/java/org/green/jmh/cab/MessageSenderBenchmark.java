@@ -1,72 +1,111 @@
 package org.green.jmh.cab;
 
+import org.green.cab.Cab;
 import org.green.cab.ConsumerInterruptedException;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.infra.Blackhole;
 
+/**
+ * The scalability matrix of message processing. The sender's side is measured with 1, 2, 4 and 8 sender threads
+ * (or with -Pthreads=max for all the cores), the consumer's side is measured with the number of background senders.
+ */
 @Fork(3)
 @Measurement(iterations = 3)
 @Warmup(iterations = 3)
 @BenchmarkMode(Mode.Throughput)
 public class MessageSenderBenchmark extends CabBenchmark {
 
+    @State(Scope.Benchmark)
+    public static class ConsumerSideSetup extends CabMatrix {
+        @Param({"1", "2", "4"})
+        int senders;
+
+        private NilProducer[] backgroundSenders;
+
+        @Setup(Level.Trial)
+        public void doSetup() {
+            cab = newCab();
+            backgroundSenders = new NilProducer[senders];
+            for (int i = 0; i < senders; i++) {
+                backgroundSenders[i] = new NilProducer(cab, true, payloadTokens);
+                backgroundSenders[i].start();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() throws InterruptedException {
+            cab.consumerInterrupt();
+            for (final NilProducer sender : backgroundSenders) {
+                sender.close();
+            }
+        }
+    }
+
     @Benchmark
     @Threads(1)
-    public void oneMessageSenderWithCabBlocking(
-            final CabBlockingSetup cabSetup, final Blackhole blackhole)
+    public void oneMessageSender(final ProducerSideSetup setup)
             throws ConsumerInterruptedException, InterruptedException {
 
-        cabSetup.cab.send(this);
+        send(setup);
     }
 
     @Benchmark
     @Threads(2)
-    public void twoMessageSendersWithCabBlocking(
-            final CabBlockingSetup cabSetup, final Blackhole blackhole)
+    public void twoMessageSenders(final ProducerSideSetup setup)
             throws ConsumerInterruptedException, InterruptedException {
 
-        cabSetup.cab.send(this);
+        send(setup);
     }
 
     @Benchmark
-    @Threads(1)
-    public void oneMessageSenderWithCabBackingOff(
-            final CabBackingOffSetup cabSetup, final Blackhole blackhole)
+    @Threads(4)
+    public void fourMessageSenders(final ProducerSideSetup setup)
             throws ConsumerInterruptedException, InterruptedException {
 
-        cabSetup.cab.send(this);
+        send(setup);
     }
 
     @Benchmark
-    @Threads(2)
-    public void twoMessageSendersWithCabBackingOff(
-            final CabBackingOffSetup cabSetup, final Blackhole blackhole)
+    @Threads(8)
+    public void eightMessageSenders(final ProducerSideSetup setup)
             throws ConsumerInterruptedException, InterruptedException {
 
-        cabSetup.cab.send(this);
+        send(setup);
     }
 
     @Benchmark
-    @Threads(1)
-    public void oneMessageSenderWithCabYielding(
-            final CabYieldingSetup cabSetup, final Blackhole blackhole)
-            throws ConsumerInterruptedException, InterruptedException {
+    @Threads(1) // the only consumer
+    public void messageConsumer(final ConsumerSideSetup setup, final Blackhole blackhole)
+            throws InterruptedException {
 
-        cabSetup.cab.send(this);
+        final Cab cab = setup.cab;
+
+        final long cs = cab.consumerNext();
+        blackhole.consume(cab.getMessage());
+        if (setup.payloadTokens > 0) {
+            Blackhole.consumeCPU(setup.payloadTokens);
+        }
+        cab.consumerCommit(cs);
     }
 
-    @Benchmark
-    @Threads(2)
-    public void twoMessageSendersWithCabYielding(
-            final CabYieldingSetup cabSetup, final Blackhole blackhole)
+    private void send(final ProducerSideSetup setup)
             throws ConsumerInterruptedException, InterruptedException {
 
-        cabSetup.cab.send(this);
+        if (setup.payloadTokens > 0) {
+            Blackhole.consumeCPU(setup.payloadTokens);
+        }
+        setup.cab.send(this);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,186 @@
+package org.green.jmh.cab;
+
+import org.green.cab.Cab;
+import org.green.cab.ConsumerInterruptedException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs entry producers and message senders against the same Cab at the same time, as in production traffic,
+ * where a small share of control messages is interleaved with the entries. The pairs of groups are compared:
+ * <ul>
+ *     <li>entries vs mixed - how the paced message sends slow the entries' throughput down, since the consumer
+ *     checks the message on every spin</li>
+ *     <li>messageDelivery vs messageDeliveryUnderLoad - how the entries' load delays the delivery of a message
+ *     to the consumer</li>
+ * </ul>
+ */
+@Fork(3)
+@Measurement(iterations = 3)
+@Warmup(iterations = 3)
+public class MixedTrafficBenchmark {
+    private static final int CAB_SIZE = 16_384;
+    private static final int BACKING_OFF_MAX_SPINS = 1_000;
+    private static final int BACKING_OFF_MAX_YIELDS = 10_000;
+
+    @State(Scope.Group)
+    public static class MixedSetup {
+        @Param({"BUSY_SPINNING", "YIELDING", "BACKING_OFF", "BLOCKING"})
+        CabStrategy strategy;
+
+        Cab cab;
+        MessageCountingConsumer consumer;
+
+        @Setup(Level.Trial)
+        public void doSetup() {
+            cab = strategy.newCab(CAB_SIZE, BACKING_OFF_MAX_SPINS, BACKING_OFF_MAX_YIELDS);
+            consumer = new MessageCountingConsumer(cab);
+            consumer.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() throws InterruptedException {
+            consumer.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SenderPacing {
+        @Param({"10000"}) // 100K messages per second, about 1% of the entries
+        long messageIntervalNanos;
+
+        private Pacer pacer;
+
+        @Setup(Level.Trial)
+        public void doSetup() {
+            pacer = new Pacer(messageIntervalNanos);
+        }
+
+        @Setup(Level.Invocation)
+        public void doPace() { // the waiting isn't measured
+            pacer.await();
+        }
+    }
+
+    @Benchmark
+    @Group("entries")
+    @GroupThreads(2)
+    @BenchmarkMode(Mode.Throughput)
+    public void entriesProducer(final MixedSetup setup) throws ConsumerInterruptedException, InterruptedException {
+        produce(setup.cab);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    @BenchmarkMode(Mode.Throughput)
+    public void mixedProducer(final MixedSetup setup) throws ConsumerInterruptedException, InterruptedException {
+        produce(setup.cab);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    @BenchmarkMode(Mode.Throughput)
+    public void mixedSender(final MixedSetup setup, final SenderPacing pacing)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        setup.cab.send(this);
+    }
+
+    @Benchmark
+    @Group("messageDelivery")
+    @GroupThreads(1)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long messageDeliverySender(final MixedSetup setup, final SenderPacing pacing)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        return deliver(setup, this);
+    }
+
+    @Benchmark
+    @Group("messageDeliveryUnderLoad")
+    @GroupThreads(2)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void messageDeliveryUnderLoadProducer(final MixedSetup setup)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        produce(setup.cab);
+    }
+
+    @Benchmark
+    @Group("messageDeliveryUnderLoad")
+    @GroupThreads(1)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long messageDeliveryUnderLoadSender(final MixedSetup setup, final SenderPacing pacing)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        return deliver(setup, this);
+    }
+
+    private static void produce(final Cab cab) throws ConsumerInterruptedException, InterruptedException {
+        final long ps = cab.producerNext();
+        cab.producerCommit(ps);
+    }
+
+    private static long deliver(final MixedSetup setup, final Object message)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        final MessageCountingConsumer consumer = setup.consumer;
+
+        final long received = consumer.messagesReceived; // the only sender of the group
+        setup.cab.send(message);
+        while (consumer.messagesReceived == received) { // spin, the waiting is a part of the measured latency
+        }
+        return received;
+    }
+
+    private static class MessageCountingConsumer extends Thread implements AutoCloseable {
+        private final Cab cab;
+
+        volatile long messagesReceived;
+
+        MessageCountingConsumer(final Cab cab) {
+            this.cab = cab;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final long sequence = cab.consumerNext();
+                    cab.consumerCommit(sequence);
+                    if (sequence == Cab.MESSAGE_RECEIVED_SEQUENCE) {
+                        messagesReceived++; // the only writer
+                    }
+                }
+            } catch (final InterruptedException ignore) {
+                cab.consumerInterrupt();
+            }
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            interrupt();
+            join();
+        }
+    }
+}
@@ -1,19 +1,30 @@
 package org.green.jmh.cab;
 
 import org.green.cab.Cab;
+import org.openjdk.jmh.infra.Blackhole;
 
 public class NilConsumer extends Thread implements AutoCloseable {
     private final Cab cab;
+    private final long payloadTokens;
 
     public NilConsumer(final Cab cab) {
+        this(cab, 0);
+    }
+
+    public NilConsumer(final Cab cab, final long payloadTokens) {
         this.cab = cab;
+        this.payloadTokens = payloadTokens;
     }
 
     @Override
     public void run() {
         try {
             while (true) {
-                cab.consumerCommit(cab.consumerNext());
+                final long sequence = cab.consumerNext();
+                if (payloadTokens > 0) {
+                    Blackhole.consumeCPU(payloadTokens);
+                }
+                cab.consumerCommit(sequence);
             }
         } catch (final InterruptedException ignore) {
             cab.consumerInterrupt();
@@ -25,4 +36,4 @@ public class NilConsumer extends Thread implements AutoCloseable {
         interrupt();
         join();
     }
-}
\ No newline at end of file
+}
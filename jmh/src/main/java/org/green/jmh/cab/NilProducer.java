@@ -0,0 +1,48 @@
+package org.green.jmh.cab;
+
+import org.green.cab.Cab;
+import org.green.cab.ConsumerInterruptedException;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Produces entries or sends messages in background until it's closed or the consumer is interrupted.
+ */
+public class NilProducer extends Thread implements AutoCloseable {
+    private final Cab cab;
+    private final boolean messages;
+    private final long payloadTokens;
+
+    public NilProducer(final Cab cab, final boolean messages, final long payloadTokens) {
+        this.cab = cab;
+        this.messages = messages;
+        this.payloadTokens = payloadTokens;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                if (messages) {
+                    if (payloadTokens > 0) {
+                        Blackhole.consumeCPU(payloadTokens);
+                    }
+                    cab.send(this);
+                } else {
+                    final long sequence = cab.producerNext();
+                    if (payloadTokens > 0) {
+                        Blackhole.consumeCPU(payloadTokens);
+                    }
+                    cab.producerCommit(sequence);
+                }
+            }
+        } catch (final ConsumerInterruptedException | InterruptedException ignore) {
+            // the producer is closed
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        interrupt();
+        join();
+    }
+}
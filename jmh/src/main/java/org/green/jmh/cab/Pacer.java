@@ -0,0 +1,24 @@
+package org.green.jmh.cab;
+
+/**
+ * Keeps a fixed offered load by waiting for the next point of a fixed schedule. If the caller falls behind,
+ * the schedule isn't shifted, so, the missed points are passed without any waiting.
+ */
+public class Pacer {
+    private final long intervalNanos;
+
+    private long nextTime;
+
+    public Pacer(final long intervalNanos) {
+        this.intervalNanos = intervalNanos;
+    }
+
+    public void await() {
+        if (nextTime == 0) {
+            nextTime = System.nanoTime();
+        }
+        while (System.nanoTime() < nextTime) { // spin, since parking is too coarse for microsecond intervals
+        }
+        nextTime += intervalNanos;
+    }
+}
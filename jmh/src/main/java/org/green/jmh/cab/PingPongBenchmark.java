@@ -0,0 +1,118 @@
+package org.green.jmh.cab;
+
+import org.green.cab.Cab;
+import org.green.cab.ConsumerInterruptedException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the round trip time of an entry sent through a pair of Cabs: the benchmark's thread produces a ping
+ * to the first Cab, the echo thread consumes it and produces a pong to the second Cab, which is consumed by
+ * the benchmark's thread. So, both the wake-up of the echo thread and the wake-up of the benchmark's thread
+ * are measured.
+ */
+@Fork(3)
+@Measurement(iterations = 3)
+@Warmup(iterations = 3)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PingPongBenchmark {
+    private static final int CAB_SIZE = 1_024;
+    private static final int BACKING_OFF_MAX_SPINS = 1_000;
+    private static final int BACKING_OFF_MAX_YIELDS = 10_000;
+
+    @State(Scope.Benchmark)
+    public static class PingPongSetup {
+        @Param({"BUSY_SPINNING", "YIELDING", "BACKING_OFF", "BLOCKING"})
+        CabStrategy strategy;
+
+        @Param({"1000", "10000", "100000"}) // 1M, 100K and 10K round trips per second
+        long intervalNanos;
+
+        Cab ping;
+        Cab pong;
+
+        private Echo echo;
+        private Pacer pacer;
+
+        @Setup(Level.Trial)
+        public void doSetup() {
+            ping = strategy.newCab(CAB_SIZE, BACKING_OFF_MAX_SPINS, BACKING_OFF_MAX_YIELDS);
+            pong = strategy.newCab(CAB_SIZE, BACKING_OFF_MAX_SPINS, BACKING_OFF_MAX_YIELDS);
+            echo = new Echo(ping, pong);
+            echo.start();
+            pacer = new Pacer(intervalNanos);
+        }
+
+        @Setup(Level.Invocation)
+        public void doPace() { // the waiting isn't measured
+            pacer.await();
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() throws InterruptedException {
+            echo.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(1) // the benchmark's thread is the only consumer of the pongs
+    public long roundTrip(final PingPongSetup setup)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        final Cab ping = setup.ping;
+        final Cab pong = setup.pong;
+
+        final long ps = ping.producerNext();
+        ping.producerCommit(ps);
+
+        final long cs = pong.consumerNext();
+        pong.consumerCommit(cs);
+        return cs;
+    }
+
+    private static class Echo extends Thread implements AutoCloseable {
+        private final Cab ping;
+        private final Cab pong;
+
+        Echo(final Cab ping, final Cab pong) {
+            this.ping = ping;
+            this.pong = pong;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final long cs = ping.consumerNext();
+                    ping.consumerCommit(cs);
+
+                    final long ps = pong.producerNext();
+                    pong.producerCommit(ps);
+                }
+            } catch (final InterruptedException | ConsumerInterruptedException ignore) {
+                ping.consumerInterrupt();
+            }
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            interrupt();
+            join();
+        }
+    }
+}
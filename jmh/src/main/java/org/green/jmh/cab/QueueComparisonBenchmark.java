@@ -0,0 +1,248 @@
+package org.green.jmh.cab;
+
+import org.green.cab.Cab;
+import org.green.cab.CabBackingOff;
+import org.green.cab.CabBlocking;
+import org.green.cab.CabYielding;
+import org.green.cab.ConsumerInterruptedException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the same producer/consumer workload against the Cabs and against the JDK's concurrent queues. With
+ * pre-allocated entries the Cab's producers mutate the entries of the Ring Buffer and the queues' producers offer
+ * one shared entry, otherwise every produced entry is a new object. The allocation rate is reported with:
+ * <pre>
+ *     ./gradlew jmh -Pinclude=".*QueueComparisonBenchmark.*" -Pprof=gc
+ * </pre>
+ * LinkedTransferQueue and ConcurrentLinkedQueue are unbounded, so, their producers are bounded by a counter of the
+ * entries in flight, and yield while there are CAPACITY entries (plus at most one per producer) not taken yet. That
+ * keeps the queues from growing without a bound with many producers, at the cost of one more contended counter.
+ */
+@Fork(3)
+@Measurement(iterations = 3)
+@Warmup(iterations = 3)
+@BenchmarkMode(Mode.Throughput)
+public class QueueComparisonBenchmark {
+    private static final int CAPACITY = 16_384;
+    private static final int BACKING_OFF_MAX_SPINS = 1_000;
+    private static final int BACKING_OFF_MAX_YIELDS = 10_000;
+
+    public enum Implementation {
+        CAB_YIELDING,
+        CAB_BACKING_OFF,
+        CAB_BLOCKING,
+        ARRAY_BLOCKING_QUEUE,
+        LINKED_BLOCKING_QUEUE,
+        LINKED_TRANSFER_QUEUE,
+        CONCURRENT_LINKED_QUEUE
+    }
+
+    public static class Entry {
+        long value;
+    }
+
+    @State(Scope.Benchmark)
+    public static class ComparisonSetup {
+        @Param({
+                "CAB_YIELDING",
+                "CAB_BACKING_OFF",
+                "CAB_BLOCKING",
+                "ARRAY_BLOCKING_QUEUE",
+                "LINKED_BLOCKING_QUEUE",
+                "LINKED_TRANSFER_QUEUE",
+                "CONCURRENT_LINKED_QUEUE"
+        })
+        Implementation implementation;
+
+        @Param({"true", "false"})
+        boolean preallocated;
+
+        Cab<Entry, Object> cab;
+        Queue<Entry> queue;
+        final AtomicInteger queueSize = new AtomicInteger(); // of the unbounded queues only
+        boolean bounded; // LinkedTransferQueue is a BlockingQueue too, but its put() never blocks
+        final Entry sharedEntry = new Entry();
+
+        private Thread consumer;
+
+        @Setup(Level.Trial)
+        public void doSetup() {
+            final Supplier<Entry> supplier = preallocated ? Entry::new : null;
+
+            switch (implementation) {
+                case CAB_YIELDING:
+                    cab = new CabYielding<>(CAPACITY, supplier);
+                    break;
+                case CAB_BACKING_OFF:
+                    cab = new CabBackingOff<>(CAPACITY, BACKING_OFF_MAX_SPINS, BACKING_OFF_MAX_YIELDS, supplier);
+                    break;
+                case CAB_BLOCKING:
+                    cab = new CabBlocking<>(CAPACITY, supplier);
+                    break;
+                case ARRAY_BLOCKING_QUEUE:
+                    queue = new ArrayBlockingQueue<>(CAPACITY);
+                    bounded = true;
+                    break;
+                case LINKED_BLOCKING_QUEUE:
+                    queue = new LinkedBlockingQueue<>(CAPACITY);
+                    bounded = true;
+                    break;
+                case LINKED_TRANSFER_QUEUE:
+                    queue = new LinkedTransferQueue<>();
+                    break;
+                case CONCURRENT_LINKED_QUEUE:
+                    queue = new ConcurrentLinkedQueue<>();
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+
+            consumer = cab != null ? new CabConsumer(cab) : new QueueConsumer(queue, bounded ? null : queueSize);
+            consumer.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() throws InterruptedException {
+            consumer.interrupt();
+            consumer.join();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void oneProducer(final ComparisonSetup setup) throws ConsumerInterruptedException, InterruptedException {
+        produce(setup);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void twoProducers(final ComparisonSetup setup) throws ConsumerInterruptedException, InterruptedException {
+        produce(setup);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void fourProducers(final ComparisonSetup setup) throws ConsumerInterruptedException, InterruptedException {
+        produce(setup);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void eightProducers(final ComparisonSetup setup) throws ConsumerInterruptedException, InterruptedException {
+        produce(setup);
+    }
+
+    private static void produce(final ComparisonSetup setup)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        final Cab<Entry, Object> cab = setup.cab;
+        if (cab != null) {
+            final long ps = cab.producerNext();
+            if (setup.preallocated) {
+                cab.getEntry(ps).value = ps;
+            } else {
+                final Entry entry = new Entry();
+                entry.value = ps;
+                cab.setEntry(ps, entry);
+            }
+            cab.producerCommit(ps);
+            return;
+        }
+
+        final Entry entry = setup.preallocated ? setup.sharedEntry : new Entry();
+
+        final Queue<Entry> queue = setup.queue;
+        if (setup.bounded) {
+            ((BlockingQueue<Entry>) queue).put(entry);
+        } else {
+            final AtomicInteger queueSize = setup.queueSize;
+            while (queueSize.get() >= CAPACITY) { // the backpressure of the bounded queues
+                Thread.yield();
+            }
+            queueSize.incrementAndGet();
+            queue.offer(entry);
+        }
+    }
+
+    private static class CabConsumer extends Thread {
+        private final Cab<Entry, Object> cab;
+
+        long sum; // the entries are read the same way for all the implementations
+
+        CabConsumer(final Cab<Entry, Object> cab) {
+            this.cab = cab;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final long sequence = cab.consumerNext();
+                    if (sequence != Cab.MESSAGE_RECEIVED_SEQUENCE) {
+                        sum += cab.getEntry(sequence).value;
+                    }
+                    cab.consumerCommit(sequence);
+                }
+            } catch (final InterruptedException ignore) {
+                cab.consumerInterrupt();
+            }
+        }
+    }
+
+    private static class QueueConsumer extends Thread {
+        private final Queue<Entry> queue;
+        private final AtomicInteger queueSize; // null for the bounded queues
+
+        long sum; // the entries are read the same way for all the implementations
+
+        QueueConsumer(final Queue<Entry> queue, final AtomicInteger queueSize) {
+            this.queue = queue;
+            this.queueSize = queueSize;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (queueSize == null) {
+                    final BlockingQueue<Entry> blockingQueue = (BlockingQueue<Entry>) queue;
+                    while (true) {
+                        sum += blockingQueue.take().value;
+                    }
+                }
+
+                while (!isInterrupted()) {
+                    final Entry entry = queue.poll();
+                    if (entry != null) {
+                        queueSize.decrementAndGet();
+                        sum += entry.value;
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            } catch (final InterruptedException ignore) {
+                // the consumer is closed
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.green.jmh.cab;
+
+import org.green.cab.Cab;
+
+/**
+ * Consumes the entries and publishes the last consumed sequence, so, a producer can wait for its entry
+ * to be delivered.
+ */
+public class SequenceConsumer extends Thread implements AutoCloseable {
+    private final Cab cab;
+
+    volatile long consumedSequence = -1;
+
+    public SequenceConsumer(final Cab cab) {
+        this.cab = cab;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                final long sequence = cab.consumerNext();
+                if (sequence != Cab.MESSAGE_RECEIVED_SEQUENCE) {
+                    consumedSequence = sequence;
+                }
+                cab.consumerCommit(sequence);
+            }
+        } catch (final InterruptedException ignore) {
+            cab.consumerInterrupt();
+        }
+    }
+
+    public void awaitConsumed(final long sequence) {
+        while (consumedSequence < sequence) { // spin, the waiting is a part of the measured latency
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        interrupt();
+        join();
+    }
+}
@@ -0,0 +1,82 @@
+package org.green.jmh.cab;
+
+import org.green.cab.Cab;
+import org.green.cab.CabYielding;
+import org.green.cab.ConsumerInterruptedException;
+import org.green.cab.SlotLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@Fork(3)
+@Measurement(iterations = 3)
+@Warmup(iterations = 3)
+@BenchmarkMode(Mode.Throughput)
+public class SlotLayoutBenchmark {
+    private static final int CAB_SIZE = 16_384;
+
+    @State(Scope.Benchmark)
+    public static class SlotLayoutSetup {
+        @Param({"DENSE", "SCRAMBLED", "PADDED"})
+        SlotLayout slotLayout;
+
+        Cab cab;
+
+        private NilConsumer consumer;
+
+        @Setup(Level.Trial)
+        public void doSetup() {
+            cab = new CabYielding(CAB_SIZE, slotLayout);
+            consumer = new NilConsumer(cab);
+            consumer.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() throws InterruptedException {
+            consumer.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void twoEntryProducers(final SlotLayoutSetup setup, final Blackhole blackhole)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        produce(setup.cab, blackhole);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void fourEntryProducers(final SlotLayoutSetup setup, final Blackhole blackhole)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        produce(setup.cab, blackhole);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void eightEntryProducers(final SlotLayoutSetup setup, final Blackhole blackhole)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        produce(setup.cab, blackhole);
+    }
+
+    private static void produce(final Cab cab, final Blackhole blackhole)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        final long ps = cab.producerNext();
+        blackhole.consume(cab.getEntry(ps));
+        cab.producerCommit(ps);
+    }
+}
@@ -0,0 +1,139 @@
+package org.green.jmh.cab;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the layouts of the slot states with a minimal single producer single consumer ring shaped as the Cab's
+ * one: FLAG is the former layout, where a producer sets the state to 1 and the consumer resets it to 0 for every
+ * entry, LAP is the current one, where a producer stamps the state with the lap of the sequence and the consumer
+ * never writes it. The consumer drains up to batchSize entries and commits the last one only, the way
+ * consumerAvailableSequence() allows.
+ * <p>
+ * Neither side waits, so, the iterations never hang, and the entries are counted by the produced and the consumed
+ * secondary results, which are the ones to compare:
+ * <pre>
+ *     ./gradlew jmh -Pinclude=".*SlotStampBenchmark.*"
+ * </pre>
+ */
+@Fork(3)
+@Measurement(iterations = 3)
+@Warmup(iterations = 3)
+@BenchmarkMode(Mode.Throughput)
+public class SlotStampBenchmark {
+    private static final int BUFFER_SIZE = 16_384;
+    private static final int INDEX_MASK = BUFFER_SIZE - 1;
+    private static final int INDEX_SHIFT = Integer.numberOfTrailingZeros(BUFFER_SIZE);
+
+    private static final int FLAG_NOT_COMMITTED = 0;
+    private static final int FLAG_COMMITTED = 1;
+    private static final int LAP_NOT_COMMITTED = -1;
+
+    public enum Stamping {
+        FLAG,
+        LAP
+    }
+
+    @State(Scope.Group)
+    public static class RingSetup {
+        @Param({"FLAG", "LAP"})
+        Stamping stamping;
+
+        @Param({"1", "64"})
+        int batchSize;
+
+        final long[] values = new long[BUFFER_SIZE];
+        final AtomicIntegerArray states = new AtomicIntegerArray(BUFFER_SIZE);
+        final AtomicLong consumerSequence = new AtomicLong(-1);
+
+        long producerSequence = -1; // owned by the producer thread
+
+        @Setup(Level.Trial)
+        public void doSetup() {
+            final int initialState = stamping == Stamping.FLAG ? FLAG_NOT_COMMITTED : LAP_NOT_COMMITTED;
+            for (int i = 0; i < BUFFER_SIZE; i++) {
+                states.set(i, initialState);
+            }
+        }
+
+        int committedState(final long sequence) {
+            return stamping == Stamping.FLAG ? FLAG_COMMITTED : (int) (sequence >>> INDEX_SHIFT);
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class EntryCounters {
+        public long produced;
+        public long consumed;
+
+        @Setup(Level.Iteration)
+        public void doSetup() {
+            produced = 0;
+            consumed = 0;
+        }
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public void producer(final RingSetup ring, final EntryCounters counters) {
+        final long sequence = ring.producerSequence + 1;
+        if (sequence - ring.consumerSequence.get() > BUFFER_SIZE) { // the buffer is full
+            return;
+        }
+
+        final int index = (int) (sequence & INDEX_MASK);
+        ring.values[index] = sequence;
+        ring.states.lazySet(index, ring.committedState(sequence));
+
+        ring.producerSequence = sequence;
+        counters.produced++;
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public void consumer(final RingSetup ring, final EntryCounters counters, final Blackhole blackhole) {
+        final AtomicIntegerArray states = ring.states;
+        final boolean resetting = ring.stamping == Stamping.FLAG;
+
+        final long firstSequence = ring.consumerSequence.get() + 1;
+        final long limit = firstSequence + ring.batchSize;
+
+        long sequence = firstSequence;
+        while (sequence < limit) {
+            final int index = (int) (sequence & INDEX_MASK);
+            if (states.get(index) != ring.committedState(sequence)) {
+                break;
+            }
+
+            blackhole.consume(ring.values[index]);
+            if (resetting) {
+                states.lazySet(index, FLAG_NOT_COMMITTED);
+            }
+            sequence++;
+        }
+
+        if (sequence != firstSequence) {
+            ring.consumerSequence.lazySet(sequence - 1);
+            counters.consumed += sequence - firstSequence;
+        }
+    }
+}
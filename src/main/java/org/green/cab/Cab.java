@@ -25,6 +25,7 @@ package org.green.cab;
 
 import sun.misc.Unsafe;
 
+import java.util.Arrays;
 import java.util.concurrent.locks.LockSupport;
 import java.util.function.Supplier;
 
@@ -155,31 +156,58 @@ public abstract class Cab<E, M> extends CabPad4 {
 
     public static final long CONSUMER_INTERRUPTED_SEQUENCE = Long.MIN_VALUE;
 
+    public static final long NOTHING_AVAILABLE_SEQUENCE = Long.MIN_VALUE + 3; // differs from
+                                                                            // CabSpilling.SPILLED_SEQUENCE and
+                                                                            // ABORTED_SEQUENCE
+
     private static final long INITIAL_SEQUENCE = -1;
 
+    static final int NOT_COMMITTED_STATE = -1; // differs from the lap of the very first commit to any slot
+    private static final int ABORTED_STATE_BASE = -2; // an aborted slot is stamped with the negated lap shifted
+                                                      // below NOT_COMMITTED_STATE, so, it never matches any lap
+
+    static final long ABORTED_SEQUENCE = Long.MIN_VALUE + 2; // never returned to the users, differs from
+                                                            // CabSpilling.SPILLED_SEQUENCE
+
+    static final int SLOT_PENDING = 0;
+    static final int SLOT_COMMITTED = 1;
+    static final int SLOT_ABORTED = 2;
+
+    private static final int SCRAMBLED_INDEX_BITS = 4; // 16 consecutive sequences are in different cache lines
+    private static final int SCRAMBLED_MIN_INDEX_SHIFT = 8; // 256 entries, so, the neighbouring states are
+                                                            // at least one cache line away from each other
+
     private static final int BACKING_OFF_INITIAL_STATE = 0;
     private static final int BACKING_OFF_SPINNING_STATE = 1;
     private static final int BACKING_OFF_YIELDING_STATE = 2;
     private static final int BACKING_OFF_WAIT_ON_MUTEX_STATE = 3;
 
     private static final String BUFFER_SIZE_MUST_NOT_BE_LESS_THAN_1_MESSAGE = "bufferSize must not be less than 1";
-    private static final String CONSUMER_WAS_CLOSED_MESSAGE = "Consumer was closed";
+    static final String CONSUMER_WAS_CLOSED_MESSAGE = "Consumer was closed";
     private static final String UNEXPECTED_INT_ELEMENT_SIZE_MESSAGE = "Unexpected int[] element size";
     private static final String UNEXPECTED_OBJECT_ELEMENT_SIZE_MESSAGE = "Unexpected Object[] element size";
+    private static final String UNEXPECTED_LONG_ELEMENT_SIZE_MESSAGE = "Unexpected long[] element size";
+    private static final String LATENCY_HISTOGRAM_IS_DISABLED_MESSAGE = "Latency histogram is disabled";
+    static final String CAB_IS_NOT_QUIESCENT_MESSAGE = "Cab has claimed entries which are not consumed";
+    static final String CAB_IS_REGISTERED_MESSAGE = "Cab is registered with a selector";
 
     private static final Unsafe UNSAFE = Utils.getUnsafe();
 
-    private static final int ENTRY_ARRAY_ELEMENT_SHIFT;
-    private static final int ENTRY_ARRAY_PAD;
-    private static final long ENTRY_ARRAY_BASE;
+    static final int ENTRY_ARRAY_ELEMENT_SHIFT;
+    static final int ENTRY_ARRAY_PAD;
+    static final long ENTRY_ARRAY_BASE;
 
-    private static final int STATE_ARRAY_ELEMENT_SHIFT;
-    private static final int STATE_ARRAY_PAD;
-    private static final long STATE_ARRAY_BASE;
+    static final int STATE_ARRAY_ELEMENT_SHIFT;
+    static final int STATE_ARRAY_PAD;
+    static final long STATE_ARRAY_BASE;
 
-    private static final long CONSUMER_SEQUENCE_OFFSET;
-    private static final long UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET;
-    private static final long MESSAGE_OFFSET;
+    private static final int TIME_ARRAY_ELEMENT_SHIFT;
+    private static final int TIME_ARRAY_PAD;
+    private static final long TIME_ARRAY_BASE;
+
+    static final long CONSUMER_SEQUENCE_OFFSET;
+    static final long UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET;
+    static final long MESSAGE_OFFSET;
 
     static {
         int scale;
@@ -203,6 +231,15 @@ public abstract class Cab<E, M> extends CabPad4 {
         STATE_ARRAY_PAD = CACHE_LINE_SIZE * 2 / scale;
         STATE_ARRAY_BASE = UNSAFE.arrayBaseOffset(int[].class) + (STATE_ARRAY_PAD * scale);
 
+        scale = UNSAFE.arrayIndexScale(long[].class);
+        if (8 == scale) {
+            TIME_ARRAY_ELEMENT_SHIFT = 3;
+        } else {
+            throw new IllegalStateException(UNEXPECTED_LONG_ELEMENT_SIZE_MESSAGE);
+        }
+        TIME_ARRAY_PAD = CACHE_LINE_SIZE * 2 / scale;
+        TIME_ARRAY_BASE = UNSAFE.arrayBaseOffset(long[].class) + (TIME_ARRAY_PAD * scale);
+
         try {
             CONSUMER_SEQUENCE_OFFSET = UNSAFE.objectFieldOffset(
                     ConsumerSequence.class.getDeclaredField("consumerSequence"));
@@ -224,10 +261,16 @@ public abstract class Cab<E, M> extends CabPad4 {
     }
 
     private final long indexMask;
+    private final int indexShift;
+    private final int indexScrambleShift;
+    private final int entryAddressShift;
+    private final int stateAddressShift;
+    private final int timeAddressShift;
 
     private final int bufferSize;
-    private final Object[] entries;
-    private final int[] entryStates;
+    final Object[] entries;
+    final int[] entryStates;
+    private final boolean preallocated; // the entries are kept by reset() if they were created by the supplier
 
     private final WaitingStaregy waitingStaregy;
 
@@ -236,34 +279,117 @@ public abstract class Cab<E, M> extends CabPad4 {
     private final long maxSpins;
     private final long maxYields;
 
+    private final CabCounters counters; // null if the metrics are disabled
+
+    private final long[] commitTimes; // null if the latency histogram is disabled
+    private final CabLatencyHistogram latencyHistogram; // written by Consumer only
+    private long recordedSequence = INITIAL_SEQUENCE; // the last sequence recorded by the histogram, Consumer only
+
+    volatile CabSelector selector; // null if the Cab isn't registered with a selector
+
+    protected Cab(
+            final int bufferSize,
+            final WaitingStaregy waitingStaregy,
+            final long maxSpins,
+            final long maxYields,
+            final Supplier<E> supplier) {
+
+        this(bufferSize, SlotLayout.DENSE, waitingStaregy, maxSpins, maxYields, supplier);
+    }
+
     protected Cab(
             final int bufferSize,
+            final SlotLayout slotLayout,
             final WaitingStaregy waitingStaregy,
             final long maxSpins,
             final long maxYields,
             final Supplier<E> supplier) {
 
+        this(bufferSize, slotLayout, waitingStaregy, maxSpins, maxYields, supplier, false);
+    }
+
+    protected Cab(
+            final int bufferSize,
+            final SlotLayout slotLayout,
+            final WaitingStaregy waitingStaregy,
+            final long maxSpins,
+            final long maxYields,
+            final Supplier<E> supplier,
+            final boolean metricsEnabled) {
+
+        this(bufferSize, slotLayout, waitingStaregy, maxSpins, maxYields, supplier, metricsEnabled, false);
+    }
+
+    protected Cab(
+            final int bufferSize,
+            final SlotLayout slotLayout,
+            final WaitingStaregy waitingStaregy,
+            final long maxSpins,
+            final long maxYields,
+            final Supplier<E> supplier,
+            final boolean metricsEnabled,
+            final boolean latencyEnabled) {
+
         if (bufferSize < 1) {
             throw new IllegalArgumentException(BUFFER_SIZE_MUST_NOT_BE_LESS_THAN_1_MESSAGE);
         }
         final int normalizedBufferSize = nextPowerOfTwo(bufferSize);
 
         this.indexMask = normalizedBufferSize - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(normalizedBufferSize);
+
+        int entrySlotShift = 0;
+        int stateSlotShift = 0;
+        int timeSlotShift = 0;
+        switch (slotLayout) {
+            case DENSE:
+                this.indexScrambleShift = 0;
+                break;
+
+            case SCRAMBLED:
+                this.indexScrambleShift = indexShift < SCRAMBLED_MIN_INDEX_SHIFT ? 0 : SCRAMBLED_INDEX_BITS;
+                break;
+
+            case PADDED:
+                this.indexScrambleShift = 0;
+                entrySlotShift = Integer.numberOfTrailingZeros(CACHE_LINE_SIZE >> ENTRY_ARRAY_ELEMENT_SHIFT);
+                stateSlotShift = Integer.numberOfTrailingZeros(CACHE_LINE_SIZE >> STATE_ARRAY_ELEMENT_SHIFT);
+                timeSlotShift = Integer.numberOfTrailingZeros(CACHE_LINE_SIZE >> TIME_ARRAY_ELEMENT_SHIFT);
+                break;
+
+            default:
+                throw new IllegalArgumentException();
+        }
+        this.entryAddressShift = ENTRY_ARRAY_ELEMENT_SHIFT + entrySlotShift;
+        this.stateAddressShift = STATE_ARRAY_ELEMENT_SHIFT + stateSlotShift;
+        this.timeAddressShift = TIME_ARRAY_ELEMENT_SHIFT + timeSlotShift;
 
         this.bufferSize = normalizedBufferSize;
-        this.entries = new Object[normalizedBufferSize + 2 * ENTRY_ARRAY_PAD];
-        this.entryStates = new int[normalizedBufferSize + 2 * STATE_ARRAY_PAD];
+        this.entries = new Object[(normalizedBufferSize << entrySlotShift) + 2 * ENTRY_ARRAY_PAD];
+        this.entryStates = new int[(normalizedBufferSize << stateSlotShift) + 2 * STATE_ARRAY_PAD];
+        this.preallocated = supplier != null;
+
+        Arrays.fill(entryStates, NOT_COMMITTED_STATE);
 
         this.waitingStaregy = waitingStaregy;
         this.maxSpins = maxSpins;
         this.maxYields = maxYields;
+        this.counters = metricsEnabled ? new CabCounters() : null;
+
+        if (latencyEnabled) {
+            this.commitTimes = new long[(normalizedBufferSize << timeSlotShift) + 2 * TIME_ARRAY_PAD];
+            this.latencyHistogram = new CabLatencyHistogram();
+        } else {
+            this.commitTimes = null;
+            this.latencyHistogram = null;
+        }
 
         UNSAFE.putLongVolatile(this, CONSUMER_SEQUENCE_OFFSET, INITIAL_SEQUENCE);
         UNSAFE.putLongVolatile(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET, INITIAL_SEQUENCE);
 
         if (supplier != null) {
             for (int i = 0; i < normalizedBufferSize; i++) {
-                setEntry(i, supplier.get());
+                UNSAFE.putObjectVolatile(entries, entryAddress(i), supplier.get());
             }
         }
 
@@ -291,11 +417,13 @@ public abstract class Cab<E, M> extends CabPad4 {
         final long nextSequence = UNSAFE.getAndAddLong(
                 this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET, 1L) + 1L; // fetch-and-add
 
+        boolean waiting = false;
+        Object producerWait = null;
         while (true) {
             final long consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
 
             if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
-                throw new ConsumerInterruptedException();
+                throw ConsumerInterruptedException.INSTANCE;
             }
 
             if (nextSequence - consumerSequence <= bufferSize) { // there is some free space in the buffer
@@ -303,6 +431,14 @@ public abstract class Cab<E, M> extends CabPad4 {
             }
 
             // we are here because the buffer is full, so...
+            if (!waiting) {
+                waiting = true;
+                if (counters != null) {
+                    counters.fullBufferWaitStarted();
+                }
+                producerWait = CabEvents.beginProducerWait();
+            }
+
             LockSupport.parkNanos(1); // let's give a good chance to the consumer
 
             if (Thread.interrupted()) {
@@ -310,36 +446,90 @@ public abstract class Cab<E, M> extends CabPad4 {
             }
         }
 
+        if (waiting) {
+            CabEvents.endProducerWait(producerWait, nextSequence, bufferSize);
+        }
         return nextSequence;
     }
 
+    /**
+     * Returns a sequence the same way producerNext() does, but doesn't wait for the consumer if the Ring Buffer is
+     * full. The sequences are claimed with a CAS here instead of the fetch-and-add, so, this method is for
+     * the producers which have something else to do when the buffer is full. CabElastic and CabSpilling, which
+     * claim the sequences their own way, override it.
+     *
+     * @return sequence to address available entry or NOTHING_AVAILABLE_SEQUENCE if the buffer is full
+     * @throws ConsumerInterruptedException if the consumer was interrupted
+     */
+    long producerTryNext() throws ConsumerInterruptedException {
+        while (true) {
+            final long claimedSequence = UNSAFE.getLongVolatile(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET);
+            final long consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
+
+            if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+                throw ConsumerInterruptedException.INSTANCE;
+            }
+
+            final long nextSequence = claimedSequence + 1;
+            if (nextSequence - consumerSequence > bufferSize) {
+                return NOTHING_AVAILABLE_SEQUENCE;
+            }
+
+            if (UNSAFE.compareAndSwapLong(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET, claimedSequence, nextSequence)) {
+                return nextSequence;
+            }
+        }
+    }
+
     /**
      * Commits the sequence to make it available for the consumer thread to be read.
+     * <p>
+     * The state of the entry's slot is stamped with the lap of the sequence, so, the consumer never has to reset it.
      *
      * @param sequence to be committed
      */
     public void producerCommit(final long sequence) {
         final long stateAddress = stateAddress(sequence);
 
-        UNSAFE.putOrderedInt(entryStates, stateAddress, 1);
+        final long[] times = commitTimes;
+        if (times != null) { // published with the state
+            UNSAFE.putLong(times, timeAddress(sequence), System.nanoTime());
+        }
 
-        switch (waitingStaregy) {
-            case BUSY_SPINNING:
-            case YIELDING:
-                break;
+        UNSAFE.putOrderedInt(entryStates, stateAddress, lap(sequence));
 
-            case BACKING_OFF:
-            case BLOCKING:
-                final Object mtx = mutex;
+        notifyWaiters();
+    }
 
-                synchronized (mtx) {
-                    mtx.notifyAll();
-                }
-                break;
+    /**
+     * Aborts the claimed sequence instead of committing it, so, the consumer skips the entry without returning it
+     * from consumerNext(). This is the way out when a producer has claimed a sequence and will never commit it,
+     * e.g., because its thread died, and can be called from any thread, typically from a
+     * {@link CabStallHandler}.
+     * <p>
+     * The producer which claimed the sequence must not commit it after it was aborted, since the state of the slot
+     * may be already reused by the next lap.
+     * <p>
+     * Only a claimed sequence, whose slot is already released by the consumer, can be aborted. A stale sequence,
+     * which is consumed already, or a future one, which isn't claimed yet, is refused, so, it's safe to abort
+     * a sequence read from an outdated {@link CabStallSnapshot}.
+     *
+     * @param sequence to be aborted
+     * @return true if the sequence was aborted, false if it is already committed, aborted or consumed, or if it
+     * isn't claimed or its slot isn't released yet
+     */
+    public boolean producerAbort(final long sequence) {
+        final long consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
+        if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE || sequence <= consumerSequence ||
+                sequence - consumerSequence > bufferSize || sequence > claimedSequence()) {
+            return false;
+        }
 
-            default:
-                throw new IllegalStateException();
+        if (!abortSlot(entryStates, stateAddress(sequence), lap(sequence))) {
+            return false;
         }
+        notifyWaiters();
+        return true;
     }
 
     /**
@@ -352,38 +542,59 @@ public abstract class Cab<E, M> extends CabPad4 {
     public void send(final M msg) throws ConsumerInterruptedException, InterruptedException {
         long consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
         if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
-            throw new ConsumerInterruptedException();
+            throw ConsumerInterruptedException.INSTANCE;
         }
 
         switch (waitingStaregy) {
             case BUSY_SPINNING: {
+                boolean waiting = false;
+                Object senderWait = null;
                 while (!UNSAFE.compareAndSwapObject(this, MESSAGE_OFFSET, null, msg)) {
+                    if (!waiting) {
+                        waiting = true;
+                        senderWait = CabEvents.beginSenderWait(CabEvents.SPINNING_PHASE);
+                    }
+
                     consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
                     if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
-                        throw new ConsumerInterruptedException();
+                        throw ConsumerInterruptedException.INSTANCE;
                     }
 
                     if (Thread.interrupted()) {
                         throw new InterruptedException();
                     }
                 }
+
+                if (waiting) {
+                    CabEvents.endSenderWait(senderWait);
+                }
                 break;
             }
 
             case YIELDING: {
+                boolean waiting = false;
+                Object senderWait = null;
                 while (!UNSAFE.compareAndSwapObject(this, MESSAGE_OFFSET, null, msg)) {
+                    if (!waiting) {
+                        waiting = true;
+                        senderWait = CabEvents.beginSenderWait(CabEvents.YIELDING_PHASE);
+                    }
 
                     Thread.yield();
 
                     consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
                     if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
-                        throw new ConsumerInterruptedException();
+                        throw ConsumerInterruptedException.INSTANCE;
                     }
 
                     if (Thread.interrupted()) {
                         throw new InterruptedException();
                     }
                 }
+
+                if (waiting) {
+                    CabEvents.endSenderWait(senderWait);
+                }
                 break;
             }
 
@@ -394,23 +605,30 @@ public abstract class Cab<E, M> extends CabPad4 {
 
                 final Object mtx = mutex;
 
+                Object senderWait = null;
+
                 _endOfWaiting:
                 while (!UNSAFE.compareAndSwapObject(this, MESSAGE_OFFSET, null, msg)) {
                     switch (state) {
                         case BACKING_OFF_INITIAL_STATE:
                             state = BACKING_OFF_SPINNING_STATE;
                             spins++;
+                            senderWait = CabEvents.beginSenderWait(CabEvents.SPINNING_PHASE);
                             break;
 
                         case BACKING_OFF_SPINNING_STATE:
                             if (++spins > maxSpins) {
                                 state = BACKING_OFF_YIELDING_STATE;
+                                CabEvents.endSenderWait(senderWait);
+                                senderWait = CabEvents.beginSenderWait(CabEvents.YIELDING_PHASE);
                             }
                             break;
 
                         case BACKING_OFF_YIELDING_STATE:
                             if (++yields > maxYields) {
                                 state = BACKING_OFF_WAIT_ON_MUTEX_STATE;
+                                CabEvents.endSenderWait(senderWait);
+                                senderWait = CabEvents.beginSenderWait(CabEvents.MUTEX_PHASE);
                             } else {
                                 Thread.yield();
                             }
@@ -424,7 +642,7 @@ public abstract class Cab<E, M> extends CabPad4 {
 
                                     consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
                                     if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
-                                        throw new ConsumerInterruptedException();
+                                        throw ConsumerInterruptedException.INSTANCE;
                                     }
                                 }
                                 break _endOfWaiting;
@@ -437,7 +655,7 @@ public abstract class Cab<E, M> extends CabPad4 {
 
                     consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
                     if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
-                        throw new ConsumerInterruptedException();
+                        throw ConsumerInterruptedException.INSTANCE;
                     }
 
                     if (Thread.interrupted()) {
@@ -445,7 +663,14 @@ public abstract class Cab<E, M> extends CabPad4 {
                     }
                 }
 
+                if (state != BACKING_OFF_INITIAL_STATE) {
+                    CabEvents.endSenderWait(senderWait);
+                }
+
                 synchronized (mtx) {
+                    if (counters != null) {
+                        counters.notified();
+                    }
                     mtx.notifyAll();
                 }
                 break;
@@ -455,6 +680,8 @@ public abstract class Cab<E, M> extends CabPad4 {
                 final Object mtx = mutex;
 
                 if (!UNSAFE.compareAndSwapObject(this, MESSAGE_OFFSET, null, msg)) {
+                    final Object senderWait = CabEvents.beginSenderWait(CabEvents.MUTEX_PHASE);
+
                     synchronized (mtx) {
                         while (!UNSAFE.compareAndSwapObject(this, MESSAGE_OFFSET, null, msg)) {
 
@@ -462,13 +689,18 @@ public abstract class Cab<E, M> extends CabPad4 {
 
                             consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
                             if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
-                                throw new ConsumerInterruptedException();
+                                throw ConsumerInterruptedException.INSTANCE;
                             }
                         }
                     }
+
+                    CabEvents.endSenderWait(senderWait);
                 }
 
                 synchronized (mtx) {
+                    if (counters != null) {
+                        counters.notified();
+                    }
                     mtx.notifyAll();
                 }
                 break;
@@ -478,6 +710,7 @@ public abstract class Cab<E, M> extends CabPad4 {
                 throw new IllegalStateException();
         }
 
+        wakeUpSelector();
     }
 
     /**
@@ -497,25 +730,118 @@ public abstract class Cab<E, M> extends CabPad4 {
             throw new IllegalStateException(CONSUMER_WAS_CLOSED_MESSAGE, new ConsumerInterruptedException());
         }
 
-        // check the message first
-        Object msg;
+        while (true) { // a loop, since a run of aborted entries may be long
+            // check the message first
+            final Object msg = UNSAFE.getObjectVolatile(this, MESSAGE_OFFSET);
+            if (msg != null) {
+                messageCache = msg;
+                return MESSAGE_RECEIVED_SEQUENCE;
+            }
+
+            // continue with the buffer and the message again
+            consumerSequence++;
+
+            final long sequence =
+                    consumerWait(consumerSequence, entryStates, stateAddress(consumerSequence), lap(consumerSequence));
+
+            if (sequence != ABORTED_SEQUENCE) {
+                if (commitTimes != null && sequence != MESSAGE_RECEIVED_SEQUENCE) {
+                    recordLatencies(sequence, sequence);
+                }
+                return sequence;
+            }
+
+            consumerCommit(consumerSequence); // the aborted entry is skipped
+        }
+    }
 
-        msg = UNSAFE.getObjectVolatile(this, MESSAGE_OFFSET);
-        if (msg != null) {
-            messageCache = msg;
-            return MESSAGE_RECEIVED_SEQUENCE;
+    /**
+     * Waits for the state of the sequence's slot to be stamped with the lap by a producer. The waiting is done
+     * according to the strategy of the Cab and can be finished earlier by a message received by the Channel.
+     *
+     * @param sequence     to wait for
+     * @param states       array of the slots' states
+     * @param stateAddress address of the sequence's slot state in the array
+     * @param lap          stamp of the committed sequence
+     * @return the sequence, MESSAGE_RECEIVED_SEQUENCE or ABORTED_SEQUENCE if the sequence was aborted, so, it must
+     * be committed by the consumer without being read
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    final long consumerWait(final long sequence, final int[] states, final long stateAddress, final int lap)
+            throws InterruptedException {
+        if (UNSAFE.getIntVolatile(states, stateAddress) == lap) { // no need to wait
+            return sequence;
         }
 
-        // continue with the buffer and the message again
-        consumerSequence++;
+        final Object consumerStall = CabEvents.beginConsumerStall(this, sequence);
 
-        final long stateAddress = stateAddress(consumerSequence);
+        final long result = waitForEntry(sequence, states, stateAddress, lap);
 
-        final int[] states = entryStates;
+        if (result == sequence) {
+            CabEvents.endConsumerStall(consumerStall, sequence);
+
+            if (UNSAFE.getIntVolatile(states, stateAddress) != lap) { // the slot can be aborted on the slow path only
+                return ABORTED_SEQUENCE;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isPending(final int state, final int lap) {
+        return state != lap && state != abortedState(lap);
+    }
+
+    private static int abortedState(final int lap) {
+        return ABORTED_STATE_BASE - lap;
+    }
+
+    /**
+     * Stamps the state of the slot as aborted for the lap, if the slot still has a state of the previous lap, i.e.,
+     * the sequence is neither committed nor aborted and the slot isn't reused by the next lap.
+     *
+     * @param states       array of the slots' states
+     * @param stateAddress address of the sequence's slot state in the array
+     * @param lap          stamp of the committed sequence
+     * @return true if the slot was aborted by this call
+     */
+    static boolean abortSlot(final int[] states, final long stateAddress, final int lap) {
+        final int previousLap = lap - 1; // NOT_COMMITTED_STATE for the very first lap
+        final int previousAborted = abortedState(previousLap);
+        final int aborted = abortedState(lap);
+        while (true) {
+            final int state = UNSAFE.getIntVolatile(states, stateAddress);
+            if (state != previousLap && state != previousAborted) {
+                return false;
+            }
+            if (UNSAFE.compareAndSwapInt(states, stateAddress, state, aborted)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads the state of the slot and compares it with the lap of the sequence.
+     *
+     * @param states       array of the slots' states
+     * @param stateAddress address of the sequence's slot state in the array
+     * @param lap          stamp of the committed sequence
+     * @return SLOT_COMMITTED, SLOT_ABORTED or SLOT_PENDING
+     */
+    static int slotReadiness(final int[] states, final long stateAddress, final int lap) {
+        final int state = UNSAFE.getIntVolatile(states, stateAddress);
+        if (state == lap) {
+            return SLOT_COMMITTED;
+        }
+        return state == abortedState(lap) ? SLOT_ABORTED : SLOT_PENDING;
+    }
+
+    private long waitForEntry(final long sequence, final int[] states, final long stateAddress, final int lap)
+            throws InterruptedException {
+        Object msg;
 
         switch (waitingStaregy) {
             case BUSY_SPINNING: {
-                while (UNSAFE.getIntVolatile(states, stateAddress) == 0) {
+                while (isPending(UNSAFE.getIntVolatile(states, stateAddress), lap)) {
                     if (Thread.interrupted()) {
                         throw new InterruptedException();
                     }
@@ -530,7 +856,7 @@ public abstract class Cab<E, M> extends CabPad4 {
             }
 
             case YIELDING: {
-                while (UNSAFE.getIntVolatile(states, stateAddress) == 0) {
+                while (isPending(UNSAFE.getIntVolatile(states, stateAddress), lap)) {
                     Thread.yield();
 
                     if (Thread.interrupted()) {
@@ -552,16 +878,22 @@ public abstract class Cab<E, M> extends CabPad4 {
                 long yields = 0;
 
                 _endOfBackingOff:
-                while (UNSAFE.getIntVolatile(states, stateAddress) == 0) {
+                while (isPending(UNSAFE.getIntVolatile(states, stateAddress), lap)) {
                     switch (state) {
                         case BACKING_OFF_INITIAL_STATE:
                             state = BACKING_OFF_SPINNING_STATE;
                             spins++;
+                            if (counters != null) {
+                                counters.spinningPhaseStarted();
+                            }
                             break;
 
                         case BACKING_OFF_SPINNING_STATE:
                             if (++spins > maxSpins) {
                                 state = BACKING_OFF_YIELDING_STATE;
+                                if (counters != null) {
+                                    counters.yieldingPhaseStarted();
+                                }
                             }
                             break;
 
@@ -578,7 +910,7 @@ public abstract class Cab<E, M> extends CabPad4 {
 
                             synchronized (mtx) {
                                 while (true) {
-                                    if (UNSAFE.getIntVolatile(states, stateAddress) == 0) {
+                                    if (isPending(UNSAFE.getIntVolatile(states, stateAddress), lap)) {
 
                                         msg = UNSAFE.getObjectVolatile(this, MESSAGE_OFFSET);
                                         if (msg != null) {
@@ -586,7 +918,12 @@ public abstract class Cab<E, M> extends CabPad4 {
                                             return MESSAGE_RECEIVED_SEQUENCE;
                                         }
 
+                                        if (counters != null) {
+                                            counters.mutexWaitStarted();
+                                        }
+                                        final Object consumerWait = CabEvents.beginConsumerWait();
                                         mtx.wait();
+                                        CabEvents.endConsumerWait(consumerWait, sequence);
 
                                         continue;
                                     }
@@ -619,7 +956,7 @@ public abstract class Cab<E, M> extends CabPad4 {
 
                 synchronized (mtx) {
                     while (true) {
-                        if (UNSAFE.getIntVolatile(states, stateAddress) == 0) {
+                        if (isPending(UNSAFE.getIntVolatile(states, stateAddress), lap)) {
 
                             msg = UNSAFE.getObjectVolatile(this, MESSAGE_OFFSET);
                             if (msg != null) {
@@ -627,7 +964,12 @@ public abstract class Cab<E, M> extends CabPad4 {
                                 return MESSAGE_RECEIVED_SEQUENCE;
                             }
 
+                            if (counters != null) {
+                                counters.mutexWaitStarted();
+                            }
+                            final Object consumerWait = CabEvents.beginConsumerWait();
                             mtx.wait();
+                            CabEvents.endConsumerWait(consumerWait, sequence);
 
                             continue;
                         }
@@ -641,7 +983,64 @@ public abstract class Cab<E, M> extends CabPad4 {
                 throw new IllegalStateException();
         }
 
-        return consumerSequence;
+        return sequence;
+    }
+
+    /**
+     * Returns a sequence for the consumer thread to address next available message or entry without any waiting.
+     * The aborted entries are skipped the same way consumerNext() does.
+     *
+     * @return sequence to be read, MESSAGE_RECEIVED_SEQUENCE if a message is ready to be read with getMessage() or
+     * NOTHING_AVAILABLE_SEQUENCE if there are neither messages nor committed entries. Nothing is to be committed
+     * for NOTHING_AVAILABLE_SEQUENCE.
+     * <p>
+     * This method can be called from one single consumer thread only.
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public long consumerPoll() throws InterruptedException {
+        long consumerSequence = UNSAFE.getLong(this, CONSUMER_SEQUENCE_OFFSET); // this thread owns the value
+
+        if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+            throw new IllegalStateException(CONSUMER_WAS_CLOSED_MESSAGE, new ConsumerInterruptedException());
+        }
+
+        while (UNSAFE.getObjectVolatile(this, MESSAGE_OFFSET) == null) {
+            consumerSequence++;
+
+            final int readiness = slotReadiness(consumerSequence);
+            if (readiness == SLOT_COMMITTED) {
+                break;
+            }
+            if (readiness == SLOT_PENDING) {
+                return NOTHING_AVAILABLE_SEQUENCE;
+            }
+            consumerCommit(consumerSequence); // the aborted entry is skipped
+        }
+
+        return consumerNext(); // the message or the entry is available, so, no waiting happens
+    }
+
+    /**
+     * Checks if a message is ready to be returned by consumerNext().
+     *
+     * @return true if a message is available
+     */
+    final boolean isMessageAvailable() {
+        return UNSAFE.getObjectVolatile(this, MESSAGE_OFFSET) != null;
+    }
+
+    /**
+     * Checks if consumerPoll() would return a message or an entry or would skip an aborted entry.
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @return true if the consumer has something to do
+     */
+    boolean isConsumerReady() {
+        if (UNSAFE.getObjectVolatile(this, MESSAGE_OFFSET) != null) {
+            return true;
+        }
+        return slotReadiness(UNSAFE.getLong(this, CONSUMER_SEQUENCE_OFFSET) + 1) != SLOT_PENDING;
     }
 
     /**
@@ -654,30 +1053,168 @@ public abstract class Cab<E, M> extends CabPad4 {
     public void consumerCommit(final long sequence) {
         if (sequence == MESSAGE_RECEIVED_SEQUENCE) {
             UNSAFE.putOrderedObject(this, MESSAGE_OFFSET, null);
-            switch (waitingStaregy) {
-                case BUSY_SPINNING:
-                case YIELDING:
-                    break;
+            if (counters != null) {
+                counters.messageReceived();
+            }
+            notifyWaiters();
+            return;
+        }
 
-                case BACKING_OFF:
-                case BLOCKING:
-                    final Object mtx = mutex;
+        UNSAFE.putOrderedLong(this, CONSUMER_SEQUENCE_OFFSET, sequence);
+    }
 
-                    synchronized (mtx) {
-                        mtx.notifyAll();
-                    }
-                    break;
+    /**
+     * Returns the highest sequence up to which all the entries are committed by producers, so, the consumer can read
+     * them without any waiting. All the sequences from the one next to the last consumer's sequence up to the returned
+     * one can be read with getEntry(sequence) and then committed at once with consumerCommit(sequence) called for
+     * the last of them. If no entries are available, the last consumer's sequence is returned.
+     * <p>
+     * This method doesn't check the Channel for incoming messages.
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @return the highest sequence available to be read
+     */
+    public long consumerAvailableSequence() {
+        final long consumerSequence = UNSAFE.getLong(this, CONSUMER_SEQUENCE_OFFSET); // this thread owns the value,
+        // so, no any membars required to read
 
-                default:
-                    throw new IllegalStateException();
-            }
-            return;
+        if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+            throw new IllegalStateException(CONSUMER_WAS_CLOSED_MESSAGE, new ConsumerInterruptedException());
         }
 
-        final long stateAddress = stateAddress(sequence);
-        UNSAFE.putOrderedInt(entryStates, stateAddress, 0);
+        final long availableSequence = availableSequence(consumerSequence);
+        if (commitTimes != null) {
+            recordLatencies(consumerSequence + 1, availableSequence);
+        }
+        return availableSequence;
+    }
 
-        UNSAFE.putOrderedLong(this, CONSUMER_SEQUENCE_OFFSET, sequence);
+    /**
+     * Records the latencies of the committed sequences in the range, skipping the ones recorded already, e.g., by
+     * consumerAvailableSequence() called before consumerNext() for the same sequence.
+     *
+     * @param firstSequence of the range
+     * @param lastSequence  of the range
+     */
+    private void recordLatencies(final long firstSequence, final long lastSequence) {
+        final long[] times = commitTimes;
+        final CabLatencyHistogram histogram = latencyHistogram;
+        final long now = System.nanoTime();
+
+        for (long sequence = Math.max(firstSequence, recordedSequence + 1); sequence <= lastSequence; sequence++) {
+            histogram.record(now - UNSAFE.getLong(times, timeAddress(sequence)));
+            recordedSequence = sequence;
+        }
+    }
+
+    /**
+     * Takes a snapshot of the metrics of the Cab. The values are read without any synchronization with producers
+     * and the consumer, so, they may be slightly inconsistent with each other.
+     *
+     * @param metrics to be filled
+     * @return the passed metrics
+     */
+    public CabMetrics metrics(final CabMetrics metrics) {
+        final long consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
+        final long claimedSequence = claimedSequence();
+
+        metrics.bufferSize = bufferSize();
+        metrics.entriesProduced = claimedSequence + 1;
+
+        if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+            metrics.consumerInterrupted = true;
+            metrics.entriesConsumed = 0;
+            metrics.occupancy = 0;
+            metrics.consumerLag = 0;
+        } else {
+            metrics.consumerInterrupted = false;
+            metrics.entriesConsumed = consumerSequence + 1;
+            metrics.occupancy = Math.min(Math.max(claimedSequence - consumerSequence, 0), metrics.bufferSize);
+            metrics.consumerLag = availableSequence(consumerSequence) - consumerSequence;
+        }
+
+        final CabCounters c = counters;
+        metrics.enabled = c != null;
+        if (c != null) {
+            c.read(metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Copies the histogram of latencies between producerCommit(sequence) and consumerNext() or consumerPoll()
+     * returning the sequence, in nanoseconds, to the snapshot. The sequences of a batch are recorded when
+     * consumerAvailableSequence() returns them, with the same time for the whole batch. The latencies are recorded
+     * only if the histogram was enabled at construction of the Cab.
+     *
+     * @param snapshot to copy to
+     * @return the passed snapshot
+     */
+    public CabLatencyHistogram latencyHistogram(final CabLatencyHistogram snapshot) {
+        final CabLatencyHistogram histogram = latencyHistogram;
+        if (histogram == null) {
+            throw new IllegalStateException(LATENCY_HISTOGRAM_IS_DISABLED_MESSAGE);
+        }
+        histogram.copyTo(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Returns the last sequence claimed by producers.
+     *
+     * @return the sequence
+     */
+    long claimedSequence() {
+        return UNSAFE.getLongVolatile(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Returns the last sequence committed by the consumer, as observed by any thread.
+     *
+     * @return the sequence or CONSUMER_INTERRUPTED_SEQUENCE
+     */
+    final long observedConsumerSequence() {
+        return UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Checks if the sequence is committed by a producer, which may be called from any thread for the sequences
+     * which are not consumed yet.
+     *
+     * @param sequence to be checked
+     * @return true if the entry of the sequence is committed
+     */
+    final boolean isCommitted(final long sequence) {
+        return slotReadiness(sequence) == SLOT_COMMITTED;
+    }
+
+    /**
+     * Reads the state of the sequence's slot, which may be done from any thread for the sequences which are not
+     * consumed yet.
+     *
+     * @param sequence to be checked
+     * @return SLOT_COMMITTED, SLOT_ABORTED or SLOT_PENDING
+     */
+    int slotReadiness(final long sequence) {
+        return slotReadiness(entryStates, stateAddress(sequence), lap(sequence));
+    }
+
+    /**
+     * Returns the highest sequence up to which all the entries next to the consumer's sequence are committed.
+     *
+     * @param consumerSequence to start from
+     * @return the highest sequence available to be read
+     */
+    long availableSequence(final long consumerSequence) {
+        final int[] states = entryStates;
+        final long maxSequence = consumerSequence + bufferSize;
+
+        long sequence = consumerSequence + 1;
+        while (sequence <= maxSequence && UNSAFE.getIntVolatile(states, stateAddress(sequence)) == lap(sequence)) {
+            sequence++;
+        }
+        return sequence - 1;
     }
 
     /**
@@ -688,6 +1225,48 @@ public abstract class Cab<E, M> extends CabPad4 {
         UNSAFE.putLongVolatile(this, CONSUMER_SEQUENCE_OFFSET, CONSUMER_INTERRUPTED_SEQUENCE);
     }
 
+    /**
+     * Returns the Cab to its initial sequences, so, it can be reused, e.g., from a {@link CabPool}, even after
+     * consumerInterrupt(). The entries created by the supplier are kept, the other ones are removed, the pending
+     * message is dropped and the latency histogram is reset. The metrics derived from the sequences, such as
+     * entriesProduced, entriesConsumed and occupancy, start from zero again, while the counted ones, such as
+     * the waits and the notifications, are cumulative and aren't reset.
+     * <p>
+     * The Cab must be quiescent: no producer, sender or consumer may use it during and after this call, until the
+     * Cab is handed over to the new ones with a happens-before edge, e.g., by a thread start or by a pool. Unless the
+     * consumer was interrupted, all the claimed entries must be consumed.
+     *
+     * @throws IllegalStateException if the Cab has claimed entries which are not consumed or if it is registered
+     *                               with a selector
+     */
+    public void reset() {
+        if (selector != null) {
+            throw new IllegalStateException(CAB_IS_REGISTERED_MESSAGE);
+        }
+
+        final long consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
+        if (consumerSequence != CONSUMER_INTERRUPTED_SEQUENCE &&
+                consumerSequence != UNSAFE.getLongVolatile(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET)) {
+            throw new IllegalStateException(CAB_IS_NOT_QUIESCENT_MESSAGE);
+        }
+
+        Arrays.fill(entryStates, NOT_COMMITTED_STATE); // the laps start from zero again
+        if (!preallocated) {
+            Arrays.fill(entries, null);
+        }
+
+        if (latencyHistogram != null) {
+            latencyHistogram.reset();
+        }
+        recordedSequence = INITIAL_SEQUENCE;
+
+        messageCache = null;
+        UNSAFE.putObjectVolatile(this, MESSAGE_OFFSET, null);
+
+        UNSAFE.putLongVolatile(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET, INITIAL_SEQUENCE);
+        UNSAFE.putLongVolatile(this, CONSUMER_SEQUENCE_OFFSET, INITIAL_SEQUENCE);
+    }
+
     /**
      * Returns an entry from the position identified by the sequence from the Ring Buffer.
      *
@@ -734,11 +1313,60 @@ public abstract class Cab<E, M> extends CabPad4 {
         return (M) messageCache;
     }
 
+    /**
+     * Wakes up the threads waiting on the mutex if the waiting strategy assumes this.
+     */
+    final void notifyWaiters() {
+        wakeUpSelector();
+
+        switch (waitingStaregy) {
+            case BUSY_SPINNING:
+            case YIELDING:
+                break;
+
+            case BACKING_OFF:
+            case BLOCKING:
+                final Object mtx = mutex;
+
+                synchronized (mtx) {
+                    if (counters != null) {
+                        counters.notified();
+                    }
+                    mtx.notifyAll();
+                }
+                break;
+
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private void wakeUpSelector() {
+        final CabSelector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
     private long entryAddress(final long sequence) {
-        return ENTRY_ARRAY_BASE + ((sequence & indexMask) << ENTRY_ARRAY_ELEMENT_SHIFT);
+        return ENTRY_ARRAY_BASE + (index(sequence) << entryAddressShift);
     }
 
     private long stateAddress(final long sequence) {
-        return STATE_ARRAY_BASE + ((sequence & indexMask) << STATE_ARRAY_ELEMENT_SHIFT);
+        return STATE_ARRAY_BASE + (index(sequence) << stateAddressShift);
+    }
+
+    private long timeAddress(final long sequence) {
+        return TIME_ARRAY_BASE + (index(sequence) << timeAddressShift);
+    }
+
+    private long index(final long sequence) { // rotates the index right, so, the low bits of it become the high ones,
+        // which is a no-op with zero indexScrambleShift
+        final long index = sequence & indexMask;
+        return ((index >>> indexScrambleShift) | (index << (indexShift - indexScrambleShift))) & indexMask;
+    }
+
+    private int lap(final long sequence) {
+        return (int) (sequence >>> indexShift);
     }
 }
@@ -0,0 +1,262 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import sun.misc.Unsafe;
+
+/**
+ * An actor of a {@link CabActorSystem}, which owns a Cab mailbox: the data entries go to the Ring Buffer and
+ * the supervision or control commands go to the Channel, so, a command is handled before the entries waiting in
+ * the mailbox. The entries and the commands are handled by the behavior of the actor, one at a time, by the scheduler
+ * thread the actor belongs to.
+ * <p>
+ * The actor is scheduled by the producers when they commit an entry or send a command to its idle mailbox, so,
+ * the scheduler threads never scan the idle actors. A producer blocks if the mailbox is full or a command is already
+ * pending there, so, an actor must not block on a mailbox of an actor of the same scheduler, tryPost() is the way to
+ * go then.
+ *
+ * @param <E> types of entries
+ * @param <M> types of commands
+ */
+public final class CabActor<E, M> {
+    static final int IDLE = 0;
+    static final int SCHEDULED = 1;
+    static final int STOPPED = 2;
+
+    private static final Unsafe UNSAFE = Utils.getUnsafe();
+
+    private static final long STATE_OFFSET;
+
+    static {
+        try {
+            STATE_OFFSET = UNSAFE.objectFieldOffset(CabActor.class.getDeclaredField("state"));
+        } catch (final Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    private final CabActorSystem.Scheduler scheduler;
+    private final Cab<E, M> mailbox;
+    private final CabHandler<E, M> behavior;
+
+    private volatile int state = IDLE;
+    private volatile boolean stopRequested;
+
+    CabActor(final CabActorSystem.Scheduler scheduler, final Cab<E, M> mailbox, final CabHandler<E, M> behavior) {
+        this.scheduler = scheduler;
+        this.mailbox = mailbox;
+        this.behavior = behavior;
+    }
+
+    /**
+     * Returns the mailbox, e.g., to read its metrics.
+     *
+     * @return the Cab
+     */
+    public Cab<E, M> mailbox() {
+        return mailbox;
+    }
+
+    /**
+     * Returns a sequence of the mailbox's entry to be set and committed with producerCommit().
+     *
+     * @return sequence to address available entry
+     * @throws ConsumerInterruptedException if the actor was stopped
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public long producerNext() throws ConsumerInterruptedException, InterruptedException {
+        return mailbox.producerNext();
+    }
+
+    /**
+     * Returns an entry of the mailbox to be written before the sequence is committed.
+     *
+     * @param sequence claimed with producerNext()
+     * @return the entry
+     */
+    public E getEntry(final long sequence) {
+        return mailbox.getEntry(sequence);
+    }
+
+    /**
+     * Sets an entry of the mailbox before the sequence is committed.
+     *
+     * @param sequence claimed with producerNext()
+     * @param entry    to be set
+     */
+    public void setEntry(final long sequence, final E entry) {
+        mailbox.setEntry(sequence, entry);
+    }
+
+    /**
+     * Commits the sequence of the mailbox and schedules the actor if it's idle.
+     *
+     * @param sequence to be committed
+     * @throws ConsumerInterruptedException if the actor system was closed
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public void producerCommit(final long sequence) throws ConsumerInterruptedException, InterruptedException {
+        mailbox.producerCommit(sequence);
+        schedule();
+    }
+
+    /**
+     * Posts the entry to the mailbox, waiting for a free entry if the mailbox is full.
+     *
+     * @param entry to be posted
+     * @throws ConsumerInterruptedException if the actor was stopped or the actor system was closed
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public void post(final E entry) throws ConsumerInterruptedException, InterruptedException {
+        final long sequence = mailbox.producerNext();
+        mailbox.setEntry(sequence, entry);
+        producerCommit(sequence);
+    }
+
+    /**
+     * Posts the entry to the mailbox if it isn't full.
+     *
+     * @param entry to be posted
+     * @return true if the entry was posted
+     * @throws ConsumerInterruptedException if the actor was stopped or the actor system was closed
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public boolean tryPost(final E entry) throws ConsumerInterruptedException, InterruptedException {
+        final long sequence = mailbox.producerTryNext();
+        if (sequence == Cab.NOTHING_AVAILABLE_SEQUENCE) {
+            return false;
+        }
+        mailbox.setEntry(sequence, entry);
+        producerCommit(sequence);
+        return true;
+    }
+
+    /**
+     * Sends the command to the Channel of the mailbox, waiting for the previous command to be handled.
+     *
+     * @param command to be sent
+     * @throws ConsumerInterruptedException if the actor was stopped or the actor system was closed
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public void send(final M command) throws ConsumerInterruptedException, InterruptedException {
+        mailbox.send(command);
+        schedule();
+    }
+
+    /**
+     * Stops the actor. The entries and the commands in the mailbox aren't handled anymore, and the producers get
+     * {@link ConsumerInterruptedException}.
+     *
+     * @throws ConsumerInterruptedException if the actor system was closed
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public void stop() throws ConsumerInterruptedException, InterruptedException {
+        stopRequested = true;
+        schedule(); // the mailbox is interrupted by the scheduler thread, which is its consumer
+    }
+
+    /**
+     * Checks if the actor was stopped by stop() or by the supervisor.
+     *
+     * @return true if the actor is stopped
+     */
+    public boolean isStopped() {
+        return state == STOPPED;
+    }
+
+    private void schedule() throws ConsumerInterruptedException, InterruptedException {
+        UNSAFE.fullFence(); // the entry or the command must be visible before the state is read, since the turn
+        // reads the mailbox after it makes the actor idle
+        if (state == IDLE && UNSAFE.compareAndSwapInt(this, STATE_OFFSET, IDLE, SCHEDULED)) {
+            scheduler.enqueue(this);
+        }
+    }
+
+    /**
+     * Handles up to the batch limit of the commands and the entries by the scheduler thread, then either schedules
+     * the actor again or makes it idle.
+     *
+     * @param batchLimit maximum number of the commands and the entries to be handled in the turn
+     * @param supervisor to decide on the failures
+     * @throws ConsumerInterruptedException if the actor system was closed
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    void turn(final int batchLimit, final CabActorSystem.Supervisor supervisor)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        int handled = 0;
+        while (handled < batchLimit) {
+            if (stopRequested) {
+                terminate();
+                return;
+            }
+
+            final long sequence = mailbox.consumerPoll();
+            if (sequence == Cab.NOTHING_AVAILABLE_SEQUENCE) {
+                break;
+            }
+
+            try {
+                if (sequence == Cab.MESSAGE_RECEIVED_SEQUENCE) {
+                    behavior.onMessage(mailbox, mailbox.getMessage());
+                } else {
+                    behavior.onEntry(mailbox, sequence);
+                }
+            } catch (final RuntimeException e) {
+                if (!supervisor.onFailure(this, e)) {
+                    mailbox.consumerCommit(sequence);
+                    terminate();
+                    return;
+                }
+            }
+            mailbox.consumerCommit(sequence);
+            handled++;
+        }
+
+        if (handled == batchLimit) {
+            scheduler.enqueue(this); // still scheduled, the other actors have their turns first
+            return;
+        }
+
+        state = IDLE; // the volatile write is ordered before the mailbox and the stop request are read again
+        if ((mailbox.isConsumerReady() || stopRequested) &&
+                UNSAFE.compareAndSwapInt(this, STATE_OFFSET, IDLE, SCHEDULED)) {
+            scheduler.enqueue(this); // a producer has missed the scheduled state
+        }
+    }
+
+    /**
+     * Stops the actor by its consumer, either the scheduler thread or the thread closing the actor system after
+     * the scheduler threads have finished.
+     */
+    void interruptMailbox() {
+        state = STOPPED;
+        mailbox.consumerInterrupt();
+    }
+
+    private void terminate() {
+        interruptMailbox();
+        scheduler.actorStopped(this);
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A runtime of many {@link CabActor}s multiplexed over a small pool of scheduler threads. Every actor belongs to one
+ * scheduler, which is chosen when the actor is spawned, so, the actor's state and mailbox stay in the cache of one
+ * core. A scheduler consumes its run queue, which is a Cab of the scheduled actors, and gives every actor a turn
+ * bounded by the batch limit, so, a flooded mailbox doesn't starve the other actors. An actor is put to the run queue
+ * by the producers when its mailbox gets something while it's idle, so, a scheduler waits according to the backing
+ * off strategy of its run queue only when all the mailboxes of its actors are empty.
+ * <p>
+ * The mailboxes are polled by the schedulers, so, the mailboxes of the yielding or the busy spinning strategies are
+ * the cheapest ones, since their producers never lock the mutex the blocking strategies notify the consumer with.
+ */
+@SuppressWarnings("try") // close() waits for the threads, so, it may be interrupted
+public final class CabActorSystem implements AutoCloseable {
+    private static final Object STOP_MESSAGE = new Object();
+
+    private static final String SCHEDULER_COUNT_MUST_BE_POSITIVE_MESSAGE = "schedulerCount must be positive";
+    private static final String MAX_ACTORS_MUST_BE_POSITIVE_MESSAGE = "maxActors must be positive";
+    private static final String BATCH_LIMIT_MUST_BE_POSITIVE_MESSAGE = "batchLimit must be positive";
+    private static final String TOO_MANY_ACTORS_MESSAGE = "Too many actors";
+    private static final String ACTOR_SYSTEM_WAS_CLOSED_MESSAGE = "Actor system was closed";
+
+    /**
+     * Decides what to do when the behavior of an actor throws an exception.
+     */
+    @FunctionalInterface
+    public interface Supervisor {
+        /**
+         * Called by the scheduler thread of the actor. The failed entry or command is committed anyway.
+         *
+         * @param actor   which has failed
+         * @param failure thrown by the behavior
+         * @return true to resume the actor, false to stop it
+         */
+        boolean onFailure(CabActor<?, ?> actor, RuntimeException failure);
+    }
+
+    private static final Supervisor STOPPING_SUPERVISOR = (actor, failure) -> {
+        final Thread current = Thread.currentThread();
+        current.getUncaughtExceptionHandler().uncaughtException(current, failure);
+        return false;
+    };
+
+    private final Scheduler[] schedulers;
+    private final int batchLimit;
+    private final Supervisor supervisor;
+    private final AtomicInteger nextScheduler = new AtomicInteger();
+
+    private boolean closed; // guarded by the lock of this object
+
+    /**
+     * Creates an actor system, which starts its scheduler threads at once. The failed actors are stopped and
+     * their failures are passed to the uncaught exception handler.
+     *
+     * @param schedulerCount number of the scheduler threads
+     * @param maxActors      maximum number of the actors alive at once
+     * @param batchLimit     maximum number of the entries and the commands an actor handles in one turn
+     * @param maxSpins       how many times an idle scheduler spins before yielding
+     * @param maxYields      how many times an idle scheduler yields before waiting on the mutex
+     */
+    public CabActorSystem(
+            final int schedulerCount,
+            final int maxActors,
+            final int batchLimit,
+            final long maxSpins,
+            final long maxYields) {
+
+        this(schedulerCount, maxActors, batchLimit, maxSpins, maxYields, STOPPING_SUPERVISOR);
+    }
+
+    /**
+     * Creates an actor system, which starts its scheduler threads at once.
+     *
+     * @param schedulerCount number of the scheduler threads
+     * @param maxActors      maximum number of the actors alive at once
+     * @param batchLimit     maximum number of the entries and the commands an actor handles in one turn
+     * @param maxSpins       how many times an idle scheduler spins before yielding
+     * @param maxYields      how many times an idle scheduler yields before waiting on the mutex
+     * @param supervisor     decides on the failures of the actors
+     */
+    public CabActorSystem(
+            final int schedulerCount,
+            final int maxActors,
+            final int batchLimit,
+            final long maxSpins,
+            final long maxYields,
+            final Supervisor supervisor) {
+
+        if (schedulerCount < 1) {
+            throw new IllegalArgumentException(SCHEDULER_COUNT_MUST_BE_POSITIVE_MESSAGE);
+        }
+        if (maxActors < 1) {
+            throw new IllegalArgumentException(MAX_ACTORS_MUST_BE_POSITIVE_MESSAGE);
+        }
+        if (batchLimit < 1) {
+            throw new IllegalArgumentException(BATCH_LIMIT_MUST_BE_POSITIVE_MESSAGE);
+        }
+
+        this.batchLimit = batchLimit;
+        this.supervisor = supervisor;
+
+        // every actor is in the run queue once at most, so, the producers never wait for the scheduler
+        final int actorsPerScheduler = (maxActors + schedulerCount - 1) / schedulerCount;
+
+        this.schedulers = new Scheduler[schedulerCount];
+        for (int i = 0; i < schedulerCount; i++) {
+            schedulers[i] = new Scheduler(this, i, actorsPerScheduler, maxSpins, maxYields);
+        }
+        for (final Scheduler scheduler : schedulers) {
+            scheduler.thread.start();
+        }
+    }
+
+    /**
+     * Creates an actor with the mailbox and the behavior. The mailbox must not be consumed anywhere else.
+     *
+     * @param mailbox  of the actor
+     * @param behavior handles the entries and the commands of the mailbox
+     * @param <E>      types of entries
+     * @param <M>      types of commands
+     * @return the actor
+     */
+    public synchronized <E, M> CabActor<E, M> spawn(final Cab<E, M> mailbox, final CabHandler<E, M> behavior) {
+        if (closed) { // the lock keeps close() from missing the new actor
+            throw new IllegalStateException(ACTOR_SYSTEM_WAS_CLOSED_MESSAGE);
+        }
+
+        final int first = nextScheduler.getAndIncrement();
+        for (int i = 0; i < schedulers.length; i++) {
+            final Scheduler scheduler = schedulers[Math.floorMod(first + i, schedulers.length)];
+            if (scheduler.tryAddActor()) {
+                final CabActor<E, M> actor = new CabActor<>(scheduler, mailbox, behavior);
+                scheduler.actors.add(actor);
+                return actor;
+            }
+        }
+        throw new IllegalStateException(TOO_MANY_ACTORS_MESSAGE);
+    }
+
+    /**
+     * Stops the scheduler threads, waits for them to finish and stops all the actors, which aren't stopped yet.
+     * The entries and the commands in the mailboxes aren't handled anymore, and the producers of the actors get
+     * {@link ConsumerInterruptedException}.
+     *
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        for (final Scheduler scheduler : schedulers) {
+            try {
+                scheduler.runQueue.send(STOP_MESSAGE); // the messages go before the scheduled actors
+            } catch (final ConsumerInterruptedException e) {
+                // the scheduler has finished
+            }
+        }
+        for (final Scheduler scheduler : schedulers) {
+            scheduler.thread.join();
+        }
+        for (final Scheduler scheduler : schedulers) { // the consumers of the mailboxes have finished
+            for (final CabActor<?, ?> actor : scheduler.actors) {
+                actor.interruptMailbox(); // including the actors left in the run queue
+            }
+        }
+    }
+
+    static final class Scheduler {
+        private final CabActorSystem system;
+        private final Cab<CabActor<?, ?>, Object> runQueue;
+        private final int maxActors;
+        private final AtomicInteger actorCount = new AtomicInteger();
+        private final Set<CabActor<?, ?>> actors = ConcurrentHashMap.newKeySet(); // not stopped ones
+        private final Thread thread;
+
+        Scheduler(
+                final CabActorSystem system,
+                final int index,
+                final int maxActors,
+                final long maxSpins,
+                final long maxYields) {
+
+            this.system = system;
+            this.runQueue = new CabBackingOff<>(maxActors, maxSpins, maxYields);
+            this.maxActors = maxActors;
+            this.thread = new Thread(this::run, "cab-actor-scheduler-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        boolean tryAddActor() {
+            while (true) {
+                final int count = actorCount.get();
+                if (count >= maxActors) {
+                    return false;
+                }
+                if (actorCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void actorStopped(final CabActor<?, ?> actor) {
+            actors.remove(actor);
+            actorCount.decrementAndGet();
+        }
+
+        void enqueue(final CabActor<?, ?> actor) throws ConsumerInterruptedException, InterruptedException {
+            final long sequence = runQueue.producerNext(); // never waits, since every actor is there once at most
+            runQueue.setEntry(sequence, actor);
+            runQueue.producerCommit(sequence);
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    final long sequence = runQueue.consumerNext();
+                    if (sequence == Cab.MESSAGE_RECEIVED_SEQUENCE) { // the only message is STOP_MESSAGE
+                        runQueue.consumerCommit(sequence);
+                        break;
+                    }
+
+                    final CabActor<?, ?> actor = runQueue.removeEntry(sequence);
+                    runQueue.consumerCommit(sequence);
+
+                    actor.turn(system.batchLimit, system.supervisor);
+                }
+            } catch (final ConsumerInterruptedException | InterruptedException e) {
+                // the actor system is closed
+            } finally {
+                runQueue.consumerInterrupt();
+            }
+        }
+    }
+}
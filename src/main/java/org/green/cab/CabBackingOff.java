@@ -42,4 +42,47 @@ public class CabBackingOff<E, M> extends Cab<E, M> {
 
         super(bufferSize, WaitingStaregy.BACKING_OFF, maxSpins, maxYields, supplier);
     }
+
+    public CabBackingOff(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final SlotLayout slotLayout) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.BACKING_OFF, maxSpins, maxYields, null);
+    }
+
+    public CabBackingOff(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final SlotLayout slotLayout,
+            final Supplier<E> supplier) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.BACKING_OFF, maxSpins, maxYields, supplier);
+    }
+
+    public CabBackingOff(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final SlotLayout slotLayout,
+            final Supplier<E> supplier,
+            final boolean metricsEnabled) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.BACKING_OFF, maxSpins, maxYields, supplier, metricsEnabled);
+    }
+
+    public CabBackingOff(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final SlotLayout slotLayout,
+            final Supplier<E> supplier,
+            final boolean metricsEnabled,
+            final boolean latencyEnabled) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.BACKING_OFF, maxSpins, maxYields, supplier,
+                metricsEnabled, latencyEnabled);
+    }
 }
\ No newline at end of file
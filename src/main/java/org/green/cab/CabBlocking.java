@@ -36,4 +36,38 @@ public class CabBlocking<E, M> extends Cab<E, M> {
 
         super(bufferSize, WaitingStaregy.BLOCKING, 0, 0, supplier);
     }
+
+    public CabBlocking(
+            final int bufferSize,
+            final SlotLayout slotLayout) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.BLOCKING, 0, 0, null);
+    }
+
+    public CabBlocking(
+            final int bufferSize,
+            final SlotLayout slotLayout,
+            final Supplier<E> supplier) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.BLOCKING, 0, 0, supplier);
+    }
+
+    public CabBlocking(
+            final int bufferSize,
+            final SlotLayout slotLayout,
+            final Supplier<E> supplier,
+            final boolean metricsEnabled) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.BLOCKING, 0, 0, supplier, metricsEnabled);
+    }
+
+    public CabBlocking(
+            final int bufferSize,
+            final SlotLayout slotLayout,
+            final Supplier<E> supplier,
+            final boolean metricsEnabled,
+            final boolean latencyEnabled) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.BLOCKING, 0, 0, supplier, metricsEnabled, latencyEnabled);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,441 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import sun.misc.Unsafe;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static org.green.cab.Cab.ENTRY_ARRAY_BASE;
+import static org.green.cab.Cab.ENTRY_ARRAY_ELEMENT_SHIFT;
+import static org.green.cab.Cab.ENTRY_ARRAY_PAD;
+import static org.green.cab.Cab.NOT_COMMITTED_STATE;
+import static org.green.cab.Cab.STATE_ARRAY_BASE;
+import static org.green.cab.Cab.STATE_ARRAY_ELEMENT_SHIFT;
+import static org.green.cab.Cab.STATE_ARRAY_PAD;
+import static org.green.cab.Utils.nextPowerOfTwo;
+
+abstract class CabBroadcastPad0 {
+    protected long p00, p01, p02, p03, p04, p05, p06, p07;
+    protected long p08, p09, p010, p011, p012, p013, p014, p015;
+}
+
+abstract class ClaimedSequence extends CabBroadcastPad0 {
+    protected volatile long claimedSequence;
+}
+
+abstract class CabBroadcastPad1 extends ClaimedSequence {
+    protected long p10, p11, p12, p13, p14, p15, p16, p17;
+    protected long p18, p19, p110, p111, p112, p113, p114, p115;
+}
+
+abstract class GatingSequence extends CabBroadcastPad1 {
+    protected volatile long gatingSequence; // the cached sequence of the slowest consumer
+}
+
+abstract class CabBroadcastPad2 extends GatingSequence {
+    protected long p20, p21, p22, p23, p24, p25, p26, p27;
+    protected long p28, p29, p210, p211, p212, p213, p214, p215;
+}
+
+abstract class BroadcastConsumerPad0 {
+    protected long p00, p01, p02, p03, p04, p05, p06, p07;
+    protected long p08, p09, p010, p011, p012, p013, p014, p015;
+}
+
+abstract class BroadcastConsumerSequence extends BroadcastConsumerPad0 {
+    protected volatile long consumerSequence;
+}
+
+abstract class BroadcastConsumerPad1 extends BroadcastConsumerSequence {
+    protected long p10, p11, p12, p13, p14, p15, p16, p17;
+    protected long p18, p19, p110, p111, p112, p113, p114, p115;
+}
+
+/**
+ * A Ring Buffer with many independent consumers, where every consumer reads every committed entry. The entries are
+ * claimed and committed by the producers once, the same way they are with a Cab, and the producers wait for
+ * the slowest consumer when the buffer is full.
+ * <p>
+ * Every consumer has its own padded sequence and its own thread. The consumers can be added with addConsumer() and
+ * removed with Consumer.close() at any time without pausing the producers. A new consumer starts with the entries
+ * claimed after it was added. The entries are shared by the consumers, so, they must not be modified by them.
+ * <p>
+ * The consumers back off the same way the consumer of CabBackingOff does: they spin, then yield and then wait on
+ * a mutex, which is notified by the producers only if some consumer waits on it.
+ *
+ * @param <E> types of entries in the Ring Buffer
+ */
+public class CabBroadcast<E> extends CabBroadcastPad2 {
+    private static final long INITIAL_SEQUENCE = -1;
+
+    private static final String BUFFER_SIZE_MUST_NOT_BE_LESS_THAN_1_MESSAGE = "bufferSize must not be less than 1";
+
+    private static final Unsafe UNSAFE = Utils.getUnsafe();
+
+    private static final long CLAIMED_SEQUENCE_OFFSET;
+    private static final long GATING_SEQUENCE_OFFSET;
+    private static final long CONSUMER_SEQUENCE_OFFSET;
+
+    static {
+        try {
+            CLAIMED_SEQUENCE_OFFSET = UNSAFE.objectFieldOffset(
+                    ClaimedSequence.class.getDeclaredField("claimedSequence"));
+            GATING_SEQUENCE_OFFSET = UNSAFE.objectFieldOffset(
+                    GatingSequence.class.getDeclaredField("gatingSequence"));
+            CONSUMER_SEQUENCE_OFFSET = UNSAFE.objectFieldOffset(
+                    BroadcastConsumerSequence.class.getDeclaredField("consumerSequence"));
+        } catch (final Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    private final int bufferSize;
+    private final long indexMask;
+    private final int indexShift;
+    private final Object[] entries;
+    private final int[] entryStates;
+
+    private final long maxSpins;
+    private final long maxYields;
+
+    private final Object mutex = new Object();
+    private volatile int waitingConsumers; // changed under the mutex only
+
+    private volatile Consumer<?>[] consumers = new Consumer<?>[0]; // copied on write under the mutex
+
+    public CabBroadcast(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields) {
+
+        this(bufferSize, maxSpins, maxYields, null);
+    }
+
+    public CabBroadcast(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final Supplier<E> supplier) {
+
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException(BUFFER_SIZE_MUST_NOT_BE_LESS_THAN_1_MESSAGE);
+        }
+        final int normalizedBufferSize = nextPowerOfTwo(bufferSize);
+
+        this.bufferSize = normalizedBufferSize;
+        this.indexMask = normalizedBufferSize - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(normalizedBufferSize);
+        this.entries = new Object[normalizedBufferSize + 2 * ENTRY_ARRAY_PAD];
+        this.entryStates = new int[normalizedBufferSize + 2 * STATE_ARRAY_PAD];
+
+        this.maxSpins = maxSpins;
+        this.maxYields = maxYields;
+
+        Arrays.fill(entryStates, NOT_COMMITTED_STATE);
+
+        if (supplier != null) {
+            for (long sequence = 0; sequence < normalizedBufferSize; sequence++) {
+                UNSAFE.putObject(entries, entryAddress(sequence), supplier.get());
+            }
+        }
+
+        UNSAFE.putLongVolatile(this, CLAIMED_SEQUENCE_OFFSET, INITIAL_SEQUENCE);
+        UNSAFE.putLongVolatile(this, GATING_SEQUENCE_OFFSET, INITIAL_SEQUENCE);
+    }
+
+    /**
+     * Returns actual size of the Ring Buffer.
+     *
+     * @return actual buffer size
+     */
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Adds a consumer, which reads all the entries claimed after this call.
+     *
+     * @return the consumer to be used by one single thread
+     */
+    public Consumer<E> addConsumer() {
+        final Consumer<E> consumer = new Consumer<>(this);
+
+        synchronized (mutex) {
+            // the consumer gates the producers with a conservative sequence until it's published
+            UNSAFE.putOrderedLong(consumer, CONSUMER_SEQUENCE_OFFSET,
+                    UNSAFE.getLongVolatile(this, CLAIMED_SEQUENCE_OFFSET));
+
+            final Consumer<?>[] current = consumers;
+            final Consumer<?>[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = consumer;
+            consumers = updated;
+
+            // any producer claiming a sequence after this read sees the consumer, so, the entries past the sequence
+            // can't be overwritten before the consumer reads them
+            UNSAFE.putOrderedLong(consumer, CONSUMER_SEQUENCE_OFFSET,
+                    UNSAFE.getLongVolatile(this, CLAIMED_SEQUENCE_OFFSET));
+        }
+        return consumer;
+    }
+
+    /**
+     * Returns the number of the consumers.
+     *
+     * @return the consumer count
+     */
+    public int consumerCount() {
+        return consumers.length;
+    }
+
+    /**
+     * Returns the next sequence for a producer to write an entry to. If the buffer is full, waits for the slowest
+     * consumer. If there are no consumers, the entries are just overwritten.
+     *
+     * @return sequence to be used to get or set an entry and to be committed
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public long producerNext() throws InterruptedException {
+        final long nextSequence = UNSAFE.getAndAddLong(this, CLAIMED_SEQUENCE_OFFSET, 1L) + 1L; // fetch-and-add
+
+        if (nextSequence - UNSAFE.getLongVolatile(this, GATING_SEQUENCE_OFFSET) <= bufferSize) {
+            return nextSequence; // there is some free space in the buffer according to the cached gating sequence
+        }
+
+        while (true) {
+            final long gatingSequence = slowestConsumerSequence(nextSequence - 1);
+            UNSAFE.putOrderedLong(this, GATING_SEQUENCE_OFFSET, gatingSequence); // may be overwritten by an older
+            // value by another producer, which is safe, since it's checked again then
+
+            if (nextSequence - gatingSequence <= bufferSize) {
+                return nextSequence;
+            }
+
+            // we are here because the buffer is full, so...
+            LockSupport.parkNanos(1); // let's give a good chance to the consumers
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Commits the sequence to make it available for all the consumers to be read.
+     *
+     * @param sequence to be committed
+     */
+    public void producerCommit(final long sequence) {
+        UNSAFE.putOrderedInt(entryStates, stateAddress(sequence), lap(sequence));
+
+        UNSAFE.fullFence(); // the state must be visible to the consumers before the waiting ones are counted,
+        // otherwise a consumer may fall asleep missing the entry
+        if (waitingConsumers > 0) {
+            final Object mtx = mutex;
+            synchronized (mtx) {
+                mtx.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns an entry from the position identified by the sequence from the Ring Buffer.
+     *
+     * @param sequence identifier of the entry's position
+     * @return the entry
+     */
+    @SuppressWarnings("unchecked")
+    public E getEntry(final long sequence) {
+        return (E) UNSAFE.getObjectVolatile(entries, entryAddress(sequence));
+    }
+
+    /**
+     * Sets an entry to the position identified by the sequence in the Ring Buffer.
+     *
+     * @param sequence identifier of the entry's position
+     * @param entry    to be set
+     */
+    public void setEntry(final long sequence, final E entry) {
+        UNSAFE.putObjectVolatile(entries, entryAddress(sequence), entry);
+    }
+
+    private long slowestConsumerSequence(final long defaultSequence) {
+        long result = defaultSequence;
+        for (final Consumer<?> consumer : consumers) {
+            result = Math.min(result, UNSAFE.getLongVolatile(consumer, CONSUMER_SEQUENCE_OFFSET));
+        }
+        return result;
+    }
+
+    private void removeConsumer(final Consumer<?> consumer) {
+        synchronized (mutex) {
+            final Consumer<?>[] current = consumers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == consumer) {
+                    final Consumer<?>[] updated = new Consumer<?>[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, updated.length - i);
+                    consumers = updated;
+                    return;
+                }
+            }
+        }
+    }
+
+    private void waitForEntry(final long sequence) throws InterruptedException {
+        final int[] states = entryStates;
+        final long stateAddress = stateAddress(sequence);
+        final int lap = lap(sequence);
+
+        for (long spins = 0; spins < maxSpins; spins++) {
+            if (UNSAFE.getIntVolatile(states, stateAddress) == lap) {
+                return;
+            }
+        }
+
+        for (long yields = 0; yields < maxYields; yields++) {
+            if (UNSAFE.getIntVolatile(states, stateAddress) == lap) {
+                return;
+            }
+            Thread.yield();
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        final Object mtx = mutex;
+        synchronized (mtx) {
+            waitingConsumers++; // the volatile write is ordered before the state is read again
+            try {
+                while (UNSAFE.getIntVolatile(states, stateAddress) != lap) {
+                    mtx.wait();
+                }
+            } finally {
+                waitingConsumers--;
+            }
+        }
+    }
+
+    private long entryAddress(final long sequence) {
+        return ENTRY_ARRAY_BASE + ((sequence & indexMask) << ENTRY_ARRAY_ELEMENT_SHIFT);
+    }
+
+    private long stateAddress(final long sequence) {
+        return STATE_ARRAY_BASE + ((sequence & indexMask) << STATE_ARRAY_ELEMENT_SHIFT);
+    }
+
+    private int lap(final long sequence) {
+        return (int) (sequence >>> indexShift);
+    }
+
+    /**
+     * A consumer of a CabBroadcast, which reads all the entries independently of the other consumers. A consumer can
+     * be used by one single thread only.
+     *
+     * @param <E> types of entries in the Ring Buffer
+     */
+    public static final class Consumer<E> extends BroadcastConsumerPad1 implements AutoCloseable {
+        private final CabBroadcast<E> broadcast;
+
+        Consumer(final CabBroadcast<E> broadcast) {
+            this.broadcast = broadcast;
+        }
+
+        /**
+         * Returns the next sequence to be read by this consumer, waiting for it to be committed.
+         *
+         * @return sequence to be read with getEntry(sequence)
+         * @throws InterruptedException if the current thread was interrupted
+         */
+        public long consumerNext() throws InterruptedException {
+            final long sequence = UNSAFE.getLong(this, CONSUMER_SEQUENCE_OFFSET) + 1; // this thread owns the value
+
+            if (UNSAFE.getIntVolatile(broadcast.entryStates, broadcast.stateAddress(sequence)) !=
+                    broadcast.lap(sequence)) {
+                broadcast.waitForEntry(sequence);
+            }
+            return sequence;
+        }
+
+        /**
+         * Returns the last sequence committed by this consumer.
+         *
+         * @return the consumer's sequence
+         */
+        public long consumerSequence() {
+            return UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
+        }
+
+        /**
+         * Returns the highest sequence up to which all the entries are committed by producers, so, this consumer can
+         * read them without any waiting and commit them at once. If no entries are available, the last consumer's
+         * sequence is returned.
+         *
+         * @return the highest sequence available to be read
+         */
+        public long consumerAvailableSequence() {
+            final long consumerSequence = UNSAFE.getLong(this, CONSUMER_SEQUENCE_OFFSET);
+            final long maxSequence = consumerSequence + broadcast.bufferSize;
+
+            long sequence = consumerSequence + 1;
+            while (sequence <= maxSequence &&
+                    UNSAFE.getIntVolatile(broadcast.entryStates, broadcast.stateAddress(sequence)) ==
+                            broadcast.lap(sequence)) {
+                sequence++;
+            }
+            return sequence - 1;
+        }
+
+        /**
+         * Commits the sequence to let the producers reuse the entries up to it, once all the other consumers
+         * commit them too.
+         *
+         * @param sequence to be committed
+         */
+        public void consumerCommit(final long sequence) {
+            UNSAFE.putOrderedLong(this, CONSUMER_SEQUENCE_OFFSET, sequence);
+        }
+
+        /**
+         * Returns an entry from the position identified by the sequence from the Ring Buffer.
+         *
+         * @param sequence identifier of the entry's position
+         * @return the entry, which must not be modified
+         */
+        public E getEntry(final long sequence) {
+            return broadcast.getEntry(sequence);
+        }
+
+        /**
+         * Removes this consumer, so, the producers don't wait for it anymore.
+         */
+        @Override
+        public void close() {
+            broadcast.removeConsumer(this);
+        }
+    }
+}
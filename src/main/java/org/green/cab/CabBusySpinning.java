@@ -36,4 +36,38 @@ public class CabBusySpinning<E, M> extends Cab<E, M> {
 
         super(bufferSize, WaitingStaregy.BUSY_SPINNING, 0, 0, supplier);
     }
+
+    public CabBusySpinning(
+            final int bufferSize,
+            final SlotLayout slotLayout) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.BUSY_SPINNING, 0, 0, null);
+    }
+
+    public CabBusySpinning(
+            final int bufferSize,
+            final SlotLayout slotLayout,
+            final Supplier<E> supplier) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.BUSY_SPINNING, 0, 0, supplier);
+    }
+
+    public CabBusySpinning(
+            final int bufferSize,
+            final SlotLayout slotLayout,
+            final Supplier<E> supplier,
+            final boolean metricsEnabled) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.BUSY_SPINNING, 0, 0, supplier, metricsEnabled);
+    }
+
+    public CabBusySpinning(
+            final int bufferSize,
+            final SlotLayout slotLayout,
+            final Supplier<E> supplier,
+            final boolean metricsEnabled,
+            final boolean latencyEnabled) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.BUSY_SPINNING, 0, 0, supplier, metricsEnabled, latencyEnabled);
+    }
 }
@@ -0,0 +1,395 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import sun.misc.Unsafe;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static org.green.cab.Cab.CONSUMER_INTERRUPTED_SEQUENCE;
+import static org.green.cab.Cab.CONSUMER_WAS_CLOSED_MESSAGE;
+import static org.green.cab.Cab.MESSAGE_RECEIVED_SEQUENCE;
+import static org.green.cab.Cab.NOTHING_AVAILABLE_SEQUENCE;
+import static org.green.cab.Cab.NOT_COMMITTED_STATE;
+
+/**
+ * A low-footprint Cab for very large numbers of instances, e.g., one per connection or per session. It's tuned for
+ * density rather than for the peak throughput of a single instance:
+ * <ul>
+ * <li>there is no padding, neither around the sequences nor in the arrays, so, the false sharing is possible;</li>
+ * <li>the arrays are allocated on the first claimed sequence, so, an idle instance takes a few dozen bytes;</li>
+ * <li>the capacity isn't rounded up to a power of two, so, the slots are addressed by division;</li>
+ * <li>there is no mutex, the consumer and the blocked producers spin, yield and then park for a while, so,
+ * the producers never notify anybody, but a parked consumer may see a new entry a bit later.</li>
+ * </ul>
+ * The entries and the messages are handled the same way Cab does, except the metrics, the latency histogram,
+ * the aborting and the selectors, which aren't supported. It doesn't extend {@link Cab}, so, it can't be a mailbox
+ * of {@link CabActorSystem}, a shard of {@link CabSharded} or be registered with {@link CabSelector}.
+ *
+ * @param <E> types of entries in the Ring Buffer
+ * @param <M> type of message in the Channel
+ */
+public class CabCompact<E, M> {
+    private static final long INITIAL_SEQUENCE = -1;
+
+    private static final int MAX_SPINS = 100;
+    private static final int MAX_YIELDS = 100;
+    private static final long PARK_NANOS = 1_000;
+
+    private static final String CAPACITY_MUST_NOT_BE_LESS_THAN_1_MESSAGE = "capacity must not be less than 1";
+
+    private static final Unsafe UNSAFE = Utils.getUnsafe();
+
+    private static final long CONSUMER_SEQUENCE_OFFSET;
+    private static final long PRODUCER_SEQUENCE_OFFSET;
+    private static final long MESSAGE_OFFSET;
+
+    private static final long ENTRY_ARRAY_BASE;
+    private static final int ENTRY_ARRAY_SHIFT;
+    private static final long STATE_ARRAY_BASE;
+    private static final int STATE_ARRAY_SHIFT;
+
+    static {
+        try {
+            CONSUMER_SEQUENCE_OFFSET = UNSAFE.objectFieldOffset(CabCompact.class.getDeclaredField("consumerSequence"));
+            PRODUCER_SEQUENCE_OFFSET = UNSAFE.objectFieldOffset(CabCompact.class.getDeclaredField("producerSequence"));
+            MESSAGE_OFFSET = UNSAFE.objectFieldOffset(CabCompact.class.getDeclaredField("message"));
+        } catch (final Exception e) {
+            throw new Error(e);
+        }
+
+        ENTRY_ARRAY_BASE = UNSAFE.arrayBaseOffset(Object[].class);
+        ENTRY_ARRAY_SHIFT = Integer.numberOfTrailingZeros(UNSAFE.arrayIndexScale(Object[].class));
+        STATE_ARRAY_BASE = UNSAFE.arrayBaseOffset(int[].class);
+        STATE_ARRAY_SHIFT = Integer.numberOfTrailingZeros(UNSAFE.arrayIndexScale(int[].class));
+    }
+
+    private volatile long consumerSequence = INITIAL_SEQUENCE;
+    private volatile long producerSequence = INITIAL_SEQUENCE;
+    private volatile Object message;
+    private Object messageCache;
+
+    private final int capacity;
+    private final Supplier<E> supplier;
+
+    private volatile Object[] entries; // allocated on the first claimed sequence, after the states
+    private volatile int[] entryStates;
+
+    public CabCompact(final int capacity) {
+        this(capacity, null);
+    }
+
+    public CabCompact(final int capacity, final Supplier<E> supplier) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(CAPACITY_MUST_NOT_BE_LESS_THAN_1_MESSAGE);
+        }
+        this.capacity = capacity;
+        this.supplier = supplier;
+    }
+
+    /**
+     * Returns the capacity of the Ring Buffer, which is exactly the value passed to the constructor.
+     *
+     * @return the capacity
+     */
+    public int bufferSize() {
+        return capacity;
+    }
+
+    /**
+     * Checks if the arrays of the Ring Buffer are allocated, which happens on the first claimed sequence.
+     *
+     * @return true if the arrays are allocated
+     */
+    public boolean isAllocated() {
+        return entries != null;
+    }
+
+    /**
+     * Returns a sequence for a producer thread to address the next available entry with getEntry(sequence),
+     * setEntry(sequence) or removeEntry(sequence).
+     *
+     * @return sequence to address available entry
+     * @throws ConsumerInterruptedException if the consumer was interrupted
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public long producerNext() throws ConsumerInterruptedException, InterruptedException {
+        final long nextSequence = UNSAFE.getAndAddLong(this, PRODUCER_SEQUENCE_OFFSET, 1L) + 1L; // fetch-and-add
+
+        if (entries == null) {
+            allocate();
+        }
+
+        int idleCount = 0;
+        while (true) {
+            final long sequence = consumerSequence;
+
+            if (sequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+                throw ConsumerInterruptedException.INSTANCE;
+            }
+
+            if (nextSequence - sequence <= capacity) { // there is some free space in the buffer
+                return nextSequence;
+            }
+
+            idleCount = backOff(idleCount);
+        }
+    }
+
+    /**
+     * Returns a sequence the same way producerNext() does, but doesn't wait for the consumer if the Ring Buffer is
+     * full.
+     *
+     * @return sequence to address available entry or NOTHING_AVAILABLE_SEQUENCE if the buffer is full
+     * @throws ConsumerInterruptedException if the consumer was interrupted
+     */
+    public long producerTryNext() throws ConsumerInterruptedException {
+        if (entries == null) {
+            allocate();
+        }
+
+        while (true) {
+            final long claimedSequence = producerSequence;
+            final long sequence = consumerSequence;
+
+            if (sequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+                throw ConsumerInterruptedException.INSTANCE;
+            }
+
+            final long nextSequence = claimedSequence + 1;
+            if (nextSequence - sequence > capacity) {
+                return NOTHING_AVAILABLE_SEQUENCE;
+            }
+
+            if (UNSAFE.compareAndSwapLong(this, PRODUCER_SEQUENCE_OFFSET, claimedSequence, nextSequence)) {
+                return nextSequence;
+            }
+        }
+    }
+
+    /**
+     * Commits the sequence to make it available for the consumer thread to be read.
+     *
+     * @param sequence to be committed
+     */
+    public void producerCommit(final long sequence) {
+        UNSAFE.putOrderedInt(entryStates, stateAddress(sequence), lap(sequence));
+    }
+
+    /**
+     * Sends a message to the Channel, waiting for the previous one to be received.
+     *
+     * @param msg a message to be sent
+     * @throws ConsumerInterruptedException if the consumer was interrupted
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public void send(final M msg) throws ConsumerInterruptedException, InterruptedException {
+        int idleCount = 0;
+        while (!UNSAFE.compareAndSwapObject(this, MESSAGE_OFFSET, null, msg)) {
+            if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+                throw ConsumerInterruptedException.INSTANCE;
+            }
+            idleCount = backOff(idleCount);
+        }
+
+        if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+            throw ConsumerInterruptedException.INSTANCE;
+        }
+    }
+
+    /**
+     * Returns a sequence for the consumer thread to address next available message or entry, waiting for it.
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @return sequence to be read. If the value is MESSAGE_RECEIVED_SEQUENCE, a message is ready to be read
+     * with getMessage(), otherwise new entry can be accessed with getEntry(sequence).
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public long consumerNext() throws InterruptedException {
+        int idleCount = 0;
+        while (true) {
+            final long sequence = consumerPoll();
+            if (sequence != NOTHING_AVAILABLE_SEQUENCE) {
+                return sequence;
+            }
+            idleCount = backOff(idleCount);
+        }
+    }
+
+    /**
+     * Returns a sequence for the consumer thread to address next available message or entry without any waiting.
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @return sequence to be read, MESSAGE_RECEIVED_SEQUENCE if a message is ready to be read with getMessage() or
+     * NOTHING_AVAILABLE_SEQUENCE if there are neither messages nor committed entries
+     */
+    public long consumerPoll() {
+        final long sequence = UNSAFE.getLong(this, CONSUMER_SEQUENCE_OFFSET); // this thread owns the value
+
+        if (sequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+            throw new IllegalStateException(CONSUMER_WAS_CLOSED_MESSAGE, new ConsumerInterruptedException());
+        }
+
+        final Object msg = message;
+        if (msg != null) {
+            messageCache = msg;
+            return MESSAGE_RECEIVED_SEQUENCE;
+        }
+
+        final int[] states = entryStates;
+        if (states == null) {
+            return NOTHING_AVAILABLE_SEQUENCE;
+        }
+
+        final long nextSequence = sequence + 1;
+        if (UNSAFE.getIntVolatile(states, stateAddress(nextSequence)) != lap(nextSequence)) {
+            return NOTHING_AVAILABLE_SEQUENCE;
+        }
+        return nextSequence;
+    }
+
+    /**
+     * Commits the current consumer's sequence to signal the consumer is ready to process next message or next entry.
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @param sequence to be committed
+     */
+    public void consumerCommit(final long sequence) {
+        if (sequence == MESSAGE_RECEIVED_SEQUENCE) {
+            messageCache = null;
+            UNSAFE.putOrderedObject(this, MESSAGE_OFFSET, null);
+            return;
+        }
+        UNSAFE.putOrderedLong(this, CONSUMER_SEQUENCE_OFFSET, sequence);
+    }
+
+    /**
+     * Interrupts the consumer. Entry producers and message senders will get an {@link ConsumerInterruptedException}
+     * after this call.
+     */
+    public void consumerInterrupt() {
+        consumerSequence = CONSUMER_INTERRUPTED_SEQUENCE;
+    }
+
+    /**
+     * Returns an entry from the position identified by the sequence from the Ring Buffer.
+     *
+     * @param sequence identifier of the entry's position
+     * @return the entry
+     */
+    @SuppressWarnings("unchecked")
+    public E getEntry(final long sequence) {
+        return (E) UNSAFE.getObjectVolatile(entries, entryAddress(sequence));
+    }
+
+    /**
+     * Removes an entry from the position identified by the sequence from the Ring Buffer.
+     *
+     * @param sequence identifier of the entry's position
+     * @return removed entry
+     */
+    @SuppressWarnings("unchecked")
+    public E removeEntry(final long sequence) {
+        final Object[] array = entries;
+        final long entryAddress = entryAddress(sequence);
+        final E result = (E) UNSAFE.getObjectVolatile(array, entryAddress);
+        UNSAFE.putObjectVolatile(array, entryAddress, null);
+        return result;
+    }
+
+    /**
+     * Sets an entry to the position identified by the sequence in the Ring Buffer.
+     *
+     * @param sequence identifier of the entry's position
+     * @param entry    to be set
+     */
+    public void setEntry(final long sequence, final E entry) {
+        UNSAFE.putObjectVolatile(entries, entryAddress(sequence), entry);
+    }
+
+    /**
+     * Returns currently available message from the Channel
+     *
+     * @return a message
+     */
+    @SuppressWarnings("unchecked")
+    public M getMessage() {
+        return (M) messageCache;
+    }
+
+    private void allocate() {
+        synchronized (this) { // the monitor is inflated only if the producers race for the first allocation
+            if (entries != null) {
+                return;
+            }
+
+            final int[] states = new int[capacity];
+            Arrays.fill(states, NOT_COMMITTED_STATE);
+
+            final Object[] array = new Object[capacity];
+            if (supplier != null) {
+                for (int i = 0; i < capacity; i++) {
+                    array[i] = supplier.get();
+                }
+            }
+
+            entryStates = states;
+            entries = array; // published last, since it's the one checked by the producers
+        }
+    }
+
+    private static int backOff(final int idleCount) throws InterruptedException {
+        if (idleCount < MAX_SPINS) {
+            return idleCount + 1;
+        }
+
+        if (idleCount < MAX_SPINS + MAX_YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return idleCount < MAX_SPINS + MAX_YIELDS ? idleCount + 1 : idleCount;
+    }
+
+    private long entryAddress(final long sequence) {
+        return ENTRY_ARRAY_BASE + ((sequence % capacity) << ENTRY_ARRAY_SHIFT);
+    }
+
+    private long stateAddress(final long sequence) {
+        return STATE_ARRAY_BASE + ((sequence % capacity) << STATE_ARRAY_SHIFT);
+    }
+
+    private int lap(final long sequence) {
+        return (int) (sequence / capacity);
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import sun.misc.Unsafe;
+
+abstract class CabCountersPad0 {
+    protected long p00, p01, p02, p03, p04, p05, p06, p07;
+    protected long p08, p09, p010, p011, p012, p013, p014, p015;
+}
+
+abstract class ConsumerCounters extends CabCountersPad0 {
+    protected long messagesReceived; // written by Consumer only
+    protected long spinningPhases;
+    protected long yieldingPhases;
+    protected long mutexWaits;
+}
+
+abstract class CabCountersPad1 extends ConsumerCounters {
+    protected long p10, p11, p12, p13, p14, p15, p16, p17;
+    protected long p18, p19, p110, p111, p112, p113, p114, p115;
+}
+
+abstract class ProducerCounters extends CabCountersPad1 {
+    protected long fullBufferWaits; // written by producers atomically
+}
+
+abstract class CabCountersPad2 extends ProducerCounters {
+    protected long p20, p21, p22, p23, p24, p25, p26, p27;
+    protected long p28, p29, p210, p211, p212, p213, p214, p215;
+}
+
+abstract class NotificationCounters extends CabCountersPad2 {
+    protected long notifications; // written under the Cab's mutex only
+}
+
+abstract class CabCountersPad3 extends NotificationCounters {
+    protected long p30, p31, p32, p33, p34, p35, p36, p37;
+    protected long p38, p39, p310, p311, p312, p313, p314, p315;
+}
+
+/**
+ * Counters of a Cab. Every counter has one single writer, the consumer or a thread which owns the Cab's mutex,
+ * except the counter of full buffer waits which is updated by producers atomically on the slow path only. So,
+ * incrementing is a lazy store in the most cases. Groups of counters with different writers are kept
+ * in different cache lines.
+ */
+final class CabCounters extends CabCountersPad3 {
+    private static final Unsafe UNSAFE = Utils.getUnsafe();
+
+    private static final long MESSAGES_RECEIVED_OFFSET;
+    private static final long SPINNING_PHASES_OFFSET;
+    private static final long YIELDING_PHASES_OFFSET;
+    private static final long MUTEX_WAITS_OFFSET;
+    private static final long FULL_BUFFER_WAITS_OFFSET;
+    private static final long NOTIFICATIONS_OFFSET;
+
+    static {
+        try {
+            MESSAGES_RECEIVED_OFFSET = UNSAFE.objectFieldOffset(
+                    ConsumerCounters.class.getDeclaredField("messagesReceived"));
+            SPINNING_PHASES_OFFSET = UNSAFE.objectFieldOffset(
+                    ConsumerCounters.class.getDeclaredField("spinningPhases"));
+            YIELDING_PHASES_OFFSET = UNSAFE.objectFieldOffset(
+                    ConsumerCounters.class.getDeclaredField("yieldingPhases"));
+            MUTEX_WAITS_OFFSET = UNSAFE.objectFieldOffset(
+                    ConsumerCounters.class.getDeclaredField("mutexWaits"));
+            FULL_BUFFER_WAITS_OFFSET = UNSAFE.objectFieldOffset(
+                    ProducerCounters.class.getDeclaredField("fullBufferWaits"));
+            NOTIFICATIONS_OFFSET = UNSAFE.objectFieldOffset(
+                    NotificationCounters.class.getDeclaredField("notifications"));
+        } catch (final Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    void messageReceived() {
+        UNSAFE.putOrderedLong(this, MESSAGES_RECEIVED_OFFSET, messagesReceived + 1);
+    }
+
+    void spinningPhaseStarted() {
+        UNSAFE.putOrderedLong(this, SPINNING_PHASES_OFFSET, spinningPhases + 1);
+    }
+
+    void yieldingPhaseStarted() {
+        UNSAFE.putOrderedLong(this, YIELDING_PHASES_OFFSET, yieldingPhases + 1);
+    }
+
+    void mutexWaitStarted() {
+        UNSAFE.putOrderedLong(this, MUTEX_WAITS_OFFSET, mutexWaits + 1);
+    }
+
+    void fullBufferWaitStarted() {
+        UNSAFE.getAndAddLong(this, FULL_BUFFER_WAITS_OFFSET, 1L);
+    }
+
+    void notified() {
+        UNSAFE.putOrderedLong(this, NOTIFICATIONS_OFFSET, notifications + 1);
+    }
+
+    void read(final CabMetrics metrics) {
+        metrics.messagesReceived = UNSAFE.getLongVolatile(this, MESSAGES_RECEIVED_OFFSET);
+        metrics.spinningPhases = UNSAFE.getLongVolatile(this, SPINNING_PHASES_OFFSET);
+        metrics.yieldingPhases = UNSAFE.getLongVolatile(this, YIELDING_PHASES_OFFSET);
+        metrics.mutexWaits = UNSAFE.getLongVolatile(this, MUTEX_WAITS_OFFSET);
+        metrics.fullBufferWaits = UNSAFE.getLongVolatile(this, FULL_BUFFER_WAITS_OFFSET);
+        metrics.notifications = UNSAFE.getLongVolatile(this, NOTIFICATIONS_OFFSET);
+    }
+}
@@ -0,0 +1,545 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import sun.misc.Unsafe;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static org.green.cab.Utils.nextPowerOfTwo;
+
+abstract class CabElasticRing<E, M> extends Cab<E, M> {
+    protected volatile CabElastic.Ring ring; // the most recent Ring Buffer, producers start to look for
+    // the Ring Buffer of their sequences from this one
+
+    protected CabElasticRing(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final Supplier<E> supplier) {
+
+        super(bufferSize, WaitingStaregy.BACKING_OFF, maxSpins, maxYields, supplier);
+    }
+}
+
+abstract class CabElasticPad0<E, M> extends CabElasticRing<E, M> {
+    protected long p00, p01, p02, p03, p04, p05, p06, p07;
+    protected long p08, p09, p010, p011, p012, p013, p014, p015;
+
+    protected CabElasticPad0(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final Supplier<E> supplier) {
+
+        super(bufferSize, maxSpins, maxYields, supplier);
+    }
+}
+
+abstract class CabElasticConsumerState<E, M> extends CabElasticPad0<E, M> {
+    protected CabElastic.Ring consumerRing; // used by Consumer only, no any membars required
+    protected long fullCommits;
+    protected long idleCommits;
+    protected boolean idle; // the consumer found nothing to read since the buffer was more than a quarter occupied
+    protected long idleSince; // System.nanoTime() the idle period started at
+
+    protected CabElasticConsumerState(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final Supplier<E> supplier) {
+
+        super(bufferSize, maxSpins, maxYields, supplier);
+    }
+}
+
+abstract class CabElasticPad1<E, M> extends CabElasticConsumerState<E, M> {
+    protected long p10, p11, p12, p13, p14, p15, p16, p17;
+    protected long p18, p19, p110, p111, p112, p113, p114, p115;
+
+    protected CabElasticPad1(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final Supplier<E> supplier) {
+
+        super(bufferSize, maxSpins, maxYields, supplier);
+    }
+}
+
+/**
+ * The Cab with the Ring Buffer which grows when it stays full and shrinks back after a period of low occupancy.
+ * <p>
+ * The Ring Buffer's size starts from the initial one and is doubled, up to the configured maximum, if the buffer
+ * stays full during a whole lap of the consumer. When no more than a quarter of the buffer is occupied during
+ * sixteen laps, the buffer is halved, but never below its initial size. Since an idle consumer doesn't do any laps,
+ * the buffer is also shrunk to fit its occupancy, but never below its initial size, when the consumer finds nothing
+ * to read after a period of IDLE_NANOS_TO_SHRINK with no more than a quarter of the buffer occupied. So, a consumer
+ * which polls shrinks the buffer while it's idle, and a consumer blocked in consumerNext() does it when it waits
+ * again after it's woken up. The grown Ring Buffer is released once the consumer passes it.
+ * <p>
+ * Resizing is done by the consumer thread in consumerCommit(sequence). A new Ring Buffer serves the sequences
+ * starting from the first one which cannot be claimed yet in the current buffer, so, the producers which already
+ * work with their sequences in the current buffer are never affected. The producers find the buffer of their sequence
+ * with one volatile read in the steady state, so, the hot path stays lock-free.
+ * <p>
+ * The consumer waits for entries and messages with the backing off strategy, see {@link CabBackingOff}.
+ * If a supplier is provided, it's called to fill every new Ring Buffer with entries, so, resizing is the only moment
+ * when the structure allocates.
+ *
+ * @param <E> types of entries in the Ring Buffer
+ * @param <M> type of message in the Channel
+ */
+public class CabElastic<E, M> extends CabElasticPad1<E, M> {
+    static final int FULL_LAPS_TO_GROW = 1;
+    static final int IDLE_LAPS_TO_SHRINK = 16;
+    static final long IDLE_NANOS_TO_SHRINK = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final String MAX_BUFFER_SIZE_MUST_NOT_BE_LESS_THAN_BUFFER_SIZE_MESSAGE =
+            "maxBufferSize must not be less than bufferSize";
+
+    private static final Unsafe UNSAFE = Utils.getUnsafe();
+
+    private final int minBufferSize;
+    private final int maxBufferSize;
+    private final Supplier<E> supplier;
+
+    public CabElastic(
+            final int bufferSize,
+            final int maxBufferSize,
+            final long maxSpins,
+            final long maxYields) {
+
+        this(bufferSize, maxBufferSize, maxSpins, maxYields, null);
+    }
+
+    public CabElastic(
+            final int bufferSize,
+            final int maxBufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final Supplier<E> supplier) {
+
+        super(bufferSize, maxSpins, maxYields, supplier);
+
+        if (maxBufferSize < bufferSize) {
+            throw new IllegalArgumentException(MAX_BUFFER_SIZE_MUST_NOT_BE_LESS_THAN_BUFFER_SIZE_MESSAGE);
+        }
+
+        this.minBufferSize = super.bufferSize();
+        this.maxBufferSize = nextPowerOfTwo(maxBufferSize);
+        this.supplier = supplier;
+
+        final Ring initialRing = new Ring(0, minBufferSize, entries, entryStates);
+        this.consumerRing = initialRing;
+        this.ring = initialRing;
+    }
+
+    /**
+     * Returns actual size of the most recent Ring Buffer.
+     *
+     * @return actual buffer size
+     */
+    @Override
+    public int bufferSize() {
+        return ring.size;
+    }
+
+    /**
+     * Returns the maximum size the Ring Buffer can grow up to.
+     *
+     * @return maximum buffer size
+     */
+    public int maxBufferSize() {
+        return maxBufferSize;
+    }
+
+    @Override
+    public long producerNext() throws ConsumerInterruptedException, InterruptedException {
+        final long nextSequence = UNSAFE.getAndAddLong(
+                this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET, 1L) + 1L; // fetch-and-add
+
+        while (true) {
+            final long consumerSequence = this.consumerSequence;
+
+            if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+                throw ConsumerInterruptedException.INSTANCE;
+            }
+
+            // the ring must be read after the consumer's sequence, since the consumer publishes a new ring
+            // before it moves its sequence further
+            final Ring ring = ring(nextSequence);
+
+            if (nextSequence - Math.max(consumerSequence, ring.baseSequence - 1) <= ring.size) {
+                break; // there is some free space in the buffer
+            }
+
+            // we are here because the buffer is full, so...
+            LockSupport.parkNanos(1); // let's give a good chance to the consumer
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        return nextSequence;
+    }
+
+    @Override
+    long producerTryNext() throws ConsumerInterruptedException {
+        while (true) {
+            final long claimedSequence = uncommittedProducersSequence;
+            final long consumerSequence = this.consumerSequence;
+
+            if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+                throw ConsumerInterruptedException.INSTANCE;
+            }
+
+            final long nextSequence = claimedSequence + 1;
+            final Ring ring = ring(nextSequence); // read after the consumer's sequence, as producerNext() does
+
+            if (nextSequence - Math.max(consumerSequence, ring.baseSequence - 1) > ring.size) {
+                return NOTHING_AVAILABLE_SEQUENCE;
+            }
+
+            if (UNSAFE.compareAndSwapLong(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET, claimedSequence, nextSequence)) {
+                return nextSequence;
+            }
+        }
+    }
+
+    @Override
+    public void producerCommit(final long sequence) {
+        final Ring ring = ring(sequence);
+
+        UNSAFE.putOrderedInt(ring.states, ring.stateAddress(sequence), ring.lap(sequence));
+
+        notifyWaiters();
+    }
+
+    @Override
+    public long consumerNext() throws InterruptedException {
+        final long consumerSequence = this.consumerSequence; // this thread owns the value
+
+        if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+            throw new IllegalStateException(CONSUMER_WAS_CLOSED_MESSAGE, new ConsumerInterruptedException());
+        }
+
+        long sequence = consumerSequence;
+        while (true) { // a loop, since a run of aborted entries may be long
+            // check the message first
+            final Object msg = message;
+            if (msg != null) {
+                messageCache = msg;
+                return MESSAGE_RECEIVED_SEQUENCE;
+            }
+
+            // continue with the buffer and the message again
+            sequence++;
+
+            final Ring ring = consumerRing(sequence);
+            final long stateAddress = ring.stateAddress(sequence);
+            final int lap = ring.lap(sequence);
+
+            if (UNSAFE.getIntVolatile(ring.states, stateAddress) != lap) { // the consumer is going to wait
+                shrinkIfIdle();
+            }
+
+            final long result = consumerWait(sequence, ring.states, stateAddress, lap);
+
+            if (result != ABORTED_SEQUENCE) {
+                return result;
+            }
+
+            consumerCommit(sequence); // the aborted entry is skipped
+        }
+    }
+
+    /**
+     * Aborts the claimed sequence the same way Cab does. The sequence of a ring which is unlinked by the consumer
+     * already is consumed or skipped, so, it's refused as a stale one.
+     *
+     * @param sequence to be aborted
+     * @return true if the sequence was aborted, false if it is already committed, aborted or consumed, or if it
+     * isn't claimed or its slot isn't released yet
+     */
+    @Override
+    public boolean producerAbort(final long sequence) {
+        final long consumerSequence = this.consumerSequence;
+        if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE || sequence <= consumerSequence ||
+                sequence > claimedSequence()) {
+            return false;
+        }
+
+        Ring ring = this.ring;
+        while (ring != null && sequence < ring.baseSequence) { // the previous rings are unlinked by the consumer
+            ring = ring.previous;
+        }
+        if (ring == null || sequence - Math.max(consumerSequence, ring.baseSequence - 1) > ring.size) {
+            return false;
+        }
+
+        if (!abortSlot(ring.states, ring.stateAddress(sequence), ring.lap(sequence))) {
+            return false;
+        }
+        notifyWaiters();
+        return true;
+    }
+
+    @Override
+    public long consumerPoll() throws InterruptedException {
+        final long sequence = super.consumerPoll();
+        if (sequence == NOTHING_AVAILABLE_SEQUENCE) {
+            shrinkIfIdle();
+        }
+        return sequence;
+    }
+
+    @Override
+    public void consumerCommit(final long sequence) {
+        if (sequence != MESSAGE_RECEIVED_SEQUENCE) {
+            resizeIfRequired(sequence);
+        }
+        super.consumerCommit(sequence);
+    }
+
+    /**
+     * Returns the Cab to its initial sequences the same way Cab does, the grown Ring Buffers are dropped, so,
+     * the Cab starts from its initial size again.
+     *
+     * @throws IllegalStateException if the Cab has claimed entries which are not consumed or if it is registered
+     *                               with a selector
+     */
+    @Override
+    public void reset() {
+        super.reset(); // the initial Ring Buffer is the one of Cab
+
+        fullCommits = 0;
+        idleCommits = 0;
+        idle = false;
+
+        final Ring initialRing = new Ring(0, minBufferSize, entries, entryStates);
+        consumerRing = initialRing;
+        ring = initialRing;
+    }
+
+    @Override
+    int slotReadiness(final long sequence) {
+        Ring ring = this.ring;
+        while (ring != null && sequence < ring.baseSequence) { // the previous rings are unlinked by the consumer
+            ring = ring.previous;
+        }
+        return ring != null ? slotReadiness(ring.states, ring.stateAddress(sequence), ring.lap(sequence)) :
+                SLOT_PENDING;
+    }
+
+    @Override
+    long availableSequence(final long consumerSequence) {
+        long sequence = consumerSequence + 1;
+        while (true) {
+            Ring ring = this.ring;
+            while (ring != null && sequence < ring.baseSequence) { // the previous rings are unlinked by the consumer
+                // once they are consumed, which a reader of the metrics may observe
+                ring = ring.previous;
+            }
+
+            if (ring == null ||
+                    sequence - Math.max(consumerSequence, ring.baseSequence - 1) > ring.size ||
+                    UNSAFE.getIntVolatile(ring.states, ring.stateAddress(sequence)) != ring.lap(sequence)) {
+                return sequence - 1;
+            }
+            sequence++;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E getEntry(final long sequence) {
+        final Ring ring = ring(sequence);
+        return (E) UNSAFE.getObjectVolatile(ring.entries, ring.entryAddress(sequence));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E removeEntry(final long sequence) {
+        final Ring ring = ring(sequence);
+        final long entryAddress = ring.entryAddress(sequence);
+        final E result = (E) UNSAFE.getObjectVolatile(ring.entries, entryAddress);
+        UNSAFE.putObjectVolatile(ring.entries, entryAddress, null);
+        return result;
+    }
+
+    @Override
+    public void setEntry(final long sequence, final E entry) {
+        final Ring ring = ring(sequence);
+        UNSAFE.putObjectVolatile(ring.entries, ring.entryAddress(sequence), entry);
+    }
+
+    private Ring ring(final long sequence) { // the sequence must not be consumed yet, or its ring may be unlinked
+        Ring result = ring;
+        while (sequence < result.baseSequence) {
+            result = result.previous;
+        }
+        return result;
+    }
+
+    private Ring consumerRing(final long sequence) {
+        Ring result = consumerRing;
+
+        final Ring recentRing = ring;
+        if (recentRing != result && sequence >= recentRing.baseSequence) { // the consumer enters the new ring
+            recentRing.previous = null; // all the sequences of the previous ring are consumed already
+            consumerRing = recentRing;
+            result = recentRing;
+        }
+        return result;
+    }
+
+    private void resizeIfRequired(final long sequence) {
+        final Ring currentRing = consumerRing(sequence); // the sequence may be read without consumerNext()
+
+        if (ring != currentRing) { // the previous resizing isn't finished by the consumer yet
+            return;
+        }
+
+        final int size = currentRing.size;
+
+        final long occupancy = uncommittedProducersSequence - sequence;
+
+        if (occupancy >= size) {
+            idleCommits = 0;
+            idle = false;
+
+            if (size < maxBufferSize && ++fullCommits >= (long) size * FULL_LAPS_TO_GROW) {
+                resize(size << 1);
+            }
+        } else if (occupancy <= (size >> 2)) {
+            fullCommits = 0;
+
+            if (size > minBufferSize && ++idleCommits >= (long) size * IDLE_LAPS_TO_SHRINK) {
+                resize(size >> 1);
+            }
+        } else {
+            fullCommits = 0;
+            idleCommits = 0;
+            idle = false;
+        }
+    }
+
+    private void shrinkIfIdle() { // called by the consumer when it finds nothing to read
+        final long now = System.nanoTime();
+        if (!idle) {
+            idle = true;
+            idleSince = now;
+            return;
+        }
+        if (now - idleSince < IDLE_NANOS_TO_SHRINK) {
+            return;
+        }
+        idleSince = now; // the next shrinking takes another period
+
+        final Ring currentRing = consumerRing;
+        if (ring != currentRing) { // the previous resizing isn't finished by the consumer yet
+            return;
+        }
+
+        final int size = currentRing.size;
+        final long occupancy = uncommittedProducersSequence - consumerSequence;
+        if (size <= minBufferSize || occupancy > (size >> 2)) {
+            return;
+        }
+
+        int newSize = size >> 1; // the occupancy is at most a half of the new size
+        while (newSize > minBufferSize && occupancy <= (newSize >> 2)) {
+            newSize >>= 1;
+        }
+        resize(newSize);
+    }
+
+    private void resize(final int newSize) {
+        fullCommits = 0;
+        idleCommits = 0;
+        idle = false;
+
+        final Ring currentRing = consumerRing;
+
+        // the producers can claim in the current ring up to the last consumer's sequence plus the ring's size,
+        // the consumer's sequence isn't published yet, so, all next sequences belong to the new ring
+        final long baseSequence = Math.max(consumerSequence, currentRing.baseSequence - 1) + currentRing.size + 1;
+
+        final Ring newRing = new Ring(
+                baseSequence,
+                newSize,
+                new Object[newSize + 2 * ENTRY_ARRAY_PAD],
+                new int[newSize + 2 * STATE_ARRAY_PAD]);
+
+        Arrays.fill(newRing.states, NOT_COMMITTED_STATE);
+
+        if (supplier != null) {
+            for (long sequence = baseSequence; sequence < baseSequence + newSize; sequence++) {
+                UNSAFE.putObject(newRing.entries, newRing.entryAddress(sequence), supplier.get());
+            }
+        }
+
+        newRing.previous = currentRing;
+
+        ring = newRing; // publish the ring before the consumer's sequence
+    }
+
+    static final class Ring {
+        final long baseSequence;
+        final int size;
+        final long indexMask;
+        final int indexShift;
+        final Object[] entries;
+        final int[] states;
+
+        Ring previous; // written by the consumer only, the ring is published by the volatile write
+
+        Ring(final long baseSequence, final int size, final Object[] entries, final int[] states) {
+            this.baseSequence = baseSequence;
+            this.size = size;
+            this.indexMask = size - 1;
+            this.indexShift = Integer.numberOfTrailingZeros(size);
+            this.entries = entries;
+            this.states = states;
+        }
+
+        long entryAddress(final long sequence) {
+            return ENTRY_ARRAY_BASE + ((sequence & indexMask) << ENTRY_ARRAY_ELEMENT_SHIFT);
+        }
+
+        long stateAddress(final long sequence) {
+            return STATE_ARRAY_BASE + ((sequence & indexMask) << STATE_ARRAY_ELEMENT_SHIFT);
+        }
+
+        int lap(final long sequence) { // counted from the base, so, the first lap always differs from the initial
+            // state of a slot
+            return (int) ((sequence - baseSequence) >>> indexShift);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+/**
+ * JDK Flight Recorder events of the Cab's slow paths. The events are emitted by {@link CabFlightRecorder}, which is
+ * loaded only if the jdk.jfr module is present, so, the Cab runs on Java 8 before 8u262 and on the runtimes linked
+ * without the module, where no events are emitted. The events are passed around as Objects to keep the callers free
+ * of the jdk.jfr types.
+ * <p>
+ * The fast paths of the Cab never call these methods.
+ */
+final class CabEvents {
+    static final String SPINNING_PHASE = "spinning";
+    static final String YIELDING_PHASE = "yielding";
+    static final String MUTEX_PHASE = "mutex";
+
+    private static final String FLIGHT_RECORDER_EVENT_CLASS_NAME = "jdk.jfr.Event";
+
+    private static final boolean FLIGHT_RECORDER_PRESENT = isFlightRecorderPresent();
+
+    private CabEvents() {
+    }
+
+    static Object beginProducerWait() {
+        return FLIGHT_RECORDER_PRESENT ? CabFlightRecorder.beginProducerWait() : null;
+    }
+
+    static void endProducerWait(final Object event, final long sequence, final int bufferSize) {
+        if (event != null) {
+            CabFlightRecorder.endProducerWait(event, sequence, bufferSize);
+        }
+    }
+
+    static Object beginSenderWait(final String phase) {
+        return FLIGHT_RECORDER_PRESENT ? CabFlightRecorder.beginSenderWait(phase) : null;
+    }
+
+    static void endSenderWait(final Object event) {
+        if (event != null) {
+            CabFlightRecorder.endSenderWait(event);
+        }
+    }
+
+    static Object beginConsumerWait() {
+        return FLIGHT_RECORDER_PRESENT ? CabFlightRecorder.beginConsumerWait() : null;
+    }
+
+    static void endConsumerWait(final Object event, final long sequence) {
+        if (event != null) {
+            CabFlightRecorder.endConsumerWait(event, sequence);
+        }
+    }
+
+    static Object beginConsumerStall(final Cab<?, ?> cab, final long sequence) {
+        if (!FLIGHT_RECORDER_PRESENT) {
+            return null;
+        }
+        final long claimedSequence = cab.claimedSequence();
+        if (claimedSequence < sequence) { // the buffer is just empty
+            return null;
+        }
+        return CabFlightRecorder.beginConsumerStall(claimedSequence);
+    }
+
+    static void endConsumerStall(final Object event, final long sequence) {
+        if (event != null) {
+            CabFlightRecorder.endConsumerStall(event, sequence);
+        }
+    }
+
+    private static boolean isFlightRecorderPresent() {
+        try {
+            Class.forName(FLIGHT_RECORDER_EVENT_CLASS_NAME, false, CabEvents.class.getClassLoader());
+            return true;
+        } catch (final ClassNotFoundException | LinkageError e) { // the module isn't present in the runtime
+            return false;
+        }
+    }
+}
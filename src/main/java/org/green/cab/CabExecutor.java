@@ -0,0 +1,432 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single-thread executor whose task queue is a Cab with preallocated task holders, so, execute() doesn't allocate
+ * and doesn't hand off any lock between the submitters and the executing thread while the thread is busy. The tasks
+ * are executed one by one in the order they were claimed, which makes the executor a drop-in replacement of
+ * Executors.newSingleThreadExecutor() for serializing the access to a state.
+ * <p>
+ * Since a capturing lambda passed to execute(Runnable) is allocated by the caller anyway, the reusable tasks can be
+ * executed with an argument by execute(Task, Object) instead, so, nothing is allocated at all.
+ * <p>
+ * When the Ring Buffer is full, the task is handled according to the {@link RejectionPolicy}. After shutdown(),
+ * the tasks are rejected with RejectedExecutionException by the BLOCK and ABORT policies and discarded by
+ * the others, while all the tasks accepted before are executed. An exception thrown by a task is passed to
+ * the uncaught exception handler of the executing thread, which keeps running.
+ */
+public final class CabExecutor extends AbstractExecutorService {
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+    private static final int STOP = 2;
+    private static final int TERMINATED = 3;
+
+    private static final Object SHUTDOWN_MESSAGE = new Object();
+
+    private static final String RING_BUFFER_IS_FULL_MESSAGE = "Ring Buffer is full";
+    private static final String EXECUTOR_WAS_SHUT_DOWN_MESSAGE = "Executor was shut down";
+
+    /**
+     * Defines what execute() does when the Ring Buffer is full.
+     */
+    public enum RejectionPolicy {
+        /**
+         * Waits for the executing thread to free an entry.
+         */
+        BLOCK,
+        /**
+         * Throws RejectedExecutionException.
+         */
+        ABORT,
+        /**
+         * Runs the task in the calling thread.
+         */
+        CALLER_RUNS,
+        /**
+         * Drops the task silently.
+         */
+        DISCARD
+    }
+
+    /**
+     * A reusable task, which is executed with an argument.
+     *
+     * @param <A> types of arguments
+     */
+    @FunctionalInterface
+    public interface Task<A> {
+        /**
+         * Runs the task.
+         *
+         * @param argument passed to execute()
+         */
+        void run(A argument);
+    }
+
+    private final Cab<TaskHolder, Object> cab;
+    private final RejectionPolicy rejectionPolicy;
+    private final Thread thread;
+    private final CountDownLatch termination = new CountDownLatch(1);
+
+    private volatile int state = RUNNING;
+    private volatile List<Runnable> unexecutedTasks = Collections.emptyList(); // set by the executing thread
+
+    /**
+     * Creates an executor, which starts its thread at once.
+     *
+     * @param bufferSize      size of the task queue
+     * @param maxSpins        how many times the idle thread spins before yielding
+     * @param maxYields       how many times the idle thread yields before waiting on the mutex
+     * @param rejectionPolicy what to do when the queue is full
+     */
+    public CabExecutor(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final RejectionPolicy rejectionPolicy) {
+
+        this(bufferSize, maxSpins, maxYields, rejectionPolicy, task -> new Thread(task, "cab-executor"));
+    }
+
+    /**
+     * Creates an executor, which starts its thread at once.
+     *
+     * @param bufferSize      size of the task queue
+     * @param maxSpins        how many times the idle thread spins before yielding
+     * @param maxYields       how many times the idle thread yields before waiting on the mutex
+     * @param rejectionPolicy what to do when the queue is full
+     * @param threadFactory   creates the executing thread
+     */
+    public CabExecutor(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final RejectionPolicy rejectionPolicy,
+            final ThreadFactory threadFactory) {
+
+        this.cab = new CabBackingOff<>(bufferSize, maxSpins, maxYields, TaskHolder::new);
+        this.rejectionPolicy = rejectionPolicy;
+        this.thread = threadFactory.newThread(this::run);
+        this.thread.start();
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+
+        final long sequence = claim(command, null, null);
+        if (sequence == Cab.NOTHING_AVAILABLE_SEQUENCE) {
+            return;
+        }
+
+        cab.getEntry(sequence).runnable = command;
+        cab.producerCommit(sequence);
+    }
+
+    /**
+     * Executes the reusable task with the argument without any allocation.
+     *
+     * @param task     to be executed
+     * @param argument to be passed to the task
+     * @param <A>      types of arguments
+     */
+    @SuppressWarnings("unchecked")
+    public <A> void execute(final Task<? super A> task, final A argument) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+
+        final long sequence = claim(null, task, argument);
+        if (sequence == Cab.NOTHING_AVAILABLE_SEQUENCE) {
+            return;
+        }
+
+        final TaskHolder holder = cab.getEntry(sequence);
+        holder.task = (Task<Object>) task;
+        holder.argument = argument;
+        cab.producerCommit(sequence);
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            if (state != RUNNING) {
+                return;
+            }
+            state = SHUTDOWN;
+        }
+
+        try {
+            cab.send(SHUTDOWN_MESSAGE); // wakes up the executing thread to drain the queue
+        } catch (final ConsumerInterruptedException | InterruptedException e) {
+            // the executing thread has finished
+        }
+    }
+
+    /**
+     * Stops the executor, interrupts the running task and returns the tasks which weren't executed. Unlike
+     * the JDK executors, this method waits for the running task to finish, since the queue can be drained by
+     * the executing thread only.
+     *
+     * @return the tasks which weren't executed
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        synchronized (this) {
+            if (state < STOP) {
+                state = STOP;
+            }
+        }
+
+        thread.interrupt();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                termination.await();
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return unexecutedTasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return state != RUNNING;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return state == TERMINATED;
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return termination.await(timeout, unit);
+    }
+
+    /**
+     * Claims a sequence for the task or handles the task according to the rejection policy.
+     *
+     * @param command  to be executed, or null if the task is executed
+     * @param task     to be executed with the argument, or null if the command is executed
+     * @param argument to be passed to the task
+     * @return the claimed sequence or NOTHING_AVAILABLE_SEQUENCE if the task was handled otherwise
+     */
+    private long claim(final Runnable command, final Task<?> task, final Object argument) {
+        if (state != RUNNING) {
+            return reject(command, task, argument, true);
+        }
+
+        final long sequence;
+        try {
+            if (rejectionPolicy == RejectionPolicy.BLOCK) {
+                sequence = cab.producerNext();
+            } else {
+                sequence = cab.producerTryNext();
+                if (sequence == Cab.NOTHING_AVAILABLE_SEQUENCE) {
+                    return reject(command, task, argument, false);
+                }
+            }
+        } catch (final ConsumerInterruptedException e) {
+            return reject(command, task, argument, true);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
+
+        // the state is read after the sequence is claimed, while the executing thread reads the claimed sequence
+        // after the state is changed, so, either the task is executed before the termination or it's rejected here
+        if (state != RUNNING) {
+            cab.producerAbort(sequence);
+            return reject(command, task, argument, true);
+        }
+        return sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    private long reject(final Runnable command, final Task<?> task, final Object argument, final boolean shutDown) {
+        switch (rejectionPolicy) {
+            case BLOCK:
+            case ABORT:
+                throw new RejectedExecutionException(
+                        shutDown ? EXECUTOR_WAS_SHUT_DOWN_MESSAGE : RING_BUFFER_IS_FULL_MESSAGE);
+
+            case CALLER_RUNS:
+                if (!shutDown) {
+                    if (command != null) {
+                        command.run();
+                    } else {
+                        ((Task<Object>) task).run(argument);
+                    }
+                }
+                break;
+
+            case DISCARD:
+                break;
+
+            default:
+                throw new IllegalStateException();
+        }
+        return Cab.NOTHING_AVAILABLE_SEQUENCE;
+    }
+
+    private void run() {
+        try {
+            while (state == RUNNING) {
+                final long sequence;
+                try {
+                    sequence = cab.consumerNext();
+                } catch (final InterruptedException e) {
+                    continue; // e.g., a cancelled task interrupted the thread late, only the state stops it
+                }
+                if (sequence == Cab.MESSAGE_RECEIVED_SEQUENCE) { // the only message is SHUTDOWN_MESSAGE
+                    cab.consumerCommit(sequence);
+                    continue;
+                }
+                runTask(sequence);
+            }
+
+            // no tasks are claimed after the state is changed, so, all the accepted ones are up to this sequence
+            final long lastSequence = cab.claimedSequence();
+            while (state == SHUTDOWN && cab.observedConsumerSequence() < lastSequence) {
+                // consumerNext() would wait forever for the sequence after the last one if the last one is aborted
+                final long sequence;
+                try {
+                    sequence = cab.consumerPoll();
+                } catch (final InterruptedException e) {
+                    continue;
+                }
+                if (sequence == Cab.NOTHING_AVAILABLE_SEQUENCE) {
+                    Thread.yield(); // a producer is committing or aborting its claimed sequence
+                    continue;
+                }
+                if (sequence == Cab.MESSAGE_RECEIVED_SEQUENCE) {
+                    cab.consumerCommit(sequence);
+                    continue;
+                }
+                runTask(sequence);
+            }
+        } finally {
+            if (state == STOP) {
+                Thread.interrupted(); // nothing waits below
+                unexecutedTasks = drain();
+            }
+            cab.consumerInterrupt();
+            state = TERMINATED;
+            termination.countDown();
+        }
+    }
+
+    private void runTask(final long sequence) {
+        final TaskHolder holder = cab.getEntry(sequence);
+        final Runnable command = holder.runnable;
+        final Task<Object> task = holder.task;
+        final Object argument = holder.argument;
+        holder.clear();
+
+        cab.consumerCommit(sequence); // the entry is free while the task is running
+
+        // the interrupt of a cancelled task mustn't reach the next one, unless shutdownNow() has interrupted
+        // the thread, which changes the state before the interrupt
+        if (Thread.interrupted() && state == STOP) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if (command != null) {
+                command.run();
+            } else {
+                task.run(argument);
+            }
+        } catch (final Throwable t) {
+            final Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Runnable> drain() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final long lastSequence = cab.claimedSequence();
+
+        try {
+            while (cab.observedConsumerSequence() < lastSequence) {
+                final long sequence = cab.consumerPoll();
+                if (sequence == Cab.NOTHING_AVAILABLE_SEQUENCE) {
+                    Thread.yield(); // a producer is committing or aborting its claimed sequence
+                    continue;
+                }
+                if (sequence == Cab.MESSAGE_RECEIVED_SEQUENCE) {
+                    cab.consumerCommit(sequence);
+                    continue;
+                }
+
+                final TaskHolder holder = cab.getEntry(sequence);
+                if (holder.runnable != null) {
+                    tasks.add(holder.runnable);
+                } else {
+                    final Task<Object> task = holder.task;
+                    final Object argument = holder.argument;
+                    tasks.add(() -> task.run(argument));
+                }
+                holder.clear();
+                cab.consumerCommit(sequence);
+            }
+        } catch (final InterruptedException e) {
+            // consumerPoll() doesn't wait
+        }
+        return tasks;
+    }
+
+    private static final class TaskHolder {
+        private Runnable runnable;
+        private Task<Object> task;
+        private Object argument;
+
+        void clear() {
+            runnable = null;
+            task = null;
+            argument = null;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder events of the Cab's slow paths, emitted via {@link CabEvents}. This is the only class which
+ * depends on the jdk.jfr module, so, it's loaded only if the module is present. An event object is created only if
+ * its type is enabled in a running recording, so, the events cost nothing but a check of a flag if no recording is
+ * running.
+ */
+final class CabFlightRecorder {
+    private static final String CATEGORY = "Green Cab";
+    private static final String THRESHOLD = "100 us";
+
+    private static final EventType PRODUCER_WAIT_TYPE = eventType(ProducerWait.class);
+    private static final EventType SENDER_WAIT_TYPE = eventType(SenderWait.class);
+    private static final EventType CONSUMER_WAIT_TYPE = eventType(ConsumerWait.class);
+    private static final EventType CONSUMER_STALL_TYPE = eventType(ConsumerStall.class);
+
+    private CabFlightRecorder() {
+    }
+
+    static ProducerWait beginProducerWait() {
+        if (!isEnabled(PRODUCER_WAIT_TYPE)) {
+            return null;
+        }
+        final ProducerWait event = new ProducerWait();
+        event.begin();
+        return event;
+    }
+
+    static void endProducerWait(final Object producerWait, final long sequence, final int bufferSize) {
+        final ProducerWait event = (ProducerWait) producerWait;
+        event.end();
+        if (event.shouldCommit()) {
+            event.sequence = sequence;
+            event.bufferSize = bufferSize;
+            event.commit();
+        }
+    }
+
+    static SenderWait beginSenderWait(final String phase) {
+        if (!isEnabled(SENDER_WAIT_TYPE)) {
+            return null;
+        }
+        final SenderWait event = new SenderWait();
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    static void endSenderWait(final Object senderWait) {
+        final SenderWait event = (SenderWait) senderWait;
+        event.end();
+        if (event.shouldCommit()) {
+            event.commit();
+        }
+    }
+
+    static ConsumerWait beginConsumerWait() {
+        if (!isEnabled(CONSUMER_WAIT_TYPE)) {
+            return null;
+        }
+        final ConsumerWait event = new ConsumerWait();
+        event.begin();
+        return event;
+    }
+
+    static void endConsumerWait(final Object consumerWait, final long sequence) {
+        final ConsumerWait event = (ConsumerWait) consumerWait;
+        event.end();
+        if (event.shouldCommit()) {
+            event.sequence = sequence;
+            event.commit();
+        }
+    }
+
+    static ConsumerStall beginConsumerStall(final long claimedSequence) {
+        if (!isEnabled(CONSUMER_STALL_TYPE)) {
+            return null;
+        }
+        final ConsumerStall event = new ConsumerStall();
+        event.claimedSequence = claimedSequence;
+        event.begin();
+        return event;
+    }
+
+    static void endConsumerStall(final Object consumerStall, final long sequence) {
+        final ConsumerStall event = (ConsumerStall) consumerStall;
+        event.end();
+        if (event.shouldCommit()) {
+            event.sequence = sequence;
+            event.commit();
+        }
+    }
+
+    private static EventType eventType(final Class<? extends Event> eventClass) {
+        try {
+            return EventType.getEventType(eventClass);
+        } catch (final IllegalStateException e) { // the flight recorder is disabled in the JVM
+            return null;
+        }
+    }
+
+    private static boolean isEnabled(final EventType eventType) {
+        return eventType != null && eventType.isEnabled();
+    }
+
+    @Name("org.green.cab.ProducerWait")
+    @Label("Cab Producer Wait")
+    @Category(CATEGORY)
+    @Description("A producer waits in producerNext() for the consumer since the Ring Buffer is full")
+    @Threshold(THRESHOLD)
+    static final class ProducerWait extends Event {
+        @Label("Sequence")
+        long sequence;
+
+        @Label("Buffer Size")
+        int bufferSize;
+    }
+
+    @Name("org.green.cab.SenderWait")
+    @Label("Cab Sender Wait")
+    @Category(CATEGORY)
+    @Description("A sender waits in send() for the Channel to be free, spinning, yielding or on the mutex")
+    @Threshold(THRESHOLD)
+    static final class SenderWait extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("org.green.cab.ConsumerWait")
+    @Label("Cab Consumer Wait")
+    @Category(CATEGORY)
+    @Description("The consumer waits on the mutex for an entry or a message")
+    @Threshold(THRESHOLD)
+    static final class ConsumerWait extends Event {
+        @Label("Sequence")
+        long sequence;
+    }
+
+    @Name("org.green.cab.ConsumerStall")
+    @Label("Cab Consumer Stall")
+    @Category(CATEGORY)
+    @Description("The consumer waits for an entry claimed by a producer with producerNext(), but not committed yet")
+    @Threshold(THRESHOLD)
+    static final class ConsumerStall extends Event {
+        @Label("Sequence")
+        long sequence;
+
+        @Label("Claimed Sequence")
+        long claimedSequence;
+    }
+}
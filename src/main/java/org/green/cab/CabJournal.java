@@ -0,0 +1,391 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Journal of the entries and messages consumed from a Cab. The journal appends the records to memory-mapped segment
+ * files of a fixed size in a directory and rolls to the next segment when a record doesn't fit into the current one.
+ * <p>
+ * The consumer passes every sequence it gets from consumerNext() to append(cab, sequence) before the sequence is
+ * committed. When no more entries are available for the consumer, that is the drained batch is journaled, the journal
+ * forces the segment to the storage and records a checkpoint with the position of the journal and the last journaled
+ * consumer's sequence. This way only one force() call is done per batch and no any objects are allocated per record,
+ * since the values are serialized directly to the mapped memory with a pluggable {@link CabSerializer}.
+ * <p>
+ * On restart, the records up to the checkpoint can be streamed back through a Cab with replay(cab). The consumer keeps
+ * appending to the journal while the replay is in progress, but the replayed records are recognized and skipped
+ * as soon as no other producers and senders are active during the replay. The records written after the last
+ * checkpoint are discarded on opening and overwritten by new ones.
+ * <p>
+ * append(cab, sequence), commit() and close() can be called from one single consumer thread only.
+ *
+ * @param <E> types of entries in the Ring Buffer
+ * @param <M> type of message in the Channel
+ */
+public class CabJournal<E, M> implements AutoCloseable {
+    static final String SEGMENT_FILE_SUFFIX = ".journal";
+    static final String CHECKPOINT_FILE_NAME = "checkpoint";
+
+    private static final int RECORD_LENGTH_OFFSET = 0;
+    private static final int RECORD_TYPE_OFFSET = 4;
+    private static final int RECORD_SEQUENCE_OFFSET = 5;
+    private static final int RECORD_HEADER_LENGTH = 13;
+
+    private static final byte END_OF_SEGMENT_RECORD_TYPE = 0;
+    private static final byte ENTRY_RECORD_TYPE = 1;
+    private static final byte MESSAGE_RECORD_TYPE = 2;
+
+    private static final int CHECKPOINT_SEGMENT_OFFSET = 0;
+    private static final int CHECKPOINT_POSITION_OFFSET = 8;
+    private static final int CHECKPOINT_SEQUENCE_OFFSET = 16;
+    private static final int CHECKPOINT_LENGTH = 24;
+
+    private static final long INITIAL_SEQUENCE = -1;
+
+    private static final String SEGMENT_SIZE_IS_TOO_SMALL_MESSAGE = "segmentSize is too small";
+    private static final String CANNOT_CREATE_DIRECTORY_MESSAGE = "Cannot create directory: ";
+    private static final String RECORD_DOES_NOT_FIT_MESSAGE = "Record doesn't fit into a segment";
+    private static final String UNEXPECTED_SERIALIZED_SIZE_MESSAGE = "Serializer wrote unexpected number of bytes";
+    private static final String UNKNOWN_RECORD_TYPE_MESSAGE = "Unknown record type: ";
+    private static final String MISSING_SEGMENT_MESSAGE = "Missing segment: ";
+    private static final String CANNOT_DELETE_SEGMENT_MESSAGE = "Cannot delete segment: ";
+
+    private final File directory;
+    private final int segmentSize;
+    private final CabSerializer<E> entrySerializer;
+    private final CabSerializer<M> messageSerializer;
+
+    private final MappedByteBuffer checkpoint;
+
+    private final long firstSegment;
+    private final long replaySegment;
+    private final int replayPosition;
+
+    private long segment;
+    private MappedByteBuffer segmentBuffer;
+    private int position;
+    private boolean dirty;
+
+    private long lastSequence = INITIAL_SEQUENCE;
+    private long availableSequence = INITIAL_SEQUENCE;
+
+    private volatile long replayedRecords;
+    private long skippedRecords;
+
+    /**
+     * Opens the journal in the directory or creates a new one if the directory doesn't contain any.
+     *
+     * @param directory         of the segment files and the checkpoint
+     * @param segmentSize       size of new segment files in bytes
+     * @param entrySerializer   serializer of entries
+     * @param messageSerializer serializer of messages
+     * @throws IOException if the journal cannot be opened
+     */
+    public CabJournal(
+            final File directory,
+            final int segmentSize,
+            final CabSerializer<E> entrySerializer,
+            final CabSerializer<M> messageSerializer) throws IOException {
+
+        if (segmentSize <= RECORD_HEADER_LENGTH) {
+            throw new IllegalArgumentException(SEGMENT_SIZE_IS_TOO_SMALL_MESSAGE);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(CANNOT_CREATE_DIRECTORY_MESSAGE + directory);
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.entrySerializer = entrySerializer;
+        this.messageSerializer = messageSerializer;
+
+        final File checkpointFile = new File(directory, CHECKPOINT_FILE_NAME);
+        final boolean newJournal = !checkpointFile.exists();
+
+        checkpoint = map(checkpointFile, CHECKPOINT_LENGTH);
+        if (newJournal) {
+            checkpoint.putLong(CHECKPOINT_SEGMENT_OFFSET, 0);
+            checkpoint.putLong(CHECKPOINT_POSITION_OFFSET, 0);
+            checkpoint.putLong(CHECKPOINT_SEQUENCE_OFFSET, INITIAL_SEQUENCE);
+            checkpoint.force();
+        }
+
+        replaySegment = checkpoint.getLong(CHECKPOINT_SEGMENT_OFFSET);
+        replayPosition = (int) checkpoint.getLong(CHECKPOINT_POSITION_OFFSET);
+
+        long first = replaySegment;
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                final long fileSegment = segmentOf(file);
+                if (fileSegment < 0) {
+                    continue;
+                }
+                if (fileSegment > replaySegment) { // written after the checkpoint
+                    if (!file.delete()) {
+                        throw new IOException(CANNOT_DELETE_SEGMENT_MESSAGE + file);
+                    }
+                } else if (fileSegment < first) {
+                    first = fileSegment;
+                }
+            }
+        }
+        firstSegment = first;
+
+        segment = replaySegment;
+        segmentBuffer = map(segmentFile(segment), segmentSize);
+        position = replayPosition;
+    }
+
+    /**
+     * Appends the entry or the message the consumer got with the sequence from consumerNext(). If no more entries
+     * are available for the consumer after this one, the journal is committed.
+     * <p>
+     * This method must be called before consumerCommit(sequence).
+     *
+     * @param cab      the consumer reads from
+     * @param sequence returned by consumerNext()
+     * @throws IOException if the record cannot be written
+     */
+    public void append(final Cab<E, M> cab, final long sequence) throws IOException {
+        final boolean isMessage = sequence == Cab.MESSAGE_RECEIVED_SEQUENCE;
+
+        if (skippedRecords < replayedRecords) { // this record is in the journal already
+            skippedRecords++;
+            if (!isMessage) {
+                lastSequence = sequence;
+            }
+            return;
+        }
+
+        if (isMessage) {
+            write(MESSAGE_RECORD_TYPE, lastSequence, messageSerializer, cab.getMessage());
+        } else {
+            write(ENTRY_RECORD_TYPE, sequence, entrySerializer, cab.getEntry(sequence));
+            lastSequence = sequence;
+        }
+
+        if (lastSequence >= availableSequence) { // the batch might be drained, let's check
+            availableSequence = cab.consumerAvailableSequence();
+            if (lastSequence >= availableSequence) {
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Forces the appended records to the storage and records the checkpoint.
+     *
+     * @throws IOException if the records cannot be forced
+     */
+    public void commit() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        segmentBuffer.force();
+        dirty = false;
+
+        checkpoint.putLong(CHECKPOINT_SEGMENT_OFFSET, segment);
+        checkpoint.putLong(CHECKPOINT_POSITION_OFFSET, position);
+        checkpoint.putLong(CHECKPOINT_SEQUENCE_OFFSET, lastSequence);
+        checkpoint.force();
+    }
+
+    /**
+     * Returns the last consumer's sequence recorded in the checkpoint.
+     *
+     * @return the consumer's sequence
+     */
+    public long checkpointSequence() {
+        return checkpoint.getLong(CHECKPOINT_SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Streams the records of the journal up to the checkpoint found on opening through the Cab. Entries are read into
+     * the entries of the Ring Buffer, and two message objects are reused alternately if the message serializer
+     * supports this, so, the replay doesn't allocate in the steady state.
+     * <p>
+     * This method can be called from one single producer thread only.
+     *
+     * @param cab to put the entries to and to send the messages to
+     * @return number of the replayed records
+     * @throws IOException                  if a segment cannot be read
+     * @throws ConsumerInterruptedException if the consumer was interrupted
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public long replay(final Cab<E, M> cab) throws IOException, ConsumerInterruptedException, InterruptedException {
+        long records = 0;
+
+        M message = null;
+        M spareMessage = null;
+
+        for (long s = firstSegment; s <= replaySegment; s++) {
+            final File file = segmentFile(s);
+            if (!file.exists()) {
+                throw new IOException(MISSING_SEGMENT_MESSAGE + file);
+            }
+
+            final MappedByteBuffer buffer = map(file, 0);
+            final int limit = s == replaySegment ? replayPosition : buffer.capacity();
+
+            int recordPosition = 0;
+            while (limit - recordPosition >= RECORD_HEADER_LENGTH) {
+                final byte type = buffer.get(recordPosition + RECORD_TYPE_OFFSET);
+                if (type == END_OF_SEGMENT_RECORD_TYPE) {
+                    break;
+                }
+
+                final int length = buffer.getInt(recordPosition + RECORD_LENGTH_OFFSET);
+                final int valuePosition = recordPosition + RECORD_HEADER_LENGTH;
+
+                buffer.limit(valuePosition + length);
+                buffer.position(valuePosition);
+
+                switch (type) {
+                    case ENTRY_RECORD_TYPE: {
+                        final long sequence = cab.producerNext();
+                        final E entry = cab.getEntry(sequence);
+                        final E value = entrySerializer.read(buffer, entry);
+                        if (value != entry) {
+                            cab.setEntry(sequence, value);
+                        }
+                        replayedRecords = records + 1;
+                        cab.producerCommit(sequence);
+                        break;
+                    }
+
+                    case MESSAGE_RECORD_TYPE: {
+                        // the spare message was consumed, since the last one was accepted by the Channel
+                        final M value = messageSerializer.read(buffer, spareMessage);
+                        spareMessage = message;
+                        message = value;
+                        replayedRecords = records + 1;
+                        cab.send(value);
+                        break;
+                    }
+
+                    default:
+                        throw new IOException(UNKNOWN_RECORD_TYPE_MESSAGE + type);
+                }
+
+                buffer.limit(buffer.capacity());
+
+                records++;
+                recordPosition = valuePosition + length;
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Commits the journal.
+     *
+     * @throws IOException if the records cannot be forced
+     */
+    @Override
+    public void close() throws IOException {
+        commit();
+    }
+
+    private <T> void write(
+            final byte type,
+            final long sequence,
+            final CabSerializer<T> serializer,
+            final T value) throws IOException {
+
+        final int length = serializer.sizeOf(value);
+        final int recordLength = RECORD_HEADER_LENGTH + length;
+
+        if (position + recordLength > segmentBuffer.capacity()) {
+            if (recordLength > segmentSize) {
+                throw new IllegalArgumentException(RECORD_DOES_NOT_FIT_MESSAGE);
+            }
+            roll();
+        }
+
+        final MappedByteBuffer buffer = segmentBuffer;
+
+        final int valuePosition = position + RECORD_HEADER_LENGTH;
+        buffer.position(valuePosition);
+        serializer.write(value, buffer);
+        if (buffer.position() != valuePosition + length) {
+            throw new IllegalStateException(UNEXPECTED_SERIALIZED_SIZE_MESSAGE);
+        }
+
+        buffer.putInt(position + RECORD_LENGTH_OFFSET, length);
+        buffer.put(position + RECORD_TYPE_OFFSET, type);
+        buffer.putLong(position + RECORD_SEQUENCE_OFFSET, sequence);
+
+        position += recordLength;
+        dirty = true;
+    }
+
+    private void roll() throws IOException {
+        final MappedByteBuffer buffer = segmentBuffer;
+
+        // the rest of the segment might contain records written after the checkpoint before restart
+        if (buffer.capacity() - position >= RECORD_HEADER_LENGTH) {
+            buffer.putInt(position + RECORD_LENGTH_OFFSET, 0);
+            buffer.put(position + RECORD_TYPE_OFFSET, END_OF_SEGMENT_RECORD_TYPE);
+        }
+        buffer.force();
+
+        segment++;
+        segmentBuffer = map(segmentFile(segment), segmentSize);
+        position = 0;
+        dirty = true;
+    }
+
+    private File segmentFile(final long segment) {
+        return new File(directory, String.format("%020d", segment) + SEGMENT_FILE_SUFFIX);
+    }
+
+    private static long segmentOf(final File file) {
+        final String name = file.getName();
+        if (!name.endsWith(SEGMENT_FILE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_FILE_SUFFIX.length()));
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static MappedByteBuffer map(final File file, final int minLength) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < minLength) {
+                raf.setLength(minLength);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import sun.misc.Unsafe;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of latencies in nanoseconds. Every power of two range of values is split into 64 linear
+ * buckets, so, a value is reported with a relative error not greater than 1/64. The histogram has a fixed number of
+ * buckets and never allocates after construction.
+ * <p>
+ * A histogram is written by one single thread with record(value). Snapshots, possibly taken by other threads with
+ * copyTo(histogram), can be aggregated with add(histogram), and an interval between two snapshots can be obtained
+ * with subtract(histogram), for example:
+ * <pre>
+ *      CabLatencyHistogram current = new CabLatencyHistogram();
+ *      CabLatencyHistogram previous = new CabLatencyHistogram();
+ *      CabLatencyHistogram interval = new CabLatencyHistogram();
+ *
+ *      cab.latencyHistogram(current);
+ *      current.copyTo(interval);
+ *      interval.subtract(previous);
+ *      current.copyTo(previous);
+ *
+ *      long p999 = interval.valueAtPercentile(99.9);
+ * </pre>
+ */
+public final class CabLatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+    private static final int BUCKET_COUNT = (Long.SIZE + 1 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+    private static final String PERCENTILE_IS_OUT_OF_RANGE_MESSAGE = "percentile must be in range [0, 100]";
+
+    private static final Unsafe UNSAFE = Utils.getUnsafe();
+
+    private static final long COUNTS_BASE = UNSAFE.arrayBaseOffset(long[].class);
+    private static final int COUNTS_SHIFT = Integer.numberOfTrailingZeros(UNSAFE.arrayIndexScale(long[].class));
+
+    private final long[] counts = new long[BUCKET_COUNT];
+
+    /**
+     * Records the value. Negative values are recorded as zeros.
+     * <p>
+     * This method can be called from one single thread only.
+     *
+     * @param value to be recorded
+     */
+    public void record(final long value) {
+        final long address = COUNTS_BASE + ((long) bucket(Math.max(value, 0)) << COUNTS_SHIFT);
+        UNSAFE.putOrderedLong(counts, address, UNSAFE.getLong(counts, address) + 1);
+    }
+
+    /**
+     * Copies the counts of this histogram to the target one.
+     *
+     * @param target to copy to
+     */
+    public void copyTo(final CabLatencyHistogram target) {
+        final long[] source = counts;
+        final long[] destination = target.counts;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            destination[i] = UNSAFE.getLongVolatile(source, COUNTS_BASE + ((long) i << COUNTS_SHIFT));
+        }
+    }
+
+    /**
+     * Adds the counts of the other histogram to this one.
+     *
+     * @param other histogram
+     */
+    public void add(final CabLatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    /**
+     * Subtracts the counts of the other histogram, which must be an earlier snapshot of the same one, from this one.
+     *
+     * @param other histogram
+     */
+    public void subtract(final CabLatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] -= other.counts[i];
+        }
+    }
+
+    /**
+     * Resets all the counts.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of values
+     */
+    public long totalCount() {
+        long result = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            result += counts[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value which the given percentage of the recorded values doesn't exceed. The value is the highest one
+     * equivalent to the bucket it falls into.
+     *
+     * @param percentile in range [0, 100]
+     * @return the value or 0 if the histogram is empty
+     */
+    public long valueAtPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException(PERCENTILE_IS_OUT_OF_RANGE_MESSAGE);
+        }
+
+        final long total = totalCount();
+        if (total == 0) {
+            return 0;
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts[i];
+            if (count >= target) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return highestEquivalentValue(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the highest value equivalent to the bucket of the highest recorded value.
+     *
+     * @return the value or 0 if the histogram is empty
+     */
+    public long maxValue() {
+        for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the mean of the recorded values calculated with the middle values of their buckets.
+     *
+     * @return the mean or 0 if the histogram is empty
+     */
+    public double mean() {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            final long count = counts[i];
+            if (count != 0) {
+                total += count;
+                sum += count * ((lowestEquivalentValue(i) + (double) highestEquivalentValue(i)) / 2);
+            }
+        }
+        return total == 0 ? 0 : sum / total;
+    }
+
+    static int bucket(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // the highest bit is at SUB_BUCKET_BITS or above, so, the top SUB_BUCKET_BITS bits of the value
+        // are in range [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+        final int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    static long lowestEquivalentValue(final int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKET_HALF_COUNT - 1;
+        return (long) (bucket - shift * SUB_BUCKET_HALF_COUNT) << shift;
+    }
+
+    static long highestEquivalentValue(final int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKET_HALF_COUNT - 1;
+        return lowestEquivalentValue(bucket) + (1L << shift) - 1;
+    }
+}
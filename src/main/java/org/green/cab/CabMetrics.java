@@ -0,0 +1,279 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * A snapshot of the metrics of a Cab taken with {@link Cab#metrics(CabMetrics)}. The snapshot can be reused,
+ * so, taking it doesn't allocate.
+ * <p>
+ * The numbers of produced and consumed entries and the occupancy are derived from the sequences of the Cab, so, they
+ * are always available. The rest of the counters are collected only if the metrics were enabled at construction
+ * of the Cab, otherwise they stay zero.
+ */
+public final class CabMetrics implements CabMetricsMXBean {
+    boolean enabled;
+    boolean consumerInterrupted;
+
+    int bufferSize;
+    long entriesProduced;
+    long entriesConsumed;
+    long occupancy;
+    long consumerLag;
+
+    long messagesReceived;
+    long fullBufferWaits;
+    long spinningPhases;
+    long yieldingPhases;
+    long mutexWaits;
+    long notifications;
+
+    /**
+     * Registers a live view of the metrics of the Cab in the platform MBean server.
+     *
+     * @param cab  to be observed
+     * @param name of the MBean
+     * @throws JMException if the MBean cannot be registered
+     */
+    public static void registerMBean(final Cab<?, ?> cab, final ObjectName name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new LiveMetrics(cab), name);
+    }
+
+    /**
+     * Returns true if the counters were enabled at construction of the Cab.
+     *
+     * @return true if the counters are collected
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns true if the consumer was interrupted. The number of consumed entries, the occupancy and the consumer's
+     * lag are zero in this case.
+     *
+     * @return true if the consumer was interrupted
+     */
+    public boolean isConsumerInterrupted() {
+        return consumerInterrupted;
+    }
+
+    /**
+     * Returns actual Ring Buffer's size.
+     *
+     * @return actual buffer size
+     */
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of the sequences claimed by producers with producerNext(), which counts the claims, not
+     * the commits. The claims of the producers still waiting for some free space in the buffer are counted as well.
+     *
+     * @return the number of entries
+     */
+    @Override
+    public long getEntriesProduced() {
+        return entriesProduced;
+    }
+
+    /**
+     * Returns the number of the entries committed by the consumer.
+     *
+     * @return the number of entries
+     */
+    @Override
+    public long getEntriesConsumed() {
+        return entriesConsumed;
+    }
+
+    /**
+     * Returns the number of the slots taken by the entries claimed by producers, but not consumed yet, which never
+     * exceeds the buffer's size, since the claims of the producers waiting for some free space aren't counted.
+     *
+     * @return the number of entries
+     */
+    @Override
+    public long getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * Returns the number of the entries committed by producers, but not consumed yet.
+     *
+     * @return the number of entries
+     */
+    @Override
+    public long getConsumerLag() {
+        return consumerLag;
+    }
+
+    /**
+     * Returns the number of the messages committed by the consumer.
+     *
+     * @return the number of messages
+     */
+    @Override
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    /**
+     * Returns how many times producerNext() waited for the consumer because the buffer was full.
+     *
+     * @return the number of waits
+     */
+    @Override
+    public long getFullBufferWaits() {
+        return fullBufferWaits;
+    }
+
+    /**
+     * Returns how many times the backing off consumer started to spin.
+     *
+     * @return the number of phases
+     */
+    @Override
+    public long getSpinningPhases() {
+        return spinningPhases;
+    }
+
+    /**
+     * Returns how many times the backing off consumer started to yield.
+     *
+     * @return the number of phases
+     */
+    @Override
+    public long getYieldingPhases() {
+        return yieldingPhases;
+    }
+
+    /**
+     * Returns how many times the backing off or blocking consumer waited on the mutex.
+     *
+     * @return the number of waits
+     */
+    @Override
+    public long getMutexWaits() {
+        return mutexWaits;
+    }
+
+    /**
+     * Returns how many times the threads waiting on the mutex were notified.
+     *
+     * @return the number of notifications
+     */
+    @Override
+    public long getNotifications() {
+        return notifications;
+    }
+
+    @Override
+    public String toString() {
+        return "CabMetrics{" +
+                "enabled=" + enabled +
+                ", consumerInterrupted=" + consumerInterrupted +
+                ", bufferSize=" + bufferSize +
+                ", entriesProduced=" + entriesProduced +
+                ", entriesConsumed=" + entriesConsumed +
+                ", occupancy=" + occupancy +
+                ", consumerLag=" + consumerLag +
+                ", messagesReceived=" + messagesReceived +
+                ", fullBufferWaits=" + fullBufferWaits +
+                ", spinningPhases=" + spinningPhases +
+                ", yieldingPhases=" + yieldingPhases +
+                ", mutexWaits=" + mutexWaits +
+                ", notifications=" + notifications +
+                '}';
+    }
+
+    private static final class LiveMetrics implements CabMetricsMXBean {
+        private final Cab<?, ?> cab;
+        private final CabMetrics metrics = new CabMetrics();
+
+        LiveMetrics(final Cab<?, ?> cab) {
+            this.cab = cab;
+        }
+
+        @Override
+        public synchronized int getBufferSize() {
+            return cab.metrics(metrics).getBufferSize();
+        }
+
+        @Override
+        public synchronized long getEntriesProduced() {
+            return cab.metrics(metrics).getEntriesProduced();
+        }
+
+        @Override
+        public synchronized long getEntriesConsumed() {
+            return cab.metrics(metrics).getEntriesConsumed();
+        }
+
+        @Override
+        public synchronized long getOccupancy() {
+            return cab.metrics(metrics).getOccupancy();
+        }
+
+        @Override
+        public synchronized long getConsumerLag() {
+            return cab.metrics(metrics).getConsumerLag();
+        }
+
+        @Override
+        public synchronized long getMessagesReceived() {
+            return cab.metrics(metrics).getMessagesReceived();
+        }
+
+        @Override
+        public synchronized long getFullBufferWaits() {
+            return cab.metrics(metrics).getFullBufferWaits();
+        }
+
+        @Override
+        public synchronized long getSpinningPhases() {
+            return cab.metrics(metrics).getSpinningPhases();
+        }
+
+        @Override
+        public synchronized long getYieldingPhases() {
+            return cab.metrics(metrics).getYieldingPhases();
+        }
+
+        @Override
+        public synchronized long getMutexWaits() {
+            return cab.metrics(metrics).getMutexWaits();
+        }
+
+        @Override
+        public synchronized long getNotifications() {
+            return cab.metrics(metrics).getNotifications();
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * A pipeline of stages, each one is a Cab consumed by its own thread with its own handler. The entries are handed
+ * downstream by the ownership transfer: a stage takes an entry out of its Ring Buffer with removeEntry() and puts
+ * it to the next stage's one with setEntry(), so, the entries are never copied and every entry lives in one place
+ * only. After the last stage, the entries go back to the source through the return ring, from which they are
+ * taken by acquire(), so, the pipeline doesn't allocate anything after it's built.
+ * <pre>{@code
+ * CabPipeline<Order> pipeline = CabPipeline.builder(Order::new, 1024)
+ *         .stage("decode", new CabBlocking<>(1024), order -> decode(order))
+ *         .stage("match", new CabBackingOff<>(1024, 1000, 1000), order -> match(order))
+ *         .build();
+ * pipeline.start();
+ *
+ * Order order = pipeline.acquire();
+ * order.read(input);
+ * pipeline.publish(order);
+ * }</pre>
+ * close() shuts the stages down in their order: every stage handles all the entries published to it before it stops
+ * and the next stage is stopped after that. If a stage fails or is interrupted, it interrupts its Cab with
+ * consumerInterrupt(), so, the upstream stages and the publishers get {@link ConsumerInterruptedException}, and
+ * it interrupts the thread of the next stage, so, the whole pipeline stops.
+ *
+ * @param <E> types of entries
+ */
+@SuppressWarnings("try") // close() waits for the threads, so, it may be interrupted
+public final class CabPipeline<E> implements AutoCloseable {
+    private static final Object STOP_MESSAGE = new Object();
+    private static final Object FAILED_MESSAGE = new Object();
+
+    private static final String ENTRY_COUNT_MUST_BE_POSITIVE_MESSAGE = "entryCount must be positive";
+    private static final String AT_LEAST_ONE_STAGE_REQUIRED_MESSAGE = "at least one stage is required";
+    private static final String RETURN_RING_IS_TOO_SMALL_MESSAGE =
+            "the buffer size of the return ring must not be less than entryCount";
+    private static final String CAB_PIPELINE_WAS_CLOSED_MESSAGE = "CabPipeline was closed";
+
+    /**
+     * Handles the entries of a stage.
+     *
+     * @param <E> types of entries
+     */
+    @FunctionalInterface
+    public interface Handler<E> {
+        /**
+         * Handles the entry owned by the stage.
+         *
+         * @param entry to be handled
+         * @return true to hand the entry to the next stage, false to return it to the source at once
+         */
+        boolean onEntry(E entry);
+    }
+
+    /**
+     * Builds a pipeline stage by stage.
+     *
+     * @param <E> types of entries
+     */
+    public static final class Builder<E> {
+        private final Supplier<E> entryFactory;
+        private final int entryCount;
+        private final List<Stage<E>> stages = new ArrayList<>();
+        private Cab<E, Object> returnRing;
+
+        Builder(final Supplier<E> entryFactory, final int entryCount) {
+            if (entryCount < 1) {
+                throw new IllegalArgumentException(ENTRY_COUNT_MUST_BE_POSITIVE_MESSAGE);
+            }
+            this.entryFactory = entryFactory;
+            this.entryCount = entryCount;
+        }
+
+        /**
+         * Adds the next stage.
+         *
+         * @param name    of the stage, which is a part of the name of its thread
+         * @param cab     from which the stage consumes the entries, it must not be used anywhere else
+         * @param handler of the stage
+         * @return this builder
+         */
+        public Builder<E> stage(final String name, final Cab<E, Object> cab, final Handler<? super E> handler) {
+            stages.add(new Stage<>(name, cab, handler));
+            return this;
+        }
+
+        /**
+         * Sets the Cab through which the entries go back to the source. A CabBlocking is used by default.
+         *
+         * @param cab with the buffer size not less than the entry count
+         * @return this builder
+         */
+        public Builder<E> returnRing(final Cab<E, Object> cab) {
+            this.returnRing = cab;
+            return this;
+        }
+
+        /**
+         * Builds the pipeline and fills the return ring with the entries.
+         *
+         * @return the pipeline to be started
+         */
+        public CabPipeline<E> build() {
+            if (stages.isEmpty()) {
+                throw new IllegalStateException(AT_LEAST_ONE_STAGE_REQUIRED_MESSAGE);
+            }
+
+            final Cab<E, Object> ring = returnRing != null ? returnRing : new CabBlocking<>(entryCount);
+            if (ring.bufferSize() < entryCount) {
+                throw new IllegalArgumentException(RETURN_RING_IS_TOO_SMALL_MESSAGE);
+            }
+
+            return new CabPipeline<>(entryFactory, entryCount, stages, ring);
+        }
+    }
+
+    private final Stage<E>[] stages;
+    private final Cab<E, Object> returnRing;
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    private boolean started; // guarded by the lock of this object
+    private volatile boolean closed;
+
+    private CabPipeline(
+            final Supplier<E> entryFactory,
+            final int entryCount,
+            final List<Stage<E>> stages,
+            final Cab<E, Object> returnRing) {
+
+        this.stages = stages.toArray(newStages(stages.size()));
+        this.returnRing = returnRing;
+
+        for (int i = 0; i < this.stages.length; i++) {
+            this.stages[i].link(this, i + 1 < this.stages.length ? this.stages[i + 1] : null);
+        }
+
+        try {
+            for (int i = 0; i < entryCount; i++) {
+                recycle(entryFactory.get()); // never waits, since the return ring can keep all the entries
+            }
+        } catch (final ConsumerInterruptedException | InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates a builder of a pipeline with the fixed number of the entries created at once by the factory.
+     *
+     * @param entryFactory creates the entries
+     * @param entryCount   how many entries are in the pipeline
+     * @param <E>          types of entries
+     * @return the builder
+     */
+    public static <E> Builder<E> builder(final Supplier<E> entryFactory, final int entryCount) {
+        return new Builder<>(entryFactory, entryCount);
+    }
+
+    /**
+     * Starts the threads of the stages.
+     */
+    public synchronized void start() {
+        if (closed) {
+            throw new IllegalStateException(CAB_PIPELINE_WAS_CLOSED_MESSAGE);
+        }
+        if (started) {
+            return;
+        }
+        started = true;
+        for (final Stage<E> stage : stages) {
+            stage.thread.start();
+        }
+    }
+
+    /**
+     * Takes an entry returned by the stages, waiting for it if all the entries are in the pipeline. The entry may
+     * keep the data it had in the pipeline.
+     * <p>
+     * This method can be called from one single thread only, the consumer of the return ring.
+     *
+     * @return the entry owned by the caller
+     * @throws ConsumerInterruptedException if a stage has failed
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public E acquire() throws ConsumerInterruptedException, InterruptedException {
+        if (failed.get()) {
+            throw ConsumerInterruptedException.INSTANCE;
+        }
+
+        final long sequence = returnRing.consumerNext();
+        if (sequence == Cab.MESSAGE_RECEIVED_SEQUENCE) { // the only message is FAILED_MESSAGE
+            returnRing.consumerCommit(sequence);
+            throw ConsumerInterruptedException.INSTANCE;
+        }
+
+        final E entry = returnRing.removeEntry(sequence);
+        returnRing.consumerCommit(sequence);
+        return entry;
+    }
+
+    /**
+     * Hands the entry owned by the caller to the first stage.
+     *
+     * @param entry to be published
+     * @throws ConsumerInterruptedException if a stage has failed
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public void publish(final E entry) throws ConsumerInterruptedException, InterruptedException {
+        if (closed) {
+            throw new IllegalStateException(CAB_PIPELINE_WAS_CLOSED_MESSAGE);
+        }
+        stages[0].put(entry);
+    }
+
+    /**
+     * Returns the entry owned by the caller to the source without publishing it.
+     *
+     * @param entry to be returned
+     * @throws ConsumerInterruptedException never, since the return ring is never interrupted
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public void recycle(final E entry) throws ConsumerInterruptedException, InterruptedException {
+        final Cab<E, Object> ring = returnRing;
+        final long sequence = ring.producerNext(); // never waits, since it can keep all the entries
+        ring.setEntry(sequence, entry);
+        ring.producerCommit(sequence);
+    }
+
+    /**
+     * Stops the stages in their order after they handle all the published entries. No entries must be published
+     * after this call.
+     *
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!started) {
+                return;
+            }
+        }
+
+        for (final Stage<E> stage : stages) {
+            try {
+                stage.cab.send(STOP_MESSAGE); // the upstream stage is stopped, so, the Ring Buffer is final
+            } catch (final ConsumerInterruptedException e) {
+                // the stage has failed and interrupted the next one
+            }
+            stage.thread.join();
+        }
+    }
+
+    private void fail() {
+        if (!failed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            returnRing.send(FAILED_MESSAGE); // wakes up the source waiting in acquire()
+        } catch (final ConsumerInterruptedException | InterruptedException e) {
+            // the source doesn't wait anymore
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // generic arrays can't be created
+    private static <E> Stage<E>[] newStages(final int length) {
+        return new Stage[length];
+    }
+
+    private static final class Stage<E> {
+        private final Cab<E, Object> cab;
+        private final Handler<? super E> handler;
+        private final Thread thread;
+
+        private CabPipeline<E> pipeline;
+        private Stage<E> next; // null for the last stage
+
+        Stage(final String name, final Cab<E, Object> cab, final Handler<? super E> handler) {
+            this.cab = cab;
+            this.handler = handler;
+            this.thread = new Thread(this::run, "cab-pipeline-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        void link(final CabPipeline<E> pipeline, final Stage<E> next) {
+            this.pipeline = pipeline;
+            this.next = next;
+        }
+
+        void put(final E entry) throws ConsumerInterruptedException, InterruptedException {
+            final long sequence = cab.producerNext();
+            cab.setEntry(sequence, entry);
+            cab.producerCommit(sequence);
+        }
+
+        private void run() {
+            boolean failed = true;
+            try {
+                boolean stopping = false;
+                while (!stopping || cab.observedConsumerSequence() < cab.claimedSequence()) {
+                    final long sequence = cab.consumerNext();
+                    if (sequence == Cab.MESSAGE_RECEIVED_SEQUENCE) { // the only message is STOP_MESSAGE
+                        stopping = true;
+                        cab.consumerCommit(sequence);
+                        continue;
+                    }
+
+                    final E entry = cab.removeEntry(sequence);
+                    cab.consumerCommit(sequence); // the slot is free, since the entry is owned by this stage now
+
+                    if (handler.onEntry(entry) && next != null) {
+                        next.put(entry);
+                    } else {
+                        pipeline.recycle(entry);
+                    }
+                }
+                failed = false;
+            } catch (final ConsumerInterruptedException | InterruptedException e) {
+                // a downstream stage has failed or this one was interrupted by the upstream stage
+            } finally {
+                if (failed) {
+                    cab.consumerInterrupt(); // the upstream stages and the publishers get interrupted
+                    if (next != null) {
+                        next.thread.interrupt();
+                    }
+                    pipeline.fail();
+                }
+            }
+        }
+    }
+}
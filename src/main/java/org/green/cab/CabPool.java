@@ -0,0 +1,118 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import java.util.function.Supplier;
+
+/**
+ * A pool of Cabs to be reused instead of being created and discarded, e.g., one per session or per connection,
+ * so, the Ring Buffers and the preallocated entries are allocated once.
+ * <p>
+ * A Cab is reset when it is released, so, it must be quiescent: its producers, senders and consumer must be
+ * finished, e.g., joined, and all the claimed entries must be consumed unless the consumer was interrupted.
+ * The pool keeps up to maxIdle Cabs, the other released ones are dropped to be collected. The pool is thread-safe,
+ * the release happens-before the next acquire of the same Cab.
+ * <pre>{@code
+ *      CabPool<CabBlocking<Event, Object>> pool = new CabPool<>(() -> new CabBlocking<>(1024, Event::new), 64);
+ *
+ *      CabBlocking<Event, Object> cab = pool.acquire();
+ *      ...
+ *      cab.consumerInterrupt();
+ *      consumerThread.join();
+ *      pool.release(cab);
+ * }</pre>
+ *
+ * @param <C> type of the pooled Cabs
+ */
+public class CabPool<C extends Cab<?, ?>> {
+    private static final String MAX_IDLE_MUST_NOT_BE_NEGATIVE_MESSAGE = "maxIdle must not be negative";
+
+    private final Supplier<? extends C> factory;
+    private final Object[] idle; // guarded by the lock, used as a stack
+    private final Object lock = new Object();
+
+    private int idleCount; // guarded by the lock
+
+    /**
+     * Creates a pool.
+     *
+     * @param factory of the new Cabs, called when the pool is empty
+     * @param maxIdle max number of the Cabs kept by the pool
+     */
+    public CabPool(final Supplier<? extends C> factory, final int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException(MAX_IDLE_MUST_NOT_BE_NEGATIVE_MESSAGE);
+        }
+        this.factory = factory;
+        this.idle = new Object[maxIdle];
+    }
+
+    /**
+     * Returns a Cab in its initial state, either an idle one or a new one created by the factory.
+     *
+     * @return the Cab
+     */
+    @SuppressWarnings("unchecked")
+    public C acquire() {
+        synchronized (lock) {
+            if (idleCount > 0) {
+                final Object cab = idle[--idleCount];
+                idle[idleCount] = null;
+                return (C) cab;
+            }
+        }
+        return factory.get(); // the factory may be slow, so, it's called outside the lock
+    }
+
+    /**
+     * Resets the quiescent Cab and returns it to the pool.
+     *
+     * @param cab to be released
+     * @return true if the Cab is kept by the pool, false if the pool is full and the Cab is dropped
+     * @throws IllegalStateException if the Cab has claimed entries which are not consumed or if it is registered
+     *                               with a selector
+     */
+    public boolean release(final C cab) {
+        cab.reset(); // outside the lock, since the arrays are filled
+
+        synchronized (lock) {
+            if (idleCount == idle.length) {
+                return false;
+            }
+            idle[idleCount++] = cab;
+            return true;
+        }
+    }
+
+    /**
+     * Returns the number of the Cabs kept by the pool.
+     *
+     * @return the number of the idle Cabs
+     */
+    public int idleCount() {
+        synchronized (lock) {
+            return idleCount;
+        }
+    }
+}
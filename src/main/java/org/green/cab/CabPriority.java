@@ -0,0 +1,419 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import sun.misc.Unsafe;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static org.green.cab.Cab.CONSUMER_INTERRUPTED_SEQUENCE;
+import static org.green.cab.Cab.MESSAGE_RECEIVED_SEQUENCE;
+import static org.green.cab.Cab.NOTHING_AVAILABLE_SEQUENCE;
+
+/**
+ * A Cab with several lanes, each of them is a Ring Buffer of its own capacity, so, the bulk producers can't take
+ * the space of the urgent ones. The lanes share one consumer thread, one Channel and one waiting mechanism.
+ * <p>
+ * The consumer drains the lanes either with strict priority, where the lane 0 is the most urgent one and a lane is
+ * read only if all the lanes before it are empty, or with weighted priority, where up to weight entries are read
+ * from a lane in a row before the next non-empty lane is visited, so, no lane is starved.
+ * <p>
+ * A sequence returned by producerNext(lane) and by consumerNext() carries its lane, which can be read with
+ * lane(sequence), and addresses the entry with getEntry(sequence), setEntry(sequence, entry) or
+ * removeEntry(sequence) the same way the sequences of Cab do.
+ * <p>
+ * The lanes are busy spinning Cabs, since the consumer polls them and never waits on their mutexes, so, their
+ * commits don't lock anything. It doesn't make a producer of a full lane spin: it waits in the lane's
+ * producerNext(), which parks the thread between the checks of the free space the same way the producers of every
+ * Cab do. Every producerCommit() and send() executes a full fence before it reads the consumer's waiting flag,
+ * which is the price of the shared waiting mechanism, a few nanoseconds more than the commit of a Cab.
+ *
+ * @param <E> types of entries in the Ring Buffers
+ * @param <M> type of message in the Channel
+ */
+public class CabPriority<E, M> {
+    private static final int LANE_BITS = 8;
+    private static final int LANE_MASK = (1 << LANE_BITS) - 1;
+    private static final int MAX_LANES = 1 << LANE_BITS;
+
+    private static final String LANE_COUNT_MUST_BE_IN_RANGE_MESSAGE = "lane count must be from 1 to " + MAX_LANES;
+    private static final String WEIGHTS_MUST_MATCH_LANES_MESSAGE = "weights must be given for each lane";
+    private static final String WEIGHT_MUST_BE_POSITIVE_MESSAGE = "weight must be positive";
+
+    private static final Unsafe UNSAFE = Utils.getUnsafe();
+
+    private static final long MESSAGE_OFFSET;
+
+    static {
+        try {
+            MESSAGE_OFFSET = UNSAFE.objectFieldOffset(CabPriority.class.getDeclaredField("message"));
+        } catch (final Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    private final Cab<E, Object>[] lanes;
+    private final int[] weights; // null for strict priority
+
+    private final long maxSpins;
+    private final long maxYields;
+
+    private final Object mutex = new Object();
+    private volatile boolean waiting;
+
+    private volatile Object message;
+    private Object messageCache; // used by Consumer only
+
+    private int currentLane; // owned by the consumer thread, used by weighted priority only
+    private int credits;
+
+    /**
+     * Creates a Cab which drains the lanes with strict priority.
+     *
+     * @param capacities capacity of each lane, the lane 0 is the most urgent one
+     * @param maxSpins   number of spins of the waiting consumer before it starts yielding
+     * @param maxYields  number of yields of the waiting consumer before it waits on the mutex
+     * @param supplier   of the preallocated entries, may be null
+     */
+    public CabPriority(
+            final int[] capacities,
+            final long maxSpins,
+            final long maxYields,
+            final Supplier<E> supplier) {
+
+        this(capacities, null, maxSpins, maxYields, supplier);
+    }
+
+    /**
+     * Creates a Cab which drains the lanes with weighted priority.
+     *
+     * @param capacities capacity of each lane
+     * @param weights    max number of entries read from each lane in a row, or null for strict priority
+     * @param maxSpins   number of spins of the waiting consumer before it starts yielding
+     * @param maxYields  number of yields of the waiting consumer before it waits on the mutex
+     * @param supplier   of the preallocated entries, may be null
+     */
+    public CabPriority(
+            final int[] capacities,
+            final int[] weights,
+            final long maxSpins,
+            final long maxYields,
+            final Supplier<E> supplier) {
+
+        if (capacities.length < 1 || capacities.length > MAX_LANES) {
+            throw new IllegalArgumentException(LANE_COUNT_MUST_BE_IN_RANGE_MESSAGE);
+        }
+
+        if (weights != null) {
+            if (weights.length != capacities.length) {
+                throw new IllegalArgumentException(WEIGHTS_MUST_MATCH_LANES_MESSAGE);
+            }
+            for (final int weight : weights) {
+                if (weight < 1) {
+                    throw new IllegalArgumentException(WEIGHT_MUST_BE_POSITIVE_MESSAGE);
+                }
+            }
+            this.weights = weights.clone();
+            this.credits = weights[0];
+        } else {
+            this.weights = null;
+        }
+
+        this.lanes = newLanes(capacities.length);
+        for (int i = 0; i < capacities.length; i++) {
+            lanes[i] = new CabBusySpinning<>(capacities[i], supplier); // the lanes never wait, this Cab does
+        }
+
+        this.maxSpins = maxSpins;
+        this.maxYields = maxYields;
+    }
+
+    /**
+     * Returns the number of the lanes.
+     *
+     * @return the number of the lanes
+     */
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Returns the capacity of the lane.
+     *
+     * @param lane index of the lane
+     * @return the capacity
+     */
+    public int bufferSize(final int lane) {
+        return lanes[lane].bufferSize();
+    }
+
+    /**
+     * Returns the lane the sequence belongs to.
+     *
+     * @param sequence returned by producerNext(lane) or consumerNext()
+     * @return index of the lane
+     */
+    public static int lane(final long sequence) {
+        return (int) (sequence & LANE_MASK);
+    }
+
+    /**
+     * Returns a sequence for a producer thread to address the next available entry of the lane, waiting for some
+     * free space in the lane only.
+     *
+     * @param lane index of the lane
+     * @return sequence to address available entry
+     * @throws ConsumerInterruptedException if the consumer was interrupted
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public long producerNext(final int lane) throws ConsumerInterruptedException, InterruptedException {
+        return (lanes[lane].producerNext() << LANE_BITS) | lane;
+    }
+
+    /**
+     * Commits the sequence to make it available for the consumer thread to be read.
+     *
+     * @param sequence to be committed
+     */
+    public void producerCommit(final long sequence) {
+        lanes[lane(sequence)].producerCommit(sequence >>> LANE_BITS);
+        wakeup();
+    }
+
+    /**
+     * Sends a message to the Channel, which is read by the consumer before any entry of any lane.
+     *
+     * @param msg a message to be sent
+     * @throws ConsumerInterruptedException if the consumer was interrupted
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public void send(final M msg) throws ConsumerInterruptedException, InterruptedException {
+        while (!UNSAFE.compareAndSwapObject(this, MESSAGE_OFFSET, null, msg)) {
+            if (lanes[0].observedConsumerSequence() == CONSUMER_INTERRUPTED_SEQUENCE) {
+                throw ConsumerInterruptedException.INSTANCE;
+            }
+
+            LockSupport.parkNanos(1); // let's give a good chance to the consumer
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        if (lanes[0].observedConsumerSequence() == CONSUMER_INTERRUPTED_SEQUENCE) {
+            throw ConsumerInterruptedException.INSTANCE;
+        }
+        wakeup();
+    }
+
+    /**
+     * Returns a sequence for the consumer thread to address next available message or entry, waiting for it.
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @return sequence to be read. If the value is MESSAGE_RECEIVED_SEQUENCE, a message is ready to be read
+     * with getMessage(), otherwise new entry can be accessed with getEntry(sequence) and its lane is lane(sequence).
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public long consumerNext() throws InterruptedException {
+        long spins = 0;
+        long yields = 0;
+        while (true) {
+            final long sequence = consumerPoll();
+            if (sequence != NOTHING_AVAILABLE_SEQUENCE) {
+                return sequence;
+            }
+
+            if (spins < maxSpins) {
+                spins++;
+            } else if (yields < maxYields) {
+                yields++;
+                Thread.yield();
+            } else {
+                waitForAny();
+            }
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Returns a sequence for the consumer thread to address next available message or entry without any waiting.
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @return sequence to be read, MESSAGE_RECEIVED_SEQUENCE if a message is ready to be read with getMessage() or
+     * NOTHING_AVAILABLE_SEQUENCE if there are neither messages nor committed entries in any lane
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public long consumerPoll() throws InterruptedException {
+        final Object msg = message;
+        if (msg != null) {
+            messageCache = msg;
+            return MESSAGE_RECEIVED_SEQUENCE;
+        }
+
+        final Cab<E, Object>[] cabs = lanes;
+        final int[] laneWeights = weights;
+
+        if (laneWeights == null) {
+            for (int lane = 0; lane < cabs.length; lane++) {
+                final long sequence = cabs[lane].consumerPoll();
+                if (sequence != NOTHING_AVAILABLE_SEQUENCE) {
+                    return (sequence << LANE_BITS) | lane;
+                }
+            }
+            return NOTHING_AVAILABLE_SEQUENCE;
+        }
+
+        int lane = currentLane;
+        for (int i = 0; i <= cabs.length; i++) { // the current lane may be visited twice, if its credits are over
+            if (credits > 0) {
+                final long sequence = cabs[lane].consumerPoll();
+                if (sequence != NOTHING_AVAILABLE_SEQUENCE) {
+                    currentLane = lane;
+                    credits--;
+                    return (sequence << LANE_BITS) | lane;
+                }
+            }
+
+            lane = lane + 1 == cabs.length ? 0 : lane + 1;
+            credits = laneWeights[lane];
+        }
+        currentLane = lane;
+        return NOTHING_AVAILABLE_SEQUENCE;
+    }
+
+    /**
+     * Commits the current consumer's sequence to signal the consumer is ready to process next message or next entry.
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @param sequence to be committed
+     */
+    public void consumerCommit(final long sequence) {
+        if (sequence == MESSAGE_RECEIVED_SEQUENCE) {
+            messageCache = null;
+            UNSAFE.putOrderedObject(this, MESSAGE_OFFSET, null);
+            return;
+        }
+        lanes[lane(sequence)].consumerCommit(sequence >>> LANE_BITS);
+    }
+
+    /**
+     * Interrupts the consumer. Entry producers and message senders will get an {@link ConsumerInterruptedException}
+     * after this call.
+     */
+    public void consumerInterrupt() {
+        for (final Cab<E, Object> lane : lanes) {
+            lane.consumerInterrupt();
+        }
+    }
+
+    /**
+     * Returns an entry from the position identified by the sequence.
+     *
+     * @param sequence identifier of the entry's lane and position
+     * @return the entry
+     */
+    public E getEntry(final long sequence) {
+        return lanes[lane(sequence)].getEntry(sequence >>> LANE_BITS);
+    }
+
+    /**
+     * Removes an entry from the position identified by the sequence.
+     *
+     * @param sequence identifier of the entry's lane and position
+     * @return removed entry
+     */
+    public E removeEntry(final long sequence) {
+        return lanes[lane(sequence)].removeEntry(sequence >>> LANE_BITS);
+    }
+
+    /**
+     * Sets an entry to the position identified by the sequence.
+     *
+     * @param sequence identifier of the entry's lane and position
+     * @param entry    to be set
+     */
+    public void setEntry(final long sequence, final E entry) {
+        lanes[lane(sequence)].setEntry(sequence >>> LANE_BITS, entry);
+    }
+
+    /**
+     * Returns currently available message from the Channel
+     *
+     * @return a message
+     */
+    @SuppressWarnings("unchecked")
+    public M getMessage() {
+        return (M) messageCache;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // generic arrays can't be created
+    private static <E> Cab<E, Object>[] newLanes(final int length) {
+        return new Cab[length];
+    }
+
+    private void waitForAny() throws InterruptedException {
+        final Object mtx = mutex;
+        synchronized (mtx) {
+            waiting = true; // the producers must see the flag before the consumer checks the lanes for the last time
+            try {
+                while (!isAnyReady()) {
+                    mtx.wait();
+                }
+            } finally {
+                waiting = false;
+            }
+        }
+    }
+
+    private void wakeup() {
+        UNSAFE.fullFence(); // the committed state of the entry or the message must be visible to the consumer before
+        // the waiting flag is read, otherwise the consumer may fall asleep missing the entry or the message
+
+        if (waiting) {
+            final Object mtx = mutex;
+            synchronized (mtx) {
+                mtx.notifyAll();
+            }
+        }
+    }
+
+    private boolean isAnyReady() {
+        if (message != null) {
+            return true;
+        }
+        for (final Cab<E, Object> lane : lanes) {
+            if (lane.isConsumerReady()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import sun.misc.Unsafe;
+
+import java.util.Arrays;
+
+/**
+ * Lets one single consumer thread service many Cabs. The registered Cabs are polled in turns, each of them for
+ * not more than its batch limit of entries and messages per turn, and the first Cab polled rotates, so, a busy Cab
+ * cannot starve the others.
+ * <p>
+ * When all the Cabs are idle, select() waits on one shared mutex, which is notified by the producers and
+ * the senders of any registered Cab. A registered Cab never waits according to its own strategy, since the selector
+ * polls it without waiting, so, the strategy affects the producers and the senders only.
+ * <p>
+ * The pattern of usage:
+ * <pre>
+ *      CabSelector selector = new CabSelector(64);
+ *      selector.register(cab1, handler1);
+ *      selector.register(cab2, handler2);
+ *
+ *      while (!Thread.currentThread().isInterrupted()) {
+ *          selector.select();
+ *      }
+ * </pre>
+ * The methods select() and selectNow() can be called from one single consumer thread only, the registration can be
+ * changed from any thread at any time.
+ */
+public final class CabSelector {
+    private static final String BATCH_LIMIT_MUST_BE_POSITIVE_MESSAGE = "batchLimit must be positive";
+    private static final String CAB_IS_REGISTERED_ALREADY_MESSAGE = "Cab is registered with a selector already";
+
+    private static final Unsafe UNSAFE = Utils.getUnsafe();
+
+    private final int batchLimit;
+    private final Object mutex = new Object();
+
+    private volatile Registration<?, ?>[] registrations = new Registration<?, ?>[0];
+    private volatile boolean waiting;
+
+    private int firstIndex; // owned by the consumer thread
+
+    /**
+     * Creates a selector.
+     *
+     * @param batchLimit the default maximum number of entries and messages taken from one Cab per turn
+     */
+    public CabSelector(final int batchLimit) {
+        if (batchLimit < 1) {
+            throw new IllegalArgumentException(BATCH_LIMIT_MUST_BE_POSITIVE_MESSAGE);
+        }
+        this.batchLimit = batchLimit;
+    }
+
+    /**
+     * Registers the Cab with the default batch limit. A Cab can be registered with one selector only.
+     *
+     * @param cab     to be serviced
+     * @param handler of the Cab's entries and messages
+     * @param <E>     types of entries in the Ring Buffer
+     * @param <M>     type of message in the Channel
+     */
+    public <E, M> void register(final Cab<E, M> cab, final CabHandler<E, M> handler) {
+        register(cab, handler, batchLimit);
+    }
+
+    /**
+     * Registers the Cab. A Cab can be registered with one selector only.
+     *
+     * @param cab        to be serviced
+     * @param handler    of the Cab's entries and messages
+     * @param batchLimit the maximum number of entries and messages taken from the Cab per turn
+     * @param <E>        types of entries in the Ring Buffer
+     * @param <M>        type of message in the Channel
+     */
+    public <E, M> void register(final Cab<E, M> cab, final CabHandler<E, M> handler, final int batchLimit) {
+        if (batchLimit < 1) {
+            throw new IllegalArgumentException(BATCH_LIMIT_MUST_BE_POSITIVE_MESSAGE);
+        }
+
+        synchronized (cab) {
+            if (cab.selector != null) {
+                throw new IllegalStateException(CAB_IS_REGISTERED_ALREADY_MESSAGE);
+            }
+            cab.selector = this;
+        }
+
+        synchronized (mutex) {
+            final Registration<?, ?>[] current = registrations;
+            final Registration<?, ?>[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = new Registration<>(cab, handler, batchLimit);
+            registrations = updated;
+
+            mutex.notifyAll(); // the Cab may have something to do already
+        }
+    }
+
+    /**
+     * Unregisters the Cab, which can be consumed by its own thread or registered with another selector after this.
+     *
+     * @param cab to be unregistered
+     */
+    public void unregister(final Cab<?, ?> cab) {
+        synchronized (mutex) {
+            final Registration<?, ?>[] current = registrations;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].cab == cab) {
+                    final Registration<?, ?>[] updated = new Registration<?, ?>[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, updated.length - i);
+                    registrations = updated;
+                    break;
+                }
+            }
+        }
+
+        synchronized (cab) {
+            if (cab.selector == this) {
+                cab.selector = null;
+            }
+        }
+    }
+
+    /**
+     * Polls all the registered Cabs once without any waiting.
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @return number of the processed entries and messages
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public int selectNow() throws InterruptedException {
+        final Registration<?, ?>[] current = registrations;
+        final int count = current.length;
+        if (count == 0) {
+            return 0;
+        }
+
+        final int first = firstIndex < count ? firstIndex : 0;
+        firstIndex = first + 1;
+
+        int processed = 0;
+        for (int i = 0; i < count; i++) {
+            int index = first + i;
+            if (index >= count) {
+                index -= count;
+            }
+            processed += current[index].poll();
+        }
+        return processed;
+    }
+
+    /**
+     * Polls all the registered Cabs and, if all of them are idle, waits for a producer or a sender of any of them
+     * and polls them again.
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @return number of the processed entries and messages
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public int select() throws InterruptedException {
+        final int processed = selectNow();
+        if (processed > 0) {
+            return processed;
+        }
+
+        final Object mtx = mutex;
+        synchronized (mtx) {
+            waiting = true; // the producers must see the flag before the selector checks the Cabs for the last time
+            try {
+                while (!isAnyReady()) {
+                    mtx.wait();
+                }
+            } finally {
+                waiting = false;
+            }
+        }
+
+        return selectNow();
+    }
+
+    /**
+     * Wakes up the consumer thread if it waits, called by the producers and the senders of the registered Cabs.
+     */
+    void wakeup() {
+        UNSAFE.fullFence(); // the committed state of the entry or the message must be visible to the selector before
+        // the waiting flag is read, otherwise the selector may fall asleep missing the entry or the message
+
+        if (waiting) {
+            final Object mtx = mutex;
+            synchronized (mtx) {
+                mtx.notifyAll();
+            }
+        }
+    }
+
+    private boolean isAnyReady() {
+        for (final Registration<?, ?> registration : registrations) {
+            if (registration.cab.isConsumerReady()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Registration<E, M> {
+        final Cab<E, M> cab;
+        final CabHandler<E, M> handler;
+        final int batchLimit;
+
+        Registration(final Cab<E, M> cab, final CabHandler<E, M> handler, final int batchLimit) {
+            this.cab = cab;
+            this.handler = handler;
+            this.batchLimit = batchLimit;
+        }
+
+        int poll() throws InterruptedException {
+            int processed = 0;
+            while (processed < batchLimit) {
+                final long sequence = cab.consumerPoll();
+                if (sequence == Cab.NOTHING_AVAILABLE_SEQUENCE) {
+                    break;
+                }
+
+                if (sequence == Cab.MESSAGE_RECEIVED_SEQUENCE) {
+                    handler.onMessage(cab, cab.getMessage());
+                } else {
+                    handler.onEntry(cab, sequence);
+                }
+                cab.consumerCommit(sequence);
+
+                processed++;
+            }
+            return processed;
+        }
+    }
+}
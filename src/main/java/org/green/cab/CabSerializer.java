@@ -0,0 +1,59 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Serializes entries or messages of a Cab to a buffer and reads them back. Implementations are expected not to
+ * allocate, so, the read method fills an existing value if it's provided.
+ *
+ * @param <T> type of serialized values
+ */
+public interface CabSerializer<T> {
+    /**
+     * Returns the exact number of bytes the value takes when written with write(value, buffer).
+     *
+     * @param value to be written
+     * @return size of the serialized value in bytes
+     */
+    int sizeOf(T value);
+
+    /**
+     * Writes the value at the position of the buffer and advances the position by sizeOf(value) bytes.
+     *
+     * @param value  to be written
+     * @param buffer to write to
+     */
+    void write(T value, ByteBuffer buffer);
+
+    /**
+     * Reads a value from the position of the buffer and advances the position by the size of the value.
+     *
+     * @param buffer to read from
+     * @param value  an existing value to be filled, can be null
+     * @return the filled value or a new one if the value isn't provided or cannot be reused
+     */
+    T read(ByteBuffer buffer, T value);
+}
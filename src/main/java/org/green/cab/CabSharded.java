@@ -0,0 +1,670 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import sun.misc.Unsafe;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+abstract class CabShardPad0 {
+    protected long p00, p01, p02, p03, p04, p05, p06, p07;
+    protected long p08, p09, p010, p011, p012, p013, p014, p015;
+}
+
+abstract class ShardFrontier extends CabShardPad0 {
+    protected volatile long frontier; // the last sequence claimed by the owner or a thief in the stealing mode
+}
+
+abstract class CabShardPad1 extends ShardFrontier {
+    protected long p10, p11, p12, p13, p14, p15, p16, p17;
+    protected long p18, p19, p110, p111, p112, p113, p114, p115;
+}
+
+abstract class ShardStolenSequence extends CabShardPad1 {
+    protected volatile long stolenSequence; // the first sequence of the batch being handled by a thief
+}
+
+abstract class CabShardPad2 extends ShardStolenSequence {
+    protected long p20, p21, p22, p23, p24, p25, p26, p27;
+    protected long p28, p29, p210, p211, p212, p213, p214, p215;
+}
+
+/**
+ * A front-end of many Cabs, the shards, each one consumed by its own thread, which routes the entries to the shards
+ * by the hashes of their keys. All the entries of the same key go to the same shard, so, they are handled
+ * in the order they were published, while the entries of different keys are handled by many cores.
+ * <p>
+ * The keys are routed either by the modulo of their hashes or by a consistent hash ring. New shards can be added
+ * with addShard() at any time. The ring moves only about 1/N of the keys to the new shard, while the modulo moves
+ * almost all of them. In both cases, the consumer of the new shard doesn't handle anything until the old shards'
+ * consumers handle all the entries published before the routing changed, so, the order of the moved keys is kept.
+ * <p>
+ * Publishing doesn't allocate: the routing is read from an immutable table, and the entries are written by
+ * a {@link Translator}, which is expected to be a non-capturing lambda or a reused object.
+ * <p>
+ * With a {@link StealPolicy}, the shards work in the stealing mode: an idle consumer takes a batch of the committed
+ * entries from the head of a sibling's Ring Buffer and handles them with its own handler, so, a hot key doesn't
+ * pin one core while the others idle. Only the entries the policy marks as stealable are taken, a batch ends at
+ * the first entry which isn't, so, the order of the other keys is kept. The owner and the thieves claim
+ * the entries with a CAS, and the owner commits its consumer's sequence only up to the first entry of
+ * a batch still being handled by a thief, so, the producers never overwrite the stolen entries. The consumers poll
+ * their Cabs in this mode and back off with parking when there is nothing to handle or to steal, whatever
+ * the waiting strategy of the Cabs is. The slots are read directly in this mode, so, the shards can't be
+ * {@link CabSpilling}, whose spilled entries are only returned by consumerNext() and consumerPoll().
+ *
+ * @param <E> types of entries
+ * @param <M> types of messages
+ */
+@SuppressWarnings("try") // close() waits for the threads, so, it may be interrupted
+public final class CabSharded<E, M> implements AutoCloseable {
+    private static final int VIRTUAL_NODES_PER_SHARD = 64;
+    private static final long POINT_SEED = 0x9e3779b97f4a7c15L; // the points must not be the hashes of small keys
+
+    private static final long NOT_STOLEN_SEQUENCE = -1;
+    private static final int MAX_IDLE_SPINS = 100;
+    private static final int MAX_IDLE_YIELDS = 100;
+
+    private static final String SHARD_COUNT_MUST_BE_POSITIVE_MESSAGE = "shardCount must be positive";
+    private static final String STEAL_BATCH_LIMIT_MUST_BE_POSITIVE_MESSAGE = "stealBatchLimit must be positive";
+    private static final String CAB_SHARDED_WAS_CLOSED_MESSAGE = "CabSharded was closed";
+    private static final String SPILLING_CABS_CANNOT_BE_STOLEN_FROM_MESSAGE =
+            "CabSpilling can't be a shard in the stealing mode";
+
+    /**
+     * Writes an argument to an entry of a shard.
+     *
+     * @param <E> types of entries
+     * @param <A> types of arguments
+     */
+    @FunctionalInterface
+    public interface Translator<E, A> {
+        /**
+         * Translates the argument into the entry.
+         *
+         * @param entry    current entry of the claimed slot, which is either preallocated or left by the previous lap
+         * @param argument passed to publish()
+         * @return the entry to be set to the slot, which may be the current one
+         */
+        E translate(E entry, A argument);
+    }
+
+    /**
+     * Decides which entries may be handled by any shard's consumer in the stealing mode.
+     *
+     * @param <E> types of entries
+     */
+    @FunctionalInterface
+    public interface StealPolicy<E> {
+        /**
+         * Checks if the entry may be handled out of the order of its shard by another shard's handler, e.g.,
+         * because its key is marked as stealable.
+         *
+         * @param entry committed entry, which must not be modified
+         * @return true if the entry may be stolen
+         */
+        boolean isStealable(E entry);
+    }
+
+    private static final Translator<Object, Object> SETTING_TRANSLATOR = (entry, argument) -> argument;
+
+    private static final Unsafe UNSAFE = Utils.getUnsafe();
+
+    private static final long FRONTIER_OFFSET;
+    private static final long STOLEN_SEQUENCE_OFFSET;
+
+    static {
+        try {
+            FRONTIER_OFFSET = UNSAFE.objectFieldOffset(ShardFrontier.class.getDeclaredField("frontier"));
+            STOLEN_SEQUENCE_OFFSET = UNSAFE.objectFieldOffset(
+                    ShardStolenSequence.class.getDeclaredField("stolenSequence"));
+        } catch (final Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    private final boolean consistentHashing;
+    private final Supplier<? extends Cab<E, M>> cabFactory;
+    private final IntFunction<? extends CabHandler<E, M>> handlerFactory;
+    private final StealPolicy<? super E> stealPolicy; // null if the stealing is off
+    private final int stealBatchLimit;
+
+    private volatile Routing<E, M> routing; // replaced under the lock of this object
+    private Shard<E, M>[] shards; // guarded by the lock of this object
+    private boolean started;
+    private boolean closed;
+
+    /**
+     * Creates the shards, which are consumed after start().
+     *
+     * @param shardCount        initial number of the shards
+     * @param consistentHashing if true, the keys are routed by a consistent hash ring, otherwise by the modulo
+     * @param cabFactory        creates the Cab of every shard
+     * @param handlerFactory    creates the handler of every shard by its index
+     */
+    public CabSharded(
+            final int shardCount,
+            final boolean consistentHashing,
+            final Supplier<? extends Cab<E, M>> cabFactory,
+            final IntFunction<? extends CabHandler<E, M>> handlerFactory) {
+
+        this(shardCount, consistentHashing, cabFactory, handlerFactory, null, 1);
+    }
+
+    /**
+     * Creates the shards, which are consumed after start(), in the stealing mode if the policy isn't null.
+     * The handlers must be thread-safe for the stealable entries, since they are called with the Cabs of
+     * the other shards then. The factory must not create {@link CabSpilling} in the stealing mode.
+     *
+     * @param shardCount        initial number of the shards
+     * @param consistentHashing if true, the keys are routed by a consistent hash ring, otherwise by the modulo
+     * @param cabFactory        creates the Cab of every shard
+     * @param handlerFactory    creates the handler of every shard by its index
+     * @param stealPolicy       marks the entries which may be stolen, null to turn the stealing off
+     * @param stealBatchLimit   maximum number of the entries stolen at once
+     */
+    public CabSharded(
+            final int shardCount,
+            final boolean consistentHashing,
+            final Supplier<? extends Cab<E, M>> cabFactory,
+            final IntFunction<? extends CabHandler<E, M>> handlerFactory,
+            final StealPolicy<? super E> stealPolicy,
+            final int stealBatchLimit) {
+
+        if (shardCount < 1) {
+            throw new IllegalArgumentException(SHARD_COUNT_MUST_BE_POSITIVE_MESSAGE);
+        }
+        if (stealBatchLimit < 1) {
+            throw new IllegalArgumentException(STEAL_BATCH_LIMIT_MUST_BE_POSITIVE_MESSAGE);
+        }
+
+        this.consistentHashing = consistentHashing;
+        this.cabFactory = cabFactory;
+        this.handlerFactory = handlerFactory;
+        this.stealPolicy = stealPolicy;
+        this.stealBatchLimit = stealBatchLimit;
+
+        final Shard<E, M>[] initialShards = newShards(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            initialShards[i] = new Shard<>(this, i, newCab(), handlerFactory.apply(i));
+        }
+        this.shards = initialShards;
+        this.routing = new Routing<>(initialShards, consistentHashing);
+    }
+
+    /**
+     * Starts the consumer threads of the shards.
+     */
+    public synchronized void start() {
+        if (closed) {
+            throw new IllegalStateException(CAB_SHARDED_WAS_CLOSED_MESSAGE);
+        }
+        if (started) {
+            return;
+        }
+        started = true;
+        for (final Shard<E, M> shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Returns the current number of the shards.
+     *
+     * @return the shard count
+     */
+    public int shardCount() {
+        return routing.cabs.length;
+    }
+
+    /**
+     * Returns the index of the shard the key is currently routed to.
+     *
+     * @param key of the entry
+     * @return the shard index
+     */
+    public int shardIndex(final long key) {
+        return routing.shardIndex(key);
+    }
+
+    /**
+     * Returns the Cab of the shard, e.g., to read its metrics. The entries must be published with publish() only,
+     * otherwise the order isn't kept when the shards are added.
+     *
+     * @param index of the shard
+     * @return the Cab
+     */
+    public Cab<E, M> shard(final int index) {
+        return routing.cabs[index];
+    }
+
+    /**
+     * Publishes the entry to the shard of the key.
+     *
+     * @param key   of the entry, e.g., an id of an instrument or the hash code of an object
+     * @param entry to be published
+     * @throws ConsumerInterruptedException if the consumer of the shard was interrupted
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    @SuppressWarnings("unchecked")
+    public void publish(final long key, final E entry) throws ConsumerInterruptedException, InterruptedException {
+        publish(key, (Translator<E, E>) (Translator<?, ?>) SETTING_TRANSLATOR, entry);
+    }
+
+    /**
+     * Publishes the argument to the shard of the key, translating it into the claimed entry.
+     *
+     * @param key        of the entry, e.g., an id of an instrument or the hash code of an object
+     * @param translator which writes the argument to the entry
+     * @param argument   to be written
+     * @param <A>        types of arguments
+     * @throws ConsumerInterruptedException if the consumer of the shard was interrupted
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public <A> void publish(final long key, final Translator<E, A> translator, final A argument)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        while (true) {
+            final Routing<E, M> current = routing;
+            final Cab<E, M> cab = current.cabs[current.shardIndex(key)];
+            final long sequence = cab.producerNext();
+
+            // the sequence is claimed before the routing is read again, while addShard() replaces the routing
+            // before it reads the claimed sequences of the shards, so, either the new shard waits for the entry,
+            // or it's aborted here and published again with the new routing
+            if (routing != current) {
+                cab.producerAbort(sequence);
+                continue;
+            }
+
+            try {
+                cab.setEntry(sequence, translator.translate(cab.getEntry(sequence), argument));
+            } catch (final Throwable t) { // the claimed sequence mustn't stall the shard's consumer
+                cab.producerAbort(sequence);
+                throw t;
+            }
+            cab.producerCommit(sequence);
+            return;
+        }
+    }
+
+    /**
+     * Sends the message to every shard, e.g., a control message. A message sent while a shard is being added may be
+     * missed by the new shard.
+     *
+     * @param message to be sent
+     * @throws ConsumerInterruptedException if the consumer of a shard was interrupted
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    public void send(final M message) throws ConsumerInterruptedException, InterruptedException {
+        for (final Cab<E, M> cab : routing.cabs) {
+            cab.send(message);
+        }
+    }
+
+    /**
+     * Adds a new shard, which is started at once if the others are started. The keys the routing moves to the new
+     * shard are handled by it only after the old shards' consumers handle all the entries published before.
+     *
+     * @return index of the new shard
+     */
+    public synchronized int addShard() {
+        if (closed) {
+            throw new IllegalStateException(CAB_SHARDED_WAS_CLOSED_MESSAGE);
+        }
+
+        final Shard<E, M>[] current = shards;
+        final int index = current.length;
+
+        final Shard<E, M> shard = new Shard<>(this, index, newCab(), handlerFactory.apply(index));
+        final Shard<E, M>[] updated = Arrays.copyOf(current, index + 1);
+        updated[index] = shard;
+
+        routing = new Routing<>(updated, consistentHashing);
+
+        // must be read after the routing is replaced
+        for (int i = 0; i < index; i++) {
+            shard.barrierSequences[i] = current[i].cab.claimedSequence();
+        }
+        shard.barrierCabs = Arrays.copyOf(routing.cabs, index);
+
+        shards = updated;
+        if (started) {
+            shard.thread.start();
+        }
+        return index;
+    }
+
+    /**
+     * Interrupts the consumer threads and waits for them to finish. The producers get
+     * {@link ConsumerInterruptedException} after this call.
+     *
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    @Override
+    public void close() throws InterruptedException {
+        final Shard<E, M>[] current;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            current = shards;
+        }
+
+        if (!started) {
+            for (final Shard<E, M> shard : current) {
+                shard.cab.consumerInterrupt();
+            }
+            return;
+        }
+
+        for (final Shard<E, M> shard : current) {
+            shard.thread.interrupt(); // the consumer interrupts its Cab when it finishes
+        }
+        for (final Shard<E, M> shard : current) {
+            shard.thread.join();
+        }
+    }
+
+    static long mix(final long key) {
+        // the finalizer of MurmurHash3, which spreads the sequential keys over the whole range
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private Cab<E, M> newCab() {
+        final Cab<E, M> cab = cabFactory.get();
+        if (stealPolicy != null && cab instanceof CabSpilling) {
+            throw new IllegalArgumentException(SPILLING_CABS_CANNOT_BE_STOLEN_FROM_MESSAGE);
+        }
+        return cab;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // generic arrays can't be created
+    private static <E, M> Shard<E, M>[] newShards(final int length) {
+        return new Shard[length];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // generic arrays can't be created
+    private static <E, M> Cab<E, M>[] newCabs(final int length) {
+        return new Cab[length];
+    }
+
+    private static final class Routing<E, M> {
+        private final Shard<E, M>[] shards;
+        private final Cab<E, M>[] cabs;
+        private final long[] points; // sorted points of the ring, null for the modulo routing
+        private final int[] owners; // shard indexes of the points
+
+        Routing(final Shard<E, M>[] shards, final boolean consistentHashing) {
+            this.shards = shards;
+            cabs = newCabs(shards.length);
+            for (int i = 0; i < shards.length; i++) {
+                cabs[i] = shards[i].cab;
+            }
+
+            if (!consistentHashing) {
+                points = null;
+                owners = null;
+                return;
+            }
+
+            // the points of a shard depend on its index only, so, the points of the old shards stay where they are
+            final int pointCount = shards.length * VIRTUAL_NODES_PER_SHARD;
+            final long[] keyedPoints = new long[pointCount];
+            final long[] unsortedPoints = new long[pointCount];
+            for (int shard = 0; shard < shards.length; shard++) {
+                for (int node = 0; node < VIRTUAL_NODES_PER_SHARD; node++) {
+                    final int i = shard * VIRTUAL_NODES_PER_SHARD + node;
+                    unsortedPoints[i] = mix((((long) shard << 32) | node) ^ POINT_SEED);
+                    keyedPoints[i] = unsortedPoints[i];
+                }
+            }
+            Arrays.sort(keyedPoints);
+
+            points = keyedPoints;
+            owners = new int[pointCount];
+            for (int i = 0; i < pointCount; i++) {
+                owners[Arrays.binarySearch(keyedPoints, unsortedPoints[i])] = i / VIRTUAL_NODES_PER_SHARD;
+            }
+        }
+
+        int shardIndex(final long key) {
+            final long hash = mix(key);
+            if (points == null) {
+                return (int) ((hash >>> 1) % cabs.length);
+            }
+
+            int i = Arrays.binarySearch(points, hash);
+            if (i < 0) {
+                i = -i - 1; // the first point after the hash
+                if (i == points.length) {
+                    i = 0; // the ring wraps around
+                }
+            }
+            return owners[i];
+        }
+    }
+
+    private static final class Shard<E, M> extends CabShardPad2 {
+        private final CabSharded<E, M> sharded;
+        private final int index;
+        private final Cab<E, M> cab;
+        private final CabHandler<E, M> handler;
+        private final Thread thread;
+
+        private final long[] barrierSequences; // the old shards' sequences to be consumed before this shard starts
+        private Cab<E, M>[] barrierCabs; // set before the thread starts
+
+        Shard(final CabSharded<E, M> sharded, final int index, final Cab<E, M> cab, final CabHandler<E, M> handler) {
+            this.sharded = sharded;
+            this.index = index;
+            this.cab = cab;
+            this.handler = handler;
+            this.barrierSequences = new long[index];
+            this.thread = new Thread(this::run, "cab-shard-" + index);
+            this.thread.setDaemon(true);
+
+            UNSAFE.putLongVolatile(this, FRONTIER_OFFSET, cab.observedConsumerSequence());
+            UNSAFE.putLongVolatile(this, STOLEN_SEQUENCE_OFFSET, NOT_STOLEN_SEQUENCE);
+        }
+
+        private void run() {
+            try {
+                awaitBarrier();
+
+                if (sharded.stealPolicy != null) {
+                    runStealing();
+                    return;
+                }
+
+                while (!Thread.interrupted()) {
+                    final long sequence = cab.consumerNext();
+                    if (sequence == Cab.MESSAGE_RECEIVED_SEQUENCE) {
+                        handler.onMessage(cab, cab.getMessage());
+                    } else {
+                        handler.onEntry(cab, sequence);
+                    }
+                    cab.consumerCommit(sequence);
+                }
+            } catch (final InterruptedException e) {
+                // closed
+            } finally {
+                cab.consumerInterrupt();
+            }
+        }
+
+        private void runStealing() throws InterruptedException {
+            long committedSequence = UNSAFE.getLongVolatile(this, FRONTIER_OFFSET);
+            int idleCount = 0;
+
+            while (!Thread.interrupted()) {
+                if (cab.isMessageAvailable()) {
+                    cab.consumerNext(); // returns the message at once
+                    handler.onMessage(cab, cab.getMessage());
+                    cab.consumerCommit(Cab.MESSAGE_RECEIVED_SEQUENCE);
+                    idleCount = 0;
+                    continue;
+                }
+
+                final long frontier = UNSAFE.getLongVolatile(this, FRONTIER_OFFSET);
+                final long sequence = frontier + 1;
+                final int readiness = cab.slotReadiness(sequence);
+
+                if (readiness != Cab.SLOT_PENDING) {
+                    if (UNSAFE.compareAndSwapLong(this, FRONTIER_OFFSET, frontier, sequence)) {
+                        if (readiness == Cab.SLOT_COMMITTED) {
+                            handler.onEntry(cab, sequence);
+                        }
+                        committedSequence = commitHandled(sequence, committedSequence);
+                    } // otherwise, a thief has taken a batch, so, let's continue after it
+                    idleCount = 0;
+                    continue;
+                }
+
+                committedSequence = commitHandled(frontier, committedSequence); // the batches may be done by now
+
+                if (steal()) {
+                    idleCount = 0;
+                    continue;
+                }
+
+                if (idleCount < MAX_IDLE_SPINS) {
+                    idleCount++;
+                } else if (idleCount < MAX_IDLE_SPINS + MAX_IDLE_YIELDS) {
+                    idleCount++;
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(1);
+                }
+            }
+        }
+
+        /**
+         * Commits the consumer's sequence up to the handled one, but not beyond the batch being handled by a thief.
+         * Since a thief takes one batch of a shard at a time, all the entries before the batch are handled.
+         *
+         * @param handledSequence   the last sequence claimed and handled by the owner or the current frontier
+         * @param committedSequence the last committed consumer's sequence
+         * @return new committed consumer's sequence
+         */
+        private long commitHandled(final long handledSequence, final long committedSequence) {
+            final long stolenSequence = UNSAFE.getLongVolatile(this, STOLEN_SEQUENCE_OFFSET);
+            final long sequence = stolenSequence == NOT_STOLEN_SEQUENCE ?
+                    handledSequence : Math.min(handledSequence, stolenSequence - 1);
+
+            if (sequence > committedSequence) {
+                cab.consumerCommit(sequence);
+                return sequence;
+            }
+            return committedSequence;
+        }
+
+        /**
+         * Takes a batch of the stealable committed entries from the head of a sibling's Ring Buffer and handles them.
+         *
+         * @return true if some entries were stolen
+         */
+        private boolean steal() {
+            final Shard<E, M>[] siblings = sharded.routing.shards;
+            final StealPolicy<? super E> policy = sharded.stealPolicy;
+
+            for (int i = 1; i < siblings.length; i++) {
+                final Shard<E, M> victim = siblings[(index + i) % siblings.length];
+                if (UNSAFE.getLongVolatile(victim, STOLEN_SEQUENCE_OFFSET) != NOT_STOLEN_SEQUENCE) {
+                    continue; // another thief is there
+                }
+
+                final Cab<E, M> victimCab = victim.cab;
+                final long frontier = UNSAFE.getLongVolatile(victim, FRONTIER_OFFSET);
+
+                // the entries up to the frontier can't be overwritten, since the owner doesn't commit them
+                long last = frontier;
+                while (last - frontier < sharded.stealBatchLimit) {
+                    final int readiness = victimCab.slotReadiness(last + 1);
+                    if (readiness == Cab.SLOT_PENDING ||
+                            readiness == Cab.SLOT_COMMITTED && !policy.isStealable(victimCab.getEntry(last + 1))) {
+                        break;
+                    }
+                    last++;
+                }
+
+                if (last == frontier) {
+                    continue;
+                }
+
+                if (!UNSAFE.compareAndSwapLong(victim, STOLEN_SEQUENCE_OFFSET, NOT_STOLEN_SEQUENCE, frontier + 1)) {
+                    continue;
+                }
+                if (!UNSAFE.compareAndSwapLong(victim, FRONTIER_OFFSET, frontier, last)) {
+                    UNSAFE.putLongVolatile(victim, STOLEN_SEQUENCE_OFFSET, NOT_STOLEN_SEQUENCE); // the owner was first
+                    continue;
+                }
+
+                try {
+                    for (long sequence = frontier + 1; sequence <= last; sequence++) {
+                        if (victimCab.slotReadiness(sequence) == Cab.SLOT_COMMITTED) {
+                            handler.onEntry(victimCab, sequence);
+                        }
+                    }
+                } finally {
+                    UNSAFE.putLongVolatile(victim, STOLEN_SEQUENCE_OFFSET, NOT_STOLEN_SEQUENCE);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private void awaitBarrier() throws InterruptedException {
+            final Cab<E, M>[] cabs = barrierCabs;
+            if (cabs == null) {
+                return; // one of the initial shards
+            }
+
+            for (int i = 0; i < cabs.length; i++) {
+                while (true) {
+                    final long consumerSequence = cabs[i].observedConsumerSequence();
+                    if (consumerSequence >= barrierSequences[i] ||
+                            consumerSequence == Cab.CONSUMER_INTERRUPTED_SEQUENCE) {
+                        break;
+                    }
+
+                    LockSupport.parkNanos(1);
+
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            }
+        }
+    }
+}
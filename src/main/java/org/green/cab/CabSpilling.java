@@ -0,0 +1,501 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import sun.misc.Unsafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * The Cab which doesn't make the producers wait when the Ring Buffer is full. Instead, the producers serialize their
+ * entries into a memory-mapped overflow file with a {@link CabSerializer}, and the consumer drains the spilled entries
+ * in order before it returns to the Ring Buffer. So, the buffer can be sized for the typical load rather than for rare
+ * bursts.
+ * <p>
+ * When a producer finds the Ring Buffer full, it switches the Cab to the spilling mode and producerNext() returns
+ * SPILLED_SEQUENCE to it and to every other producer until the consumer drains all the entries, including the spilled
+ * ones. The sequence addresses an entry of the calling thread, which is provided by the supplier or can be set with
+ * setEntry(SPILLED_SEQUENCE, entry), and is serialized to the overflow file by producerCommit(SPILLED_SEQUENCE).
+ * The consumer gets SPILLED_SEQUENCE from consumerNext() for every spilled entry and reads it with
+ * getEntry(SPILLED_SEQUENCE). Since all the entries of the Ring Buffer are claimed before the spilling mode starts,
+ * each producer's entries keep their order.
+ * <p>
+ * The overflow file is used as a ring of records. If it's full too, the spilling producer waits for the consumer
+ * in producerCommit(SPILLED_SEQUENCE). The spilling mode is a slow path, the spilled entries are written under a lock.
+ * <p>
+ * The consumer waits for entries and messages in the Ring Buffer with the backing off strategy,
+ * see {@link CabBackingOff}.
+ *
+ * @param <E> types of entries in the Ring Buffer
+ * @param <M> type of message in the Channel
+ */
+public class CabSpilling<E, M> extends Cab<E, M> {
+    public static final long SPILLED_SEQUENCE = Long.MIN_VALUE + 1;
+
+    private static final long SPILLING_FLAG = 1L << 62; // marks the last claimed sequence of the Ring Buffer,
+    // which is never negative, when the spilling mode is on
+
+    private static final int RECORD_HEADER_LENGTH = 4;
+    private static final int WRAP_RECORD_LENGTH = -1;
+
+    private static final String SPILL_SIZE_IS_TOO_SMALL_MESSAGE = "spillSize is too small";
+    private static final String ENTRY_DOES_NOT_FIT_MESSAGE = "Entry doesn't fit into the overflow file";
+    private static final String UNEXPECTED_SERIALIZED_SIZE_MESSAGE = "Serializer wrote unexpected number of bytes";
+
+    private static final Unsafe UNSAFE = Utils.getUnsafe();
+
+    private final int spillSize;
+    private final CabSerializer<E> serializer;
+    private final ThreadLocal<E> spilledEntries;
+
+    private final ByteBuffer producersBuffer; // guarded by spillLock
+    private final ByteBuffer consumerBuffer;
+
+    private final Object spillLock = new Object();
+    private int pendingSpills; // guarded by spillLock
+
+    private volatile long spillWritePosition;
+    private volatile long spillReadPosition;
+    private long spilledEntryEnd; // used by Consumer only, no any membars required
+
+    public CabSpilling(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final File spillFile,
+            final int spillSize,
+            final CabSerializer<E> serializer) throws IOException {
+
+        this(bufferSize, maxSpins, maxYields, spillFile, spillSize, serializer, null);
+    }
+
+    public CabSpilling(
+            final int bufferSize,
+            final long maxSpins,
+            final long maxYields,
+            final File spillFile,
+            final int spillSize,
+            final CabSerializer<E> serializer,
+            final Supplier<E> supplier) throws IOException {
+
+        super(bufferSize, WaitingStaregy.BACKING_OFF, maxSpins, maxYields, supplier);
+
+        if (spillSize <= RECORD_HEADER_LENGTH) {
+            throw new IllegalArgumentException(SPILL_SIZE_IS_TOO_SMALL_MESSAGE);
+        }
+
+        this.spillSize = spillSize;
+        this.serializer = serializer;
+        this.spilledEntries = supplier != null ? ThreadLocal.withInitial(supplier) : new ThreadLocal<>();
+
+        final MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(spillFile, "rw")) {
+            raf.setLength(spillSize);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, spillSize);
+        }
+        this.producersBuffer = buffer;
+        this.consumerBuffer = buffer.duplicate();
+    }
+
+    /**
+     * Returns a sequence for a producer thread to address the next available entry with getEntry(sequence),
+     * setEntry(sequence) or removeEntry(sequence). If the Ring Buffer is full, SPILLED_SEQUENCE is returned instead
+     * of waiting for the consumer.
+     *
+     * @return sequence to address available entry or SPILLED_SEQUENCE
+     * @throws ConsumerInterruptedException if the consumer was interrupted
+     * @throws InterruptedException         if the current thread was interrupted
+     */
+    @Override
+    public long producerNext() throws ConsumerInterruptedException, InterruptedException {
+        while (true) {
+            final long claimedSequence = UNSAFE.getLongVolatile(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET);
+            final long consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
+
+            if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+                throw ConsumerInterruptedException.INSTANCE;
+            }
+
+            if (claimedSequence < SPILLING_FLAG) {
+                final long nextSequence = claimedSequence + 1;
+
+                if (nextSequence - consumerSequence <= bufferSize()) { // there is some free space in the buffer
+                    if (UNSAFE.compareAndSwapLong(
+                            this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET, claimedSequence, nextSequence)) {
+                        return nextSequence;
+                    }
+                    continue;
+                }
+            }
+
+            // we are here because the buffer is full, so...
+            if (spillClaim(claimedSequence)) {
+                return SPILLED_SEQUENCE;
+            }
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Returns a sequence of the Ring Buffer the same way Cab does. The entries are never spilled by this method,
+     * so, NOTHING_AVAILABLE_SEQUENCE is returned in the spilling mode too, since the Ring Buffer can't be used
+     * until the spilled entries are drained.
+     *
+     * @return sequence to address available entry or NOTHING_AVAILABLE_SEQUENCE if the buffer is full
+     * @throws ConsumerInterruptedException if the consumer was interrupted
+     */
+    @Override
+    long producerTryNext() throws ConsumerInterruptedException {
+        while (true) {
+            final long claimedSequence = UNSAFE.getLongVolatile(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET);
+            final long consumerSequence = UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET);
+
+            if (consumerSequence == CONSUMER_INTERRUPTED_SEQUENCE) {
+                throw ConsumerInterruptedException.INSTANCE;
+            }
+
+            final long nextSequence = claimedSequence + 1;
+            if (claimedSequence >= SPILLING_FLAG || nextSequence - consumerSequence > bufferSize()) {
+                return NOTHING_AVAILABLE_SEQUENCE;
+            }
+
+            if (UNSAFE.compareAndSwapLong(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET, claimedSequence, nextSequence)) {
+                return nextSequence;
+            }
+        }
+    }
+
+    /**
+     * Commits the sequence to make it available for the consumer thread to be read. The entry of SPILLED_SEQUENCE is
+     * serialized to the overflow file, and if there is not enough free space in the file, the method waits for
+     * the consumer.
+     *
+     * @param sequence to be committed
+     */
+    @Override
+    public void producerCommit(final long sequence) {
+        if (sequence != SPILLED_SEQUENCE) {
+            super.producerCommit(sequence);
+            return;
+        }
+
+        final E entry = spilledEntries.get();
+        final int recordLength = RECORD_HEADER_LENGTH + serializer.sizeOf(entry);
+
+        if (recordLength > spillSize) {
+            synchronized (spillLock) {
+                pendingSpills--;
+            }
+            throw new IllegalArgumentException(ENTRY_DOES_NOT_FIT_MESSAGE);
+        }
+
+        while (!spillWrite(entry, recordLength)) {
+            if (UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET) == CONSUMER_INTERRUPTED_SEQUENCE) {
+                synchronized (spillLock) { // nobody will read the entry
+                    pendingSpills--;
+                }
+                return;
+            }
+
+            // we are here because the overflow file is full, so...
+            LockSupport.parkNanos(1); // let's give a good chance to the consumer
+        }
+
+        notifyWaiters();
+    }
+
+    /**
+     * Returns the next sequence to be processed by the consumer. If the sequence is SPILLED_SEQUENCE, the next
+     * spilled entry can be read with getEntry(SPILLED_SEQUENCE).
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @return sequence to be read
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    @Override
+    public long consumerNext() throws InterruptedException {
+        final long consumerSequence = UNSAFE.getLong(this, CONSUMER_SEQUENCE_OFFSET); // this thread owns the value,
+        // so, no any membars required to read
+
+        final long claimedSequence = UNSAFE.getLongVolatile(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET);
+        if (claimedSequence < SPILLING_FLAG || consumerSequence != (claimedSequence & ~SPILLING_FLAG)) {
+            return super.consumerNext(); // the Ring Buffer isn't drained yet
+        }
+
+        // the Ring Buffer is drained, so, continue with the spilled entries
+        while (true) {
+            final Object msg = UNSAFE.getObjectVolatile(this, MESSAGE_OFFSET);
+            if (msg != null) {
+                messageCache = msg;
+                return MESSAGE_RECEIVED_SEQUENCE;
+            }
+
+            if (spillRead()) {
+                return SPILLED_SEQUENCE;
+            }
+
+            if (spillRelease(consumerSequence)) {
+                return super.consumerNext();
+            }
+
+            // we are here because a spilling producer hasn't committed its entry yet
+            LockSupport.parkNanos(1);
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Returns the next sequence to be processed by the consumer without any waiting. If the sequence is
+     * SPILLED_SEQUENCE, the next spilled entry can be read with getEntry(SPILLED_SEQUENCE).
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @return sequence to be read or NOTHING_AVAILABLE_SEQUENCE
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    @Override
+    public long consumerPoll() throws InterruptedException {
+        if (!isDrainingSpill()) {
+            return super.consumerPoll(); // the Ring Buffer isn't drained yet
+        }
+
+        final Object msg = UNSAFE.getObjectVolatile(this, MESSAGE_OFFSET);
+        if (msg != null) {
+            messageCache = msg;
+            return MESSAGE_RECEIVED_SEQUENCE;
+        }
+
+        if (spillRead()) {
+            return SPILLED_SEQUENCE;
+        }
+
+        if (spillRelease(UNSAFE.getLong(this, CONSUMER_SEQUENCE_OFFSET))) {
+            return super.consumerPoll();
+        }
+        return NOTHING_AVAILABLE_SEQUENCE; // a spilling producer hasn't committed its entry yet
+    }
+
+    @Override
+    boolean isConsumerReady() {
+        return isDrainingSpill() || super.isConsumerReady(); // the spill is polled until it's released
+    }
+
+    private boolean isDrainingSpill() {
+        final long consumerSequence = UNSAFE.getLong(this, CONSUMER_SEQUENCE_OFFSET); // this thread owns the value,
+        // so, no any membars required to read
+
+        final long claimedSequence = UNSAFE.getLongVolatile(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET);
+        return claimedSequence >= SPILLING_FLAG && consumerSequence == (claimedSequence & ~SPILLING_FLAG);
+    }
+
+    /**
+     * Commits the current consumer's sequence to signal the consumer ir ready to process next message or next entry.
+     * <p>
+     * This method can be called from one single consumer thread only.
+     *
+     * @param sequence to be committed
+     */
+    @Override
+    public void consumerCommit(final long sequence) {
+        if (sequence != SPILLED_SEQUENCE) {
+            super.consumerCommit(sequence);
+            return;
+        }
+
+        final long readPosition = spilledEntryEnd;
+        spillReadPosition = readPosition;
+
+        if (readPosition == spillWritePosition) { // the backlog might be cleared, so, let's try to return
+            // to the Ring Buffer
+            spillRelease(UNSAFE.getLong(this, CONSUMER_SEQUENCE_OFFSET));
+        }
+    }
+
+    /**
+     * Returns the Cab to its initial sequences the same way Cab does and rewinds the overflow file. The entries
+     * of the producer threads used for spilling are kept. Unless the consumer was interrupted, all the spilled
+     * entries must be consumed too.
+     *
+     * @throws IllegalStateException if the Cab has claimed or spilled entries which are not consumed or if it is
+     *                               registered with a selector
+     */
+    @Override
+    public void reset() {
+        if (UNSAFE.getLongVolatile(this, CONSUMER_SEQUENCE_OFFSET) != CONSUMER_INTERRUPTED_SEQUENCE &&
+                spillReadPosition != spillWritePosition) {
+            throw new IllegalStateException(CAB_IS_NOT_QUIESCENT_MESSAGE);
+        }
+
+        super.reset(); // the spilling mode is turned off with the claimed sequence
+
+        synchronized (spillLock) {
+            pendingSpills = 0;
+        }
+        spilledEntryEnd = 0;
+        spillReadPosition = 0;
+        spillWritePosition = 0;
+    }
+
+    @Override
+    long claimedSequence() {
+        final long claimedSequence = super.claimedSequence();
+        return claimedSequence < SPILLING_FLAG ? claimedSequence : claimedSequence & ~SPILLING_FLAG;
+    }
+
+    @Override
+    public E getEntry(final long sequence) {
+        if (sequence == SPILLED_SEQUENCE) {
+            return spilledEntries.get();
+        }
+        return super.getEntry(sequence);
+    }
+
+    @Override
+    public E removeEntry(final long sequence) {
+        if (sequence == SPILLED_SEQUENCE) {
+            final E result = spilledEntries.get();
+            spilledEntries.remove();
+            return result;
+        }
+        return super.removeEntry(sequence);
+    }
+
+    @Override
+    public void setEntry(final long sequence, final E entry) {
+        if (sequence == SPILLED_SEQUENCE) {
+            spilledEntries.set(entry);
+            return;
+        }
+        super.setEntry(sequence, entry);
+    }
+
+    private boolean spillClaim(final long claimedSequence) {
+        synchronized (spillLock) {
+            if (claimedSequence < SPILLING_FLAG) { // the only transition a producer can do without the lock
+                if (!UNSAFE.compareAndSwapLong(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET,
+                        claimedSequence, claimedSequence | SPILLING_FLAG)) {
+                    return false;
+                }
+            } else if (UNSAFE.getLongVolatile(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET) != claimedSequence) {
+                return false; // the consumer has just released the spilling mode
+            }
+
+            pendingSpills++;
+            return true;
+        }
+    }
+
+    private boolean spillWrite(final E entry, final int recordLength) {
+        synchronized (spillLock) {
+            long position = spillWritePosition;
+            int index = (int) (position % spillSize);
+
+            final int tail = spillSize - index;
+            final boolean wrap = tail < recordLength;
+            if (wrap) {
+                position += tail;
+                index = 0;
+            }
+
+            if (position + recordLength - spillReadPosition > spillSize) {
+                return false;
+            }
+
+            final ByteBuffer buffer = producersBuffer;
+
+            if (wrap && tail >= RECORD_HEADER_LENGTH) {
+                buffer.putInt(spillSize - tail, WRAP_RECORD_LENGTH);
+            }
+
+            buffer.position(index + RECORD_HEADER_LENGTH);
+            serializer.write(entry, buffer);
+            if (buffer.position() != index + recordLength) {
+                throw new IllegalStateException(UNEXPECTED_SERIALIZED_SIZE_MESSAGE);
+            }
+            buffer.putInt(index, recordLength - RECORD_HEADER_LENGTH);
+
+            pendingSpills--;
+            spillWritePosition = position + recordLength;
+            return true;
+        }
+    }
+
+    private boolean spillRead() {
+        long position = spillReadPosition;
+        final long writePosition = spillWritePosition;
+
+        final ByteBuffer buffer = consumerBuffer;
+
+        while (position < writePosition) {
+            final int index = (int) (position % spillSize);
+            final int tail = spillSize - index;
+
+            final int length = tail < RECORD_HEADER_LENGTH ? WRAP_RECORD_LENGTH : buffer.getInt(index);
+            if (length == WRAP_RECORD_LENGTH) {
+                position += tail;
+                continue;
+            }
+
+            final int valueIndex = index + RECORD_HEADER_LENGTH;
+            buffer.limit(valueIndex + length);
+            buffer.position(valueIndex);
+
+            final E entry = spilledEntries.get();
+            final E value = serializer.read(buffer, entry);
+            if (value != entry) {
+                spilledEntries.set(value);
+            }
+
+            buffer.limit(spillSize);
+
+            spilledEntryEnd = position + RECORD_HEADER_LENGTH + length;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean spillRelease(final long consumerSequence) {
+        synchronized (spillLock) {
+            if (pendingSpills != 0 || spillReadPosition != spillWritePosition) {
+                return false;
+            }
+            UNSAFE.putLongVolatile(this, UNCOMMITTED_PRODUCERS_SEQUENCE_OFFSET, consumerSequence);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+/**
+ * A callback of a {@link CabWatchdog} which is called once per stall of a watched Cab. The handler is called from
+ * the thread of the watchdog, so, it should return quickly, since the rest of the Cabs aren't checked meanwhile.
+ * <p>
+ * A handler may unblock the consumer stuck on an uncommitted entry with
+ * cab.producerAbort(snapshot.getStalledSequence()). The abort refuses the sequences which are committed or
+ * consumed meanwhile, so, it's safe even if the stall has ended after the snapshot was taken.
+ */
+public interface CabStallHandler {
+    /**
+     * Handles a stall of the Cab.
+     *
+     * @param cab      which has stalled
+     * @param snapshot of the state of the Cab, which is reused by the watchdog after the call
+     */
+    void onStall(Cab<?, ?> cab, CabStallSnapshot snapshot);
+}
@@ -0,0 +1,166 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+/**
+ * A snapshot of the sequences of a stalled Cab and the states of the slots next to the consumer, taken by
+ * a {@link CabWatchdog}. The values are read without any synchronization with producers and the consumer.
+ */
+public final class CabStallSnapshot {
+
+    /**
+     * The reasons of a stall.
+     */
+    public enum Kind {
+        /**
+         * The consumer waits for the entry next to its sequence, which is claimed by a producer, but isn't
+         * committed.
+         */
+        UNCOMMITTED_ENTRY,
+
+        /**
+         * The Ring Buffer is full while the consumer doesn't commit its sequence.
+         */
+        FULL_BUFFER
+    }
+
+    private final boolean[] committed;
+
+    Kind kind;
+    long consumerSequence;
+    long claimedSequence;
+    int bufferSize;
+    long stallNanos;
+    int windowSize;
+
+    CabStallSnapshot(final int maxWindowSize) {
+        this.committed = new boolean[maxWindowSize];
+    }
+
+    void fill(final Cab<?, ?> cab, final Kind kind, final long consumerSequence, final long claimedSequence,
+              final long stallNanos) {
+        this.kind = kind;
+        this.consumerSequence = consumerSequence;
+        this.claimedSequence = claimedSequence;
+        this.bufferSize = cab.bufferSize();
+        this.stallNanos = stallNanos;
+
+        final long window = Math.min(Math.min(claimedSequence - consumerSequence, bufferSize), committed.length);
+        windowSize = (int) window;
+        for (int i = 0; i < windowSize; i++) {
+            committed[i] = cab.isCommitted(consumerSequence + 1 + i);
+        }
+    }
+
+    /**
+     * Returns the reason of the stall.
+     *
+     * @return the kind of the stall
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the last sequence committed by the consumer.
+     *
+     * @return the consumer's sequence
+     */
+    public long getConsumerSequence() {
+        return consumerSequence;
+    }
+
+    /**
+     * Returns the sequence the consumer is stuck on, which is the next one to the consumer's sequence.
+     *
+     * @return the stalled sequence
+     */
+    public long getStalledSequence() {
+        return consumerSequence + 1;
+    }
+
+    /**
+     * Returns the last sequence claimed by producers.
+     *
+     * @return the claimed sequence
+     */
+    public long getClaimedSequence() {
+        return claimedSequence;
+    }
+
+    /**
+     * Returns the size of the Ring Buffer.
+     *
+     * @return the buffer size
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns for how long the consumer's sequence hasn't moved.
+     *
+     * @return duration of the stall in nanoseconds
+     */
+    public long getStallNanos() {
+        return stallNanos;
+    }
+
+    /**
+     * Returns the number of the claimed sequences next to the consumer's one, whose states are captured.
+     *
+     * @return size of the window of the slots' states
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Checks if the sequence at the position in the window was committed by a producer. The window starts with
+     * the stalled sequence.
+     *
+     * @param index in the window
+     * @return true if the sequence getStalledSequence() + index was committed
+     */
+    public boolean isCommitted(final int index) {
+        if (index < 0 || index >= windowSize) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return committed[index];
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(64 + windowSize);
+        sb.append(kind)
+                .append(": consumer at ").append(consumerSequence)
+                .append(", claimed up to ").append(claimedSequence)
+                .append(", buffer size ").append(bufferSize)
+                .append(", stalled for ").append(stallNanos / 1_000_000).append(" ms, slots [");
+        for (int i = 0; i < windowSize; i++) {
+            sb.append(committed[i] ? 'C' : '.');
+        }
+        return sb.append(']').toString();
+    }
+}
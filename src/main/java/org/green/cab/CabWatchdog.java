@@ -0,0 +1,184 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An opt-in watchdog which periodically checks the watched Cabs from its own daemon thread and calls the handler
+ * when the consumer of a Cab doesn't move for longer than the threshold while it's stuck on an uncommitted entry
+ * or the Ring Buffer is full. A producer which claimed a sequence and never committed it, e.g., because of
+ * an exception or the death of its thread, blocks the consumer and all the entries behind the sequence forever,
+ * so, the handler can report it and abort the sequence with {@link Cab#producerAbort(long)}.
+ * <p>
+ * The checks read the sequences and the states of the slots only, so, the watched Cabs aren't slowed down.
+ * The handler is called once per stall, the next stall is reported after the consumer's sequence moves.
+ * The exceptions thrown by the handler are passed to the uncaught exception handler of the watchdog's thread,
+ * which keeps watching.
+ */
+@SuppressWarnings("try") // close() waits for the threads, so, it may be interrupted
+public final class CabWatchdog implements AutoCloseable {
+    private static final int MAX_WINDOW_SIZE = 64;
+    private static final long MIN_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final String STALL_THRESHOLD_MUST_BE_POSITIVE_MESSAGE = "stallThreshold must be positive";
+
+    private final long stallThresholdNanos;
+    private final long checkIntervalNanos;
+    private final CabStallHandler handler;
+    private final CopyOnWriteArrayList<Watch> watches = new CopyOnWriteArrayList<>();
+    private final CabStallSnapshot snapshot = new CabStallSnapshot(MAX_WINDOW_SIZE);
+    private final Thread thread;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a watchdog, which must be started with start().
+     *
+     * @param stallThreshold for how long the consumer's sequence may stay still before a stall is reported
+     * @param unit           of the threshold
+     * @param handler        to be called on stalls
+     */
+    public CabWatchdog(final long stallThreshold, final TimeUnit unit, final CabStallHandler handler) {
+        if (stallThreshold <= 0) {
+            throw new IllegalArgumentException(STALL_THRESHOLD_MUST_BE_POSITIVE_MESSAGE);
+        }
+
+        this.stallThresholdNanos = unit.toNanos(stallThreshold);
+        this.checkIntervalNanos = Math.max(stallThresholdNanos >> 2, MIN_CHECK_INTERVAL_NANOS);
+        this.handler = handler;
+
+        this.thread = new Thread(this::run, "cab-watchdog");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Adds the Cab to the watched ones.
+     *
+     * @param cab to be watched
+     */
+    public void watch(final Cab<?, ?> cab) {
+        watches.add(new Watch(cab, System.nanoTime()));
+    }
+
+    /**
+     * Removes the Cab from the watched ones.
+     *
+     * @param cab not to be watched anymore
+     */
+    public void unwatch(final Cab<?, ?> cab) {
+        watches.removeIf(w -> w.cab == cab);
+    }
+
+    /**
+     * Starts the thread of the watchdog.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops the thread of the watchdog and waits for it to finish.
+     *
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        LockSupport.unpark(thread);
+        if (thread.isAlive()) {
+            thread.join();
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            LockSupport.parkNanos(checkIntervalNanos);
+
+            final long now = System.nanoTime();
+            for (final Watch watch : watches) {
+                check(watch, now);
+            }
+        }
+    }
+
+    private void check(final Watch watch, final long now) {
+        final Cab<?, ?> cab = watch.cab;
+
+        final long consumerSequence = cab.observedConsumerSequence();
+        if (consumerSequence == Cab.CONSUMER_INTERRUPTED_SEQUENCE) {
+            return;
+        }
+
+        if (consumerSequence != watch.consumerSequence) { // the consumer moves
+            watch.consumerSequence = consumerSequence;
+            watch.since = now;
+            watch.reported = false;
+            return;
+        }
+
+        final long claimedSequence = cab.claimedSequence();
+        if (claimedSequence <= consumerSequence) { // the consumer has nothing to wait for
+            watch.since = now;
+            return;
+        }
+
+        final long stallNanos = now - watch.since;
+        if (watch.reported || stallNanos < stallThresholdNanos) {
+            return;
+        }
+
+        final CabStallSnapshot.Kind kind;
+        if (!cab.isCommitted(consumerSequence + 1)) {
+            kind = CabStallSnapshot.Kind.UNCOMMITTED_ENTRY;
+        } else if (claimedSequence - consumerSequence >= cab.bufferSize()) {
+            kind = CabStallSnapshot.Kind.FULL_BUFFER;
+        } else {
+            return; // the consumer is busy with the entries, but the producers aren't blocked yet
+        }
+
+        watch.reported = true;
+        snapshot.fill(cab, kind, consumerSequence, claimedSequence, stallNanos);
+        try {
+            handler.onStall(cab, snapshot);
+        } catch (final RuntimeException e) { // the rest of the Cabs must be watched anyway
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    private static final class Watch {
+        final Cab<?, ?> cab;
+
+        long consumerSequence = Long.MIN_VALUE + 3; // differs from any consumer's sequence
+        long since;
+        boolean reported;
+
+        Watch(final Cab<?, ?> cab, final long since) {
+            this.cab = cab;
+            this.since = since;
+        }
+    }
+}
@@ -36,4 +36,38 @@ public class CabYielding<E, M> extends Cab<E, M> {
 
         super(bufferSize, WaitingStaregy.YIELDING, 0, 0, supplier);
     }
+
+    public CabYielding(
+            final int bufferSize,
+            final SlotLayout slotLayout) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.YIELDING, 0, 0, null);
+    }
+
+    public CabYielding(
+            final int bufferSize,
+            final SlotLayout slotLayout,
+            final Supplier<E> supplier) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.YIELDING, 0, 0, supplier);
+    }
+
+    public CabYielding(
+            final int bufferSize,
+            final SlotLayout slotLayout,
+            final Supplier<E> supplier,
+            final boolean metricsEnabled) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.YIELDING, 0, 0, supplier, metricsEnabled);
+    }
+
+    public CabYielding(
+            final int bufferSize,
+            final SlotLayout slotLayout,
+            final Supplier<E> supplier,
+            final boolean metricsEnabled,
+            final boolean latencyEnabled) {
+
+        super(bufferSize, slotLayout, WaitingStaregy.YIELDING, 0, 0, supplier, metricsEnabled, latencyEnabled);
+    }
 }
\ No newline at end of file
@@ -1,4 +1,14 @@
 package org.green.cab;
 
 public class ConsumerInterruptedException extends Exception {
+    // thrown by the Cabs to every producer and sender after the consumer was interrupted, so, it's shared and has
+    // no stack trace not to allocate on each failed call
+    static final ConsumerInterruptedException INSTANCE = new ConsumerInterruptedException(false);
+
+    public ConsumerInterruptedException() {
+    }
+
+    private ConsumerInterruptedException(final boolean writableStackTrace) {
+        super(null, null, false, writableStackTrace);
+    }
 }
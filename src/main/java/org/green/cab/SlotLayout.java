@@ -0,0 +1,51 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+/**
+ * Layout of the entries and their states in the arrays of the Ring Buffer.
+ * <p>
+ * With the DENSE layout neighbouring sequences are mapped to adjacent elements of the arrays, so, producers committing
+ * neighbouring sequences write to the same cache line. The other layouts spread consecutive sequences across cache
+ * lines at the price of less locality for a batch read by the consumer (SCRAMBLED) or more memory (PADDED).
+ */
+public enum SlotLayout {
+    /**
+     * Consecutive sequences occupy adjacent elements of the arrays.
+     */
+    DENSE,
+
+    /**
+     * The index of a sequence is scrambled, so, up to sixteen consecutive sequences are mapped to different cache
+     * lines. The layout requires no additional memory and takes effect for buffers of 256 entries and more.
+     */
+    SCRAMBLED,
+
+    /**
+     * Every slot of the arrays is padded up to the size of a cache line. The layout takes sixteen times more
+     * memory for the states and eight or sixteen times more memory for the entries, depending on the size
+     * of references.
+     */
+    PADDED
+}
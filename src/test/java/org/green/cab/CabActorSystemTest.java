@@ -0,0 +1,298 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("try") // close() of the tested class may be interrupted
+public class CabActorSystemTest {
+    private static final int TEST_TIMEOUT = 30;
+
+    @Test
+    public void testManyActorsOnFewThreads() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final int actorCount = 10_000;
+            final int producerCount = 4;
+            final long entriesPerActorPerProducer = 20;
+
+            final Set<String> schedulerThreads = ConcurrentHashMap.newKeySet();
+            final long[] sums = new long[actorCount]; // every actor writes its own sum only
+            final AtomicLong handled = new AtomicLong();
+
+            try (CabActorSystem system = new CabActorSystem(2, actorCount, 16, 100, 100)) {
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                final CabActor<Long, String>[] actors = new CabActor[actorCount];
+                for (int i = 0; i < actorCount; i++) {
+                    final int index = i;
+                    actors[i] = system.spawn(new CabYielding<>(8), new CabHandler<Long, String>() {
+                        @Override
+                        public void onEntry(final Cab<Long, String> cab, final long sequence) {
+                            sums[index] += cab.getEntry(sequence);
+                            schedulerThreads.add(Thread.currentThread().getName());
+                            handled.incrementAndGet();
+                        }
+
+                        @Override
+                        public void onMessage(final Cab<Long, String> cab, final String message) {
+                        }
+                    });
+                }
+                assertThrows(IllegalStateException.class, () -> system.spawn(new CabYielding<>(8), null));
+
+                final Thread[] producers = new Thread[producerCount];
+                for (int p = 0; p < producerCount; p++) {
+                    producers[p] = new Thread(() -> {
+                        try {
+                            for (long value = 1; value <= entriesPerActorPerProducer; value++) {
+                                for (final CabActor<Long, String> actor : actors) {
+                                    actor.post(value);
+                                }
+                            }
+                        } catch (final ConsumerInterruptedException | InterruptedException e) {
+                            e.printStackTrace(System.err);
+                        }
+                    });
+                    producers[p].start();
+                }
+                for (final Thread producer : producers) {
+                    producer.join();
+                }
+
+                while (handled.get() < actorCount * producerCount * entriesPerActorPerProducer) {
+                    Thread.sleep(1);
+                }
+            }
+
+            final long expectedSum = producerCount * entriesPerActorPerProducer * (entriesPerActorPerProducer + 1) / 2;
+            for (int i = 0; i < actorCount; i++) {
+                assertEquals(expectedSum, sums[i]);
+            }
+            assertEquals(2, schedulerThreads.size());
+        });
+    }
+
+    @Test
+    public void testCommandsAndSupervision() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final StringBuffer log = new StringBuffer();
+            final AtomicLong failures = new AtomicLong();
+
+            final CabActorSystem.Supervisor supervisor = (actor, failure) -> {
+                failures.incrementAndGet();
+                return "resume".equals(failure.getMessage());
+            };
+
+            try (CabActorSystem system = new CabActorSystem(1, 4, 4, 0, 0, supervisor)) {
+                final CabActor<String, String> actor = system.spawn(new CabYielding<>(16),
+                        new CabHandler<String, String>() {
+                            @Override
+                            public void onEntry(final Cab<String, String> cab, final long sequence) {
+                                final String entry = cab.getEntry(sequence);
+                                if (entry.startsWith("fail:")) {
+                                    throw new IllegalStateException(entry.substring(5));
+                                }
+                                log.append(entry);
+                            }
+
+                            @Override
+                            public void onMessage(final Cab<String, String> cab, final String command) {
+                                log.append('[').append(command).append(']');
+                            }
+                        });
+
+                actor.post("a");
+                actor.post("fail:resume");
+                actor.post("b");
+                while (log.length() < 2) {
+                    Thread.sleep(1);
+                }
+                assertEquals("ab", log.toString());
+
+                actor.send("command");
+                while (log.length() < 11) {
+                    Thread.sleep(1);
+                }
+                assertEquals("ab[command]", log.toString());
+
+                actor.post("fail:stop");
+                while (!actor.isStopped()) {
+                    Thread.sleep(1);
+                }
+                assertThrows(ConsumerInterruptedException.class, () -> actor.post("c"));
+                assertEquals(2, failures.get());
+
+                final CabActor<String, String> stopped = system.spawn(new CabYielding<>(16),
+                        new CabHandler<String, String>() {
+                            @Override
+                            public void onEntry(final Cab<String, String> cab, final long sequence) {
+                            }
+
+                            @Override
+                            public void onMessage(final Cab<String, String> cab, final String command) {
+                            }
+                        });
+                assertFalse(stopped.isStopped());
+                stopped.stop();
+                while (!stopped.isStopped()) {
+                    Thread.sleep(1);
+                }
+                assertTrue(stopped.isStopped());
+            }
+        });
+    }
+
+    @Test
+    public void testPostAfterClose() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+
+            final CabActorSystem system = new CabActorSystem(1, 4, 16, 100, 100);
+            final CabActor<String, String> busy =
+                    system.spawn(new CabYielding<>(2), new BlockingHandler(started, release));
+            final CabActor<String, String> queued = system.spawn(new CabYielding<>(2), new BlockingHandler(null, null));
+            final CabActor<String, String> idle = system.spawn(new CabYielding<>(2), new BlockingHandler(null, null));
+
+            busy.post("a");
+            started.await(); // the scheduler is busy, so, the next actor stays in the run queue
+            queued.post("b");
+
+            final Thread closing = new Thread(() -> {
+                try {
+                    system.close();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            closing.start();
+            while (closing.getState() != Thread.State.WAITING) { // close() waits for the scheduler
+                Thread.sleep(1);
+            }
+            release.countDown();
+            closing.join();
+
+            for (final CabActor<String, String> actor : Arrays.asList(busy, queued, idle)) {
+                assertTrue(actor.isStopped());
+                for (int i = 0; i < 4; i++) { // more than the mailbox holds
+                    assertThrows(ConsumerInterruptedException.class, () -> actor.post("c"));
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testTryPostToElasticAndSpillingMailboxes() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final File spillFile = File.createTempFile("cab-spilling", null);
+            try (CabActorSystem system = new CabActorSystem(2, 4, 16, 100, 100)) {
+                final List<Cab<String, String>> mailboxes = Arrays.asList(
+                        new CabElastic<>(2, 16, 100, 100),
+                        new CabSpilling<>(2, 100, 100, spillFile, 1024, new StringSerializer()));
+
+                for (final Cab<String, String> mailbox : mailboxes) {
+                    final CountDownLatch started = new CountDownLatch(1);
+                    final CountDownLatch release = new CountDownLatch(1);
+                    final CabActor<String, String> actor = system.spawn(mailbox, new BlockingHandler(started, release));
+
+                    assertTrue(actor.tryPost("a"));
+                    started.await(); // the entry a isn't committed by the consumer until the release
+                    assertTrue(actor.tryPost("b"));
+                    assertFalse(actor.tryPost("c")); // the Ring Buffer is full and tryPost() never spills
+
+                    release.countDown();
+                    while (mailbox.observedConsumerSequence() < 1) {
+                        Thread.sleep(1);
+                    }
+                    assertTrue(actor.tryPost("d"));
+                }
+            } finally {
+                spillFile.delete();
+            }
+        });
+    }
+
+    private static final class BlockingHandler implements CabHandler<String, String> {
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        BlockingHandler(final CountDownLatch started, final CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public void onEntry(final Cab<String, String> cab, final long sequence) {
+            if (started == null) {
+                return;
+            }
+            started.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void onMessage(final Cab<String, String> cab, final String command) {
+        }
+    }
+
+    private static final class StringSerializer implements CabSerializer<String> {
+        @Override
+        public int sizeOf(final String value) {
+            return Integer.BYTES + value.length();
+        }
+
+        @Override
+        public void write(final String value, final ByteBuffer buffer) {
+            buffer.putInt(value.length());
+            buffer.put(value.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        public String read(final ByteBuffer buffer, final String value) {
+            final byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies the hot paths don't allocate in steady state. All the operations are done by the test's thread, so,
+ * the allocations are measured for the thread only.
+ */
+public class CabAllocationTest {
+    private static final int TEST_TIMEOUT = 60;
+
+    private static final int BUFFER_SIZE = 1_024;
+    private static final int BATCH_SIZE = BUFFER_SIZE / 2;
+    private static final int WARMUP_BATCHES = 2_000;
+    private static final int MEASURED_BATCHES = 2_000;
+    // for all the measured batches together, while a single allocation per batch is at least 16 * 2_000 bytes
+    private static final long ALLOCATION_TOLERANCE = 256;
+
+    private static final Object MESSAGE = new Object();
+
+    @Test
+    public void testBusySpinning() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            assertNoAllocation(new CabBusySpinning<>(BUFFER_SIZE, () -> new long[1]));
+        });
+    }
+
+    @Test
+    public void testYielding() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            assertNoAllocation(new CabYielding<>(BUFFER_SIZE, () -> new long[1]));
+        });
+    }
+
+    @Test
+    public void testBackingOff() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            assertNoAllocation(new CabBackingOff<>(BUFFER_SIZE, 100, 100, () -> new long[1]));
+        });
+    }
+
+    @Test
+    public void testBlocking() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            assertNoAllocation(new CabBlocking<>(BUFFER_SIZE, () -> new long[1]));
+        });
+    }
+
+    @Test
+    public void testBlockingWithMetricsAndLatency() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            assertNoAllocation(new CabBlocking<>(BUFFER_SIZE, SlotLayout.PADDED, () -> new long[1], true, true));
+        });
+    }
+
+    @Test
+    public void testElastic() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            assertNoAllocation(new CabElastic<>(BUFFER_SIZE, BUFFER_SIZE * 4, 100, 100, () -> new long[1]));
+        });
+    }
+
+    @Test
+    public void testInterruptedConsumer() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final Cab<long[], Object> cab = new CabBackingOff<>(BUFFER_SIZE, 100, 100, () -> new long[1]);
+            cab.consumerInterrupt();
+
+            final Operation failedCalls = () -> {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    try {
+                        cab.producerNext();
+                    } catch (final ConsumerInterruptedException ignore) {
+                    }
+                    try {
+                        cab.send(MESSAGE);
+                    } catch (final ConsumerInterruptedException ignore) {
+                    }
+                }
+            };
+
+            assertNotAllocating(failedCalls);
+        });
+    }
+
+    @Test
+    public void testExecutor() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabExecutor executor = new CabExecutor(BUFFER_SIZE, 100, 100, CabExecutor.RejectionPolicy.BLOCK);
+            final AtomicLong executed = new AtomicLong();
+            final CabExecutor.Task<AtomicLong> increment = AtomicLong::incrementAndGet;
+
+            final Operation execution = () -> {
+                final long expected = executed.get() + BATCH_SIZE;
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    executor.execute(increment, executed);
+                }
+                while (executed.get() < expected) {
+                    Thread.yield();
+                }
+            };
+
+            assertNotAllocating(execution);
+
+            executor.shutdown();
+            executor.awaitTermination(TEST_TIMEOUT, TimeUnit.SECONDS);
+        });
+    }
+
+    private static void assertNoAllocation(final Cab<long[], Object> cab) throws Exception {
+        final Operation roundTrip = () -> {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                final long sequence = cab.producerNext();
+                cab.getEntry(sequence)[0] = sequence;
+                cab.producerCommit(sequence);
+            }
+
+            cab.send(MESSAGE);
+
+            assertEquals(Cab.MESSAGE_RECEIVED_SEQUENCE, cab.consumerNext());
+            cab.consumerCommit(Cab.MESSAGE_RECEIVED_SEQUENCE);
+
+            // a half of the entries one by one, the rest of them as a batch
+            for (int i = 0; i < BATCH_SIZE / 2; i++) {
+                final long sequence = cab.consumerNext();
+                assertEquals(sequence, cab.getEntry(sequence)[0]);
+                cab.consumerCommit(sequence);
+            }
+
+            cab.consumerCommit(cab.consumerAvailableSequence());
+        };
+
+        assertNotAllocating(roundTrip);
+    }
+
+    private static void assertNotAllocating(final Operation operation) throws Exception {
+        final long measurementCost = allocatedBytes(() -> { });
+        final long allocated = allocatedBytes(operation) - measurementCost;
+
+        assertTrue(allocated <= ALLOCATION_TOLERANCE,
+                allocated + " bytes allocated by " + MEASURED_BATCHES + " batches");
+    }
+
+    private static long allocatedBytes(final Operation operation) throws Exception {
+        final com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARMUP_BATCHES; i++) {
+            operation.run();
+        }
+
+        final long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_BATCHES; i++) {
+            operation.run();
+        }
+        final long after = threadBean.getThreadAllocatedBytes(threadId);
+
+        return after - before; // not divided, so, even one allocation per batch can't be rounded off
+    }
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+
+public class CabBroadcastTest {
+    private static final int TEST_TIMEOUT = 30;
+
+    @Test
+    public void testGatingOnSlowestConsumer() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            assertThrows(IllegalArgumentException.class, () -> new CabBroadcast<Long>(0, 0, 0));
+
+            final CabBroadcast<Long> broadcast = new CabBroadcast<>(4, 100, 100);
+            final CabBroadcast.Consumer<Long> fast = broadcast.addConsumer();
+            final CabBroadcast.Consumer<Long> slow = broadcast.addConsumer();
+            assertEquals(2, broadcast.consumerCount());
+
+            for (long value = 0; value < 4; value++) {
+                final long sequence = broadcast.producerNext();
+                broadcast.setEntry(sequence, value);
+                broadcast.producerCommit(sequence);
+            }
+
+            assertEquals(3, fast.consumerAvailableSequence());
+            fast.consumerCommit(3);
+
+            final Thread producer = new Thread(() -> {
+                try {
+                    final long sequence = broadcast.producerNext();
+                    broadcast.setEntry(sequence, 4L);
+                    broadcast.producerCommit(sequence);
+                } catch (final InterruptedException e) {
+                    e.printStackTrace(System.err);
+                }
+            });
+            producer.start();
+            producer.join(100);
+            assertEquals(Thread.State.TIMED_WAITING, producer.getState()); // the slow consumer gates the producer
+
+            assertEquals(0L, (long) slow.getEntry(slow.consumerNext()));
+            slow.consumerCommit(0);
+            producer.join();
+
+            assertEquals(4, fast.consumerNext());
+            assertEquals(4L, (long) fast.getEntry(4));
+
+            slow.close();
+            assertEquals(1, broadcast.consumerCount());
+        });
+    }
+
+    @Test
+    public void testEveryConsumerSeesEveryEntry() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final int producerCount = 2;
+            final int consumerCount = 3;
+            final long entriesPerProducer = 200_000;
+
+            final CabBroadcast<long[]> broadcast = new CabBroadcast<>(256, 100, 100, () -> new long[1]);
+            final AtomicLong failures = new AtomicLong();
+
+            final Thread[] consumers = new Thread[consumerCount];
+            for (int i = 0; i < consumerCount; i++) {
+                final CabBroadcast.Consumer<long[]> consumer = broadcast.addConsumer();
+                consumers[i] = new Thread(() -> {
+                    try {
+                        long sum = 0;
+                        for (long count = 0; count < producerCount * entriesPerProducer; count++) {
+                            final long sequence = consumer.consumerNext();
+                            sum += consumer.getEntry(sequence)[0];
+                            consumer.consumerCommit(sequence);
+                        }
+                        if (sum != producerCount * entriesPerProducer * (entriesPerProducer - 1) / 2) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (final InterruptedException e) {
+                        e.printStackTrace(System.err);
+                    } finally {
+                        consumer.close();
+                    }
+                });
+            }
+
+            final Thread[] producers = new Thread[producerCount];
+            for (int i = 0; i < producerCount; i++) {
+                producers[i] = new Thread(() -> {
+                    try {
+                        for (long value = 0; value < entriesPerProducer; value++) {
+                            final long sequence = broadcast.producerNext();
+                            broadcast.getEntry(sequence)[0] = value;
+                            broadcast.producerCommit(sequence);
+                        }
+                    } catch (final InterruptedException e) {
+                        e.printStackTrace(System.err);
+                    }
+                });
+            }
+
+            for (final Thread consumer : consumers) {
+                consumer.start();
+            }
+            for (final Thread producer : producers) {
+                producer.start();
+            }
+            for (final Thread producer : producers) {
+                producer.join();
+            }
+            for (final Thread consumer : consumers) {
+                consumer.join();
+            }
+
+            assertEquals(0, failures.get());
+            assertEquals(0, broadcast.consumerCount());
+        });
+    }
+
+    @Test
+    public void testConsumersAddedAndRemovedAtRuntime() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final long entryCount = 200_000;
+
+            final CabBroadcast<long[]> broadcast = new CabBroadcast<>(64, 100, 100, () -> new long[1]);
+            final CabBroadcast.Consumer<long[]> steady = broadcast.addConsumer();
+            final AtomicLong failures = new AtomicLong();
+
+            final Thread producer = new Thread(() -> {
+                try {
+                    for (long value = 0; value < entryCount; value++) {
+                        final long sequence = broadcast.producerNext();
+                        broadcast.getEntry(sequence)[0] = value;
+                        broadcast.producerCommit(sequence);
+                    }
+                } catch (final InterruptedException e) {
+                    e.printStackTrace(System.err);
+                }
+            });
+
+            final Thread churning = new Thread(() -> {
+                while (producer.isAlive()) {
+                    // every late consumer reads a gapless run of the entries claimed after it's added
+                    try (CabBroadcast.Consumer<long[]> consumer = broadcast.addConsumer()) {
+                        long sequence = consumer.consumerSequence();
+                        for (int batch = 0; batch < 100 && producer.isAlive(); batch++) {
+                            final long available = consumer.consumerAvailableSequence();
+                            while (sequence < available) {
+                                sequence++;
+                                if (consumer.getEntry(sequence)[0] != sequence) {
+                                    failures.incrementAndGet();
+                                }
+                            }
+                            consumer.consumerCommit(available);
+                        }
+                    }
+                }
+            });
+
+            producer.start();
+            churning.start();
+
+            for (long value = 0; value < entryCount; value++) {
+                final long sequence = steady.consumerNext();
+                if (steady.getEntry(sequence)[0] != value) {
+                    failures.incrementAndGet();
+                }
+                steady.consumerCommit(sequence);
+            }
+
+            producer.join();
+            churning.join();
+
+            assertEquals(0, failures.get());
+            assertEquals(1, broadcast.consumerCount());
+        });
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import static java.time.Duration.ofSeconds;
+import static org.green.cab.Cab.MESSAGE_RECEIVED_SEQUENCE;
+import static org.green.cab.Cab.NOTHING_AVAILABLE_SEQUENCE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CabCompactTest {
+    private static final int TEST_TIMEOUT = 30;
+
+    @Test
+    public void testLazyAllocationAndOddCapacity() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabCompact<long[], String> cab = new CabCompact<>(3, () -> new long[1]);
+            assertEquals(3, cab.bufferSize());
+            assertFalse(cab.isAllocated());
+            assertEquals(NOTHING_AVAILABLE_SEQUENCE, cab.consumerPoll());
+            assertFalse(cab.isAllocated());
+
+            for (long i = 0; i < 10; i++) { // wraps the odd-sized buffer a few times
+                for (int j = 0; j < 3; j++) {
+                    final long sequence = cab.producerNext();
+                    cab.getEntry(sequence)[0] = i * 3 + j;
+                    cab.producerCommit(sequence);
+                }
+                assertTrue(cab.isAllocated());
+                assertEquals(NOTHING_AVAILABLE_SEQUENCE, cab.producerTryNext());
+
+                for (int j = 0; j < 3; j++) {
+                    final long sequence = cab.consumerPoll();
+                    assertEquals(i * 3 + j, sequence);
+                    assertEquals(sequence, cab.getEntry(sequence)[0]);
+                    cab.consumerCommit(sequence);
+                }
+                assertEquals(NOTHING_AVAILABLE_SEQUENCE, cab.consumerPoll());
+            }
+
+            cab.send("hello");
+            assertEquals(MESSAGE_RECEIVED_SEQUENCE, cab.consumerNext());
+            assertEquals("hello", cab.getMessage());
+            cab.consumerCommit(MESSAGE_RECEIVED_SEQUENCE);
+
+            cab.consumerInterrupt();
+            assertThrows(ConsumerInterruptedException.class, cab::producerNext);
+            assertThrows(ConsumerInterruptedException.class, () -> cab.send("bye"));
+        });
+    }
+
+    @Test
+    public void testManyProducers() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final int producerCount = 4;
+            final int entriesPerProducer = 100_000;
+
+            final CabCompact<Integer, Object> cab = new CabCompact<>(5);
+
+            final Thread[] producers = new Thread[producerCount];
+            for (int i = 0; i < producerCount; i++) {
+                final int producer = i;
+                producers[i] = new Thread(() -> {
+                    try {
+                        for (int e = 0; e < entriesPerProducer; e++) {
+                            final long sequence = cab.producerNext();
+                            cab.setEntry(sequence, producer * entriesPerProducer + e);
+                            cab.producerCommit(sequence);
+                        }
+                    } catch (final Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                producers[i].start();
+            }
+
+            final int[] lastSeen = new int[producerCount];
+            for (int i = 0; i < producerCount; i++) {
+                lastSeen[i] = -1;
+            }
+            for (long i = 0; i < (long) producerCount * entriesPerProducer; i++) {
+                final long sequence = cab.consumerNext();
+                final int value = cab.removeEntry(sequence);
+                cab.consumerCommit(sequence);
+
+                final int producer = value / entriesPerProducer;
+                assertEquals(lastSeen[producer] + 1, value % entriesPerProducer); // per-producer order
+                lastSeen[producer]++;
+            }
+
+            for (final Thread producer : producers) {
+                producer.join();
+            }
+
+            final int[] expected = new int[producerCount];
+            for (int i = 0; i < producerCount; i++) {
+                expected[i] = entriesPerProducer - 1;
+            }
+            assertArrayEquals(expected, lastSeen);
+            assertEquals(NOTHING_AVAILABLE_SEQUENCE, cab.consumerPoll());
+        });
+    }
+}
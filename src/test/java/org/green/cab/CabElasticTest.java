@@ -0,0 +1,256 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+
+public class CabElasticTest {
+    private static final int TEST_TIMEOUT = 30;
+
+    @Test
+    public void testGrowsWhenFullAndShrinksWhenIdle() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabElastic<Long, Object> cab = new CabElastic<>(4, 16, 10, 100);
+
+            assertEquals(4, cab.bufferSize());
+            assertEquals(16, cab.maxBufferSize());
+
+            final int numberOfEntries = 200;
+
+            final Thread producer = new Thread(() -> {
+                try {
+                    for (long i = 0; i < numberOfEntries; i++) {
+                        final long sequence = cab.producerNext();
+                        cab.setEntry(sequence, i);
+                        cab.producerCommit(sequence);
+                    }
+                } catch (final ConsumerInterruptedException | InterruptedException e) {
+                    e.printStackTrace(System.err);
+                }
+            });
+            producer.start();
+
+            for (long i = 0; i < numberOfEntries; i++) { // a slow consumer keeps the buffer full
+                LockSupport.parkNanos(200_000);
+
+                final long sequence = cab.consumerNext();
+                assertEquals(i, cab.getEntry(sequence).longValue());
+                cab.consumerCommit(sequence);
+            }
+
+            producer.join();
+
+            assertEquals(16, cab.bufferSize());
+
+            for (long i = 0; i < 16 * (16 + 8) * CabElastic.IDLE_LAPS_TO_SHRINK; i++) { // no occupancy at all
+                final long sequence = cab.producerNext();
+                cab.setEntry(sequence, i);
+                cab.producerCommit(sequence);
+
+                final long consumed = cab.consumerNext();
+                assertEquals(sequence, consumed);
+                assertEquals(i, cab.getEntry(consumed).longValue());
+                cab.consumerCommit(consumed);
+            }
+
+            assertEquals(4, cab.bufferSize());
+        });
+    }
+
+    @Test
+    public void testSupplierFillsNewRings() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabElastic<long[], Object> cab = new CabElastic<>(1, 2, 10, 100, () -> new long[1]);
+
+            final Thread producer = new Thread(() -> {
+                try {
+                    for (long i = 0; i < 100; i++) {
+                        final long sequence = cab.producerNext();
+                        cab.getEntry(sequence)[0] = i;
+                        cab.producerCommit(sequence);
+                    }
+                } catch (final ConsumerInterruptedException | InterruptedException e) {
+                    e.printStackTrace(System.err);
+                }
+            });
+            producer.start();
+
+            for (long i = 0; i < 100; i++) {
+                LockSupport.parkNanos(200_000);
+
+                final long sequence = cab.consumerNext();
+                assertEquals(i, cab.getEntry(sequence)[0]);
+                cab.consumerCommit(sequence);
+            }
+
+            producer.join();
+
+            assertEquals(2, cab.bufferSize());
+        });
+    }
+
+    @Test
+    public void test3pScWithResizing() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabElastic<Long, Object> cab = new CabElastic<>(2, 1024, 10, 100);
+
+            final int numberOfProducers = 3;
+            final int numberOfEntriesForEach = 100_000;
+
+            final Thread[] producers = new Thread[numberOfProducers];
+            for (int p = 0; p < producers.length; p++) {
+                final long id = p;
+                producers[p] = new Thread(() -> {
+                    try {
+                        for (long i = 0; i < numberOfEntriesForEach; i++) {
+                            final long sequence = cab.producerNext();
+                            cab.setEntry(sequence, (id << 32) | i);
+                            cab.producerCommit(sequence);
+                        }
+                    } catch (final ConsumerInterruptedException | InterruptedException e) {
+                        e.printStackTrace(System.err);
+                    }
+                });
+                producers[p].start();
+            }
+
+            final long[] lastValues = new long[numberOfProducers];
+            java.util.Arrays.fill(lastValues, -1);
+
+            for (int i = 0; i < numberOfProducers * numberOfEntriesForEach; i++) {
+                if (i % 10_000 < 100) { // be slow from time to time to make the producers wait
+                    LockSupport.parkNanos(10_000);
+                }
+
+                final long sequence = cab.consumerNext();
+                final long entry = cab.getEntry(sequence);
+                cab.consumerCommit(sequence);
+
+                final int id = (int) (entry >>> 32);
+                final long value = entry & 0xffffffffL;
+
+                assertEquals(lastValues[id] + 1, value);
+                lastValues[id] = value;
+            }
+
+            for (final Thread producer : producers) {
+                producer.join();
+            }
+        });
+    }
+
+    @Test
+    public void testShrinksWhilePollingIdle() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabElastic<Long, Object> cab = new CabElastic<>(4, 16, 10, 100);
+            growToMax(cab);
+
+            while (cab.bufferSize() > 4) { // no commits at all, so, only the idle time shrinks the buffer
+                assertEquals(Cab.NOTHING_AVAILABLE_SEQUENCE, cab.consumerPoll());
+                Thread.sleep(1);
+            }
+
+            for (long i = 0; i < 64; i++) { // the consumer passes the grown buffer to the new one
+                final long sequence = cab.producerNext();
+                cab.setEntry(sequence, i);
+                cab.producerCommit(sequence);
+
+                final long consumed = cab.consumerPoll();
+                assertEquals(sequence, consumed);
+                assertEquals(i, cab.getEntry(consumed).longValue());
+                cab.consumerCommit(consumed);
+            }
+
+            assertEquals(4, cab.bufferSize());
+        });
+    }
+
+    @Test
+    public void testShrinksAfterBlockedConsumerWakesUp() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabElastic<Long, Object> cab = new CabElastic<>(4, 16, 10, 100);
+            growToMax(cab);
+
+            final Thread producer = new Thread(() -> {
+                try {
+                    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(CabElastic.IDLE_NANOS_TO_SHRINK) * 2);
+                    final long sequence = cab.producerNext();
+                    cab.setEntry(sequence, -1L);
+                    cab.producerCommit(sequence);
+
+                    Thread.sleep(10);
+                    cab.send("wake up");
+                } catch (final ConsumerInterruptedException | InterruptedException e) {
+                    e.printStackTrace(System.err);
+                }
+            });
+            producer.start();
+
+            final long sequence = cab.consumerNext(); // blocks during the idle period
+            assertEquals(-1L, cab.getEntry(sequence).longValue());
+            cab.consumerCommit(sequence);
+            assertEquals(16, cab.bufferSize());
+
+            assertEquals(Cab.MESSAGE_RECEIVED_SEQUENCE, cab.consumerNext()); // shrinks before it waits again
+            cab.consumerCommit(Cab.MESSAGE_RECEIVED_SEQUENCE);
+            producer.join();
+
+            assertEquals(4, cab.bufferSize());
+        });
+    }
+
+    private static void growToMax(final CabElastic<Long, Object> cab) throws Exception {
+        final Thread producer = new Thread(() -> {
+            try {
+                for (long i = 0; i < 100; i++) {
+                    final long sequence = cab.producerNext();
+                    cab.setEntry(sequence, i);
+                    cab.producerCommit(sequence);
+                }
+            } catch (final ConsumerInterruptedException | InterruptedException e) {
+                e.printStackTrace(System.err);
+            }
+        });
+        producer.start();
+
+        for (long i = 0; i < 100; i++) { // a slow consumer keeps the buffer full
+            LockSupport.parkNanos(200_000);
+
+            final long sequence = cab.consumerNext();
+            assertEquals(i, cab.getEntry(sequence).longValue());
+            cab.consumerCommit(sequence);
+        }
+
+        producer.join();
+
+        assertEquals(cab.maxBufferSize(), cab.bufferSize());
+    }
+}
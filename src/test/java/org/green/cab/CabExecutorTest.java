@@ -0,0 +1,195 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CabExecutorTest {
+    private static final int TEST_TIMEOUT = 30;
+
+    @Test
+    public void testTasksAreSerialized() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final int producerCount = 4;
+            final long tasksPerProducer = 200_000;
+
+            final CabExecutor executor = new CabExecutor(1024, 100, 100, CabExecutor.RejectionPolicy.BLOCK);
+            final long[] counter = new long[1]; // no synchronization, since the tasks are serialized
+            final CabExecutor.Task<long[]> increment = state -> state[0]++;
+
+            final Thread[] producers = new Thread[producerCount];
+            for (int i = 0; i < producerCount; i++) {
+                producers[i] = new Thread(() -> {
+                    for (long t = 0; t < tasksPerProducer; t++) {
+                        executor.execute(increment, counter);
+                    }
+                });
+                producers[i].start();
+            }
+            for (final Thread producer : producers) {
+                producer.join();
+            }
+
+            final Future<Long> result = executor.submit(() -> counter[0]);
+            assertEquals(producerCount * tasksPerProducer, (long) result.get());
+
+            executor.shutdown();
+            assertTrue(executor.isShutdown());
+            assertTrue(executor.awaitTermination(TEST_TIMEOUT, TimeUnit.SECONDS));
+            assertTrue(executor.isTerminated());
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        });
+    }
+
+    @Test
+    public void testRejectionPolicies() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CountDownLatch blocker = new CountDownLatch(1);
+            final AtomicLong executed = new AtomicLong();
+            final Runnable counting = executed::incrementAndGet;
+
+            final CabExecutor aborting = new CabExecutor(4, 0, 0, CabExecutor.RejectionPolicy.ABORT);
+            final CabExecutor callerRunning = new CabExecutor(4, 0, 0, CabExecutor.RejectionPolicy.CALLER_RUNS);
+            final CabExecutor discarding = new CabExecutor(4, 0, 0, CabExecutor.RejectionPolicy.DISCARD);
+
+            for (final CabExecutor executor : new CabExecutor[]{aborting, callerRunning, discarding}) {
+                final CountDownLatch started = new CountDownLatch(1);
+                executor.execute(() -> {
+                    started.countDown();
+                    try {
+                        blocker.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                started.await();
+                for (int i = 0; i < 4; i++) {
+                    executor.execute(counting); // fills the Ring Buffer
+                }
+            }
+
+            assertThrows(RejectedExecutionException.class, () -> aborting.execute(counting));
+
+            final Thread caller = Thread.currentThread();
+            final boolean[] ranByCaller = new boolean[1];
+            callerRunning.execute(() -> ranByCaller[0] = Thread.currentThread() == caller);
+            assertTrue(ranByCaller[0]);
+
+            discarding.execute(() -> ranByCaller[0] = false);
+            assertTrue(ranByCaller[0]);
+
+            final List<Runnable> unexecuted = discarding.shutdownNow(); // interrupts the blocked task
+            assertEquals(4, unexecuted.size());
+            assertTrue(discarding.isTerminated());
+
+            blocker.countDown();
+            aborting.shutdown();
+            callerRunning.shutdown();
+            assertTrue(aborting.awaitTermination(TEST_TIMEOUT, TimeUnit.SECONDS));
+            assertTrue(callerRunning.awaitTermination(TEST_TIMEOUT, TimeUnit.SECONDS));
+            assertEquals(8, executed.get()); // the tasks accepted before shutdown() are executed
+        });
+    }
+
+    @Test
+    public void testShutdownWhileTasksAreExecuted() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final int producerCount = 4;
+
+            for (int round = 0; round < 50; round++) {
+                final CabExecutor executor = new CabExecutor(64, 100, 100, CabExecutor.RejectionPolicy.BLOCK);
+                final AtomicLong accepted = new AtomicLong();
+                final AtomicLong executed = new AtomicLong();
+                final Runnable counting = executed::incrementAndGet;
+
+                final Thread[] producers = new Thread[producerCount];
+                for (int i = 0; i < producerCount; i++) {
+                    producers[i] = new Thread(() -> {
+                        try {
+                            while (true) {
+                                executor.execute(counting);
+                                accepted.incrementAndGet();
+                            }
+                        } catch (final RejectedExecutionException e) {
+                            // the executor was shut down, the claimed sequence is aborted
+                        }
+                    });
+                    producers[i].start();
+                }
+
+                Thread.sleep(1);
+                executor.shutdown(); // the last claimed sequences may be aborted
+
+                assertTrue(executor.awaitTermination(TEST_TIMEOUT, TimeUnit.SECONDS));
+                for (final Thread producer : producers) {
+                    producer.join();
+                }
+                assertEquals(accepted.get(), executed.get()); // the accepted tasks are executed
+            }
+        });
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotStopExecutor() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabExecutor executor = new CabExecutor(16, 100, 100, CabExecutor.RejectionPolicy.BLOCK);
+
+            final CountDownLatch started = new CountDownLatch(1);
+            final Future<?> blocked = executor.submit(() -> {
+                started.countDown();
+                while (!Thread.currentThread().isInterrupted()) { // the interrupt isn't cleared by the task
+                    Thread.yield();
+                }
+            });
+            final AtomicLong executed = new AtomicLong();
+            executor.execute(executed::incrementAndGet); // queued behind the cancelled task
+
+            started.await();
+            assertTrue(blocked.cancel(true)); // interrupts the executing thread
+
+            assertEquals(2L, (long) executor.submit(executed::incrementAndGet).get());
+            assertFalse(executor.isShutdown());
+            assertEquals(2, executed.get());
+
+            assertThrows(NullPointerException.class, () -> executor.execute(null));
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(TEST_TIMEOUT, TimeUnit.SECONDS));
+        });
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CabJournalTest {
+    private static final int TEST_TIMEOUT = 30;
+
+    private static final int SEGMENT_SIZE = 256;
+
+    private static final int NUMBER_OF_BATCHES = 20;
+    private static final int ENTRIES_PER_BATCH = 5;
+    private static final int RECORDS_PER_BATCH = ENTRIES_PER_BATCH + 1;
+
+    @Test
+    public void testAppendAndReplay() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final File directory = Files.createTempDirectory("cab-journal").toFile();
+            try {
+                try (CabJournal<Long, String> journal = newJournal(directory)) {
+                    final Cab<Long, String> cab = new CabBlocking<>(16);
+
+                    for (long b = 0; b < NUMBER_OF_BATCHES; b++) {
+                        for (long i = 0; i < ENTRIES_PER_BATCH; i++) {
+                            final long sequence = cab.producerNext();
+                            cab.setEntry(sequence, b * ENTRIES_PER_BATCH + i);
+                            cab.producerCommit(sequence);
+                        }
+                        cab.send("message" + b);
+
+                        for (int i = 0; i < RECORDS_PER_BATCH; i++) {
+                            final long sequence = cab.consumerNext();
+                            journal.append(cab, sequence);
+                            cab.consumerCommit(sequence);
+                        }
+                    }
+
+                    assertEquals(NUMBER_OF_BATCHES * ENTRIES_PER_BATCH - 1, journal.checkpointSequence());
+                }
+
+                // segments were rolled
+                final File[] segments =
+                        directory.listFiles((dir, name) -> name.endsWith(CabJournal.SEGMENT_FILE_SUFFIX));
+                assertTrue(segments != null && segments.length > 1);
+
+                final long numberOfRecords = NUMBER_OF_BATCHES * RECORDS_PER_BATCH;
+
+                try (CabJournal<Long, String> journal = newJournal(directory)) {
+                    assertEquals(NUMBER_OF_BATCHES * ENTRIES_PER_BATCH - 1, journal.checkpointSequence());
+
+                    final Cab<Long, String> cab = new CabBlocking<>(16);
+                    assertEquals(numberOfRecords, replayAndCheck(journal, cab));
+
+                    // the replayed records were skipped, so, only this one is appended
+                    final long sequence = cab.producerNext();
+                    cab.setEntry(sequence, -1L);
+                    cab.producerCommit(sequence);
+
+                    assertEquals(sequence, cab.consumerNext());
+                    journal.append(cab, sequence);
+                    cab.consumerCommit(sequence);
+
+                    assertEquals(sequence, journal.checkpointSequence());
+                }
+
+                try (CabJournal<Long, String> journal = newJournal(directory)) {
+                    final Cab<Long, String> cab = new CabBlocking<>(16);
+                    assertEquals(numberOfRecords + 1, replayAndCheck(journal, cab));
+
+                    final long sequence = cab.consumerNext();
+                    assertEquals(-1L, cab.getEntry(sequence).longValue());
+                    cab.consumerCommit(sequence);
+                }
+            } finally {
+                delete(directory);
+            }
+        });
+    }
+
+    @Test
+    public void testRecordsAfterCheckpointAreDiscarded() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final File directory = Files.createTempDirectory("cab-journal").toFile();
+            try {
+                final CabJournal<Long, String> journal = newJournal(directory);
+                final Cab<Long, String> cab = new CabBlocking<>(16);
+
+                for (long i = 0; i < 3; i++) {
+                    final long sequence = cab.producerNext();
+                    cab.setEntry(sequence, i);
+                    cab.producerCommit(sequence);
+                }
+
+                // the batch isn't drained, so, no checkpoint yet
+                final long sequence = cab.consumerNext();
+                journal.append(cab, sequence);
+                cab.consumerCommit(sequence);
+
+                assertEquals(-1, journal.checkpointSequence());
+
+                // the process crashes here
+
+                try (CabJournal<Long, String> reopened = newJournal(directory)) {
+                    assertEquals(-1, reopened.checkpointSequence());
+                    assertEquals(0, reopened.replay(new CabBlocking<>(16)));
+                }
+            } finally {
+                delete(directory);
+            }
+        });
+    }
+
+    private static long replayAndCheck(
+            final CabJournal<Long, String> journal,
+            final Cab<Long, String> cab) throws Exception {
+
+        final AtomicLong replayed = new AtomicLong(-1);
+
+        final Thread replayer = new Thread(() -> {
+            try {
+                replayed.set(journal.replay(cab));
+            } catch (final Exception e) {
+                e.printStackTrace(System.err);
+            }
+        });
+        replayer.start();
+
+        // messages can overtake entries, but each of them keeps its own order
+        long entries = 0;
+        long messages = 0;
+        while (entries + messages < NUMBER_OF_BATCHES * RECORDS_PER_BATCH) {
+            final long sequence = cab.consumerNext();
+            if (sequence == Cab.MESSAGE_RECEIVED_SEQUENCE) {
+                assertEquals("message" + messages++, cab.getMessage());
+            } else {
+                assertEquals(entries++, cab.getEntry(sequence).longValue());
+            }
+            journal.append(cab, sequence);
+            cab.consumerCommit(sequence);
+        }
+        assertEquals(NUMBER_OF_BATCHES, messages);
+
+        replayer.join();
+
+        return replayed.get();
+    }
+
+    private static CabJournal<Long, String> newJournal(final File directory) throws IOException {
+        return new CabJournal<>(directory, SEGMENT_SIZE, new LongSerializer(), new StringSerializer());
+    }
+
+    private static void delete(final File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+
+    private static final class LongSerializer implements CabSerializer<Long> {
+        @Override
+        public int sizeOf(final Long value) {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void write(final Long value, final ByteBuffer buffer) {
+            buffer.putLong(value);
+        }
+
+        @Override
+        public Long read(final ByteBuffer buffer, final Long value) {
+            return buffer.getLong();
+        }
+    }
+
+    private static final class StringSerializer implements CabSerializer<String> {
+        @Override
+        public int sizeOf(final String value) {
+            return value.length();
+        }
+
+        @Override
+        public void write(final String value, final ByteBuffer buffer) {
+            for (int i = 0; i < value.length(); i++) {
+                buffer.put((byte) value.charAt(i));
+            }
+        }
+
+        @Override
+        public String read(final ByteBuffer buffer, final String value) {
+            final StringBuilder sb = new StringBuilder(buffer.remaining());
+            while (buffer.hasRemaining()) {
+                sb.append((char) buffer.get());
+            }
+            return sb.toString();
+        }
+    }
+}
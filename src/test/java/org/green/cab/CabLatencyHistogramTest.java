@@ -0,0 +1,105 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CabLatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long value = 0; value < 1_000_000; value++) {
+            final int bucket = CabLatencyHistogram.bucket(value);
+            assertTrue(CabLatencyHistogram.lowestEquivalentValue(bucket) <= value);
+            assertTrue(CabLatencyHistogram.highestEquivalentValue(bucket) >= value);
+            assertEquals(CabLatencyHistogram.highestEquivalentValue(bucket) + 1,
+                    CabLatencyHistogram.lowestEquivalentValue(bucket + 1));
+        }
+
+        final int last = CabLatencyHistogram.bucket(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, CabLatencyHistogram.highestEquivalentValue(last));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final CabLatencyHistogram histogram = new CabLatencyHistogram();
+
+        assertEquals(0, histogram.valueAtPercentile(99.9));
+
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(10_000, histogram.totalCount());
+        assertWithin(5_000, histogram.valueAtPercentile(50));
+        assertWithin(9_990, histogram.valueAtPercentile(99.9));
+        assertWithin(10_000, histogram.valueAtPercentile(100));
+        assertWithin(10_000, histogram.maxValue());
+        assertWithin(5_000, (long) histogram.mean());
+        assertEquals(1, histogram.valueAtPercentile(0));
+
+        histogram.record(-1);
+        assertEquals(0, histogram.valueAtPercentile(0));
+    }
+
+    @Test
+    public void testAggregationAndIntervals() {
+        final CabLatencyHistogram live = new CabLatencyHistogram();
+        final CabLatencyHistogram current = new CabLatencyHistogram();
+        final CabLatencyHistogram previous = new CabLatencyHistogram();
+        final CabLatencyHistogram interval = new CabLatencyHistogram();
+
+        for (int i = 0; i < 100; i++) {
+            live.record(10);
+        }
+        live.copyTo(previous);
+
+        for (int i = 0; i < 100; i++) {
+            live.record(1_000_000);
+        }
+        live.copyTo(current);
+        current.copyTo(interval);
+        interval.subtract(previous);
+
+        assertEquals(200, current.totalCount());
+        assertEquals(100, interval.totalCount());
+        assertWithin(1_000_000, interval.valueAtPercentile(0));
+
+        final CabLatencyHistogram aggregated = new CabLatencyHistogram();
+        aggregated.add(previous);
+        aggregated.add(interval);
+        assertEquals(200, aggregated.totalCount());
+        assertEquals(10, aggregated.valueAtPercentile(50));
+
+        aggregated.reset();
+        assertEquals(0, aggregated.totalCount());
+    }
+
+    private static void assertWithin(final long expected, final long actual) {
+        assertTrue(Math.abs(expected - actual) <= expected / 64, "expected ~" + expected + " but was " + actual);
+    }
+}
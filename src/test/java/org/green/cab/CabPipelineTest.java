@@ -0,0 +1,129 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CabPipelineTest {
+    private static final int TEST_TIMEOUT = 30;
+
+    @Test
+    public void testEntriesAreRecycled() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final int entryCount = 64;
+            final long publishCount = 200_000;
+
+            final long[] sums = new long[3];
+            final long[] lastValues = {-1, -1, -1};
+            final AtomicLong failures = new AtomicLong();
+
+            final CabPipeline<long[]> pipeline = CabPipeline.builder(() -> new long[1], entryCount)
+                    .stage("first", new CabBackingOff<>(32, 100, 100), entry -> {
+                        sums[0] += entry[0];
+                        entry[0] *= 2;
+                        return true;
+                    })
+                    .stage("second", new CabYielding<>(16), entry -> {
+                        sums[1] += entry[0];
+                        return entry[0] % 4 != 0; // a half of the entries is returned at once
+                    })
+                    .stage("third", new CabBlocking<>(64), entry -> {
+                        sums[2] += entry[0];
+                        if (entry[0] <= lastValues[2]) {
+                            failures.incrementAndGet();
+                        }
+                        lastValues[2] = entry[0];
+                        return true;
+                    })
+                    .build();
+            pipeline.start();
+
+            final Set<long[]> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (long value = 0; value < publishCount; value++) {
+                final long[] entry = pipeline.acquire();
+                distinct.add(entry);
+                entry[0] = value;
+                pipeline.publish(entry);
+            }
+            pipeline.close();
+
+            assertEquals(entryCount, distinct.size()); // no entries are lost or allocated
+            assertThrows(IllegalStateException.class, () -> pipeline.publish(new long[1]));
+
+            assertEquals(publishCount * (publishCount - 1) / 2, sums[0]); // all the published entries are handled
+            assertEquals(publishCount * (publishCount - 1), sums[1]);
+            assertEquals(publishCount * publishCount / 2, sums[2]); // the doubled odd values
+            assertEquals(0, failures.get());
+
+            for (int i = 0; i < entryCount; i++) { // all the entries are back
+                distinct.remove(pipeline.acquire());
+            }
+            assertTrue(distinct.isEmpty());
+        });
+    }
+
+    @Test
+    public void testFailurePropagation() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final AtomicLong lastHandled = new AtomicLong();
+
+            final CabPipeline<long[]> pipeline = CabPipeline.builder(() -> new long[1], 16)
+                    .stage("first", new CabBlocking<>(4), entry -> true)
+                    .stage("failing", new CabBlocking<>(4), entry -> {
+                        if (entry[0] == 1000) {
+                            throw new IllegalStateException("test failure");
+                        }
+                        return true;
+                    })
+                    .stage("last", new CabBlocking<>(4), entry -> {
+                        lastHandled.set(entry[0]);
+                        return true;
+                    })
+                    .build();
+            pipeline.start();
+
+            assertThrows(ConsumerInterruptedException.class, () -> {
+                for (long value = 0; ; value++) {
+                    final long[] entry = pipeline.acquire();
+                    entry[0] = value;
+                    pipeline.publish(entry);
+                }
+            });
+            pipeline.close();
+
+            assertTrue(lastHandled.get() < 1000);
+        });
+    }
+}
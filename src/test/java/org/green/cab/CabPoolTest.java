@@ -0,0 +1,189 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static java.time.Duration.ofSeconds;
+import static org.green.cab.Cab.MESSAGE_RECEIVED_SEQUENCE;
+import static org.green.cab.Cab.NOTHING_AVAILABLE_SEQUENCE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CabPoolTest {
+    private static final int TEST_TIMEOUT = 30;
+
+    @Test
+    public void testResetKeepsPreallocatedEntries() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabPool<CabBlocking<long[], String>> pool =
+                    new CabPool<>(() -> new CabBlocking<>(4, () -> new long[1]), 1);
+
+            final CabBlocking<long[], String> cab = pool.acquire();
+            final long[] first = cab.getEntry(0);
+
+            for (int i = 0; i < 6; i++) { // the second lap
+                final long sequence = cab.producerNext();
+                cab.getEntry(sequence)[0] = i;
+                cab.producerCommit(sequence);
+                assertEquals(sequence, cab.consumerNext());
+                cab.consumerCommit(sequence);
+            }
+            cab.producerNext(); // abandoned, since the consumer is interrupted
+            cab.send("pending");
+            cab.consumerInterrupt();
+
+            assertTrue(pool.release(cab));
+            assertEquals(1, pool.idleCount());
+            assertSame(cab, pool.acquire());
+            assertEquals(0, pool.idleCount());
+
+            assertEquals(NOTHING_AVAILABLE_SEQUENCE, cab.consumerPoll());
+            final long sequence = cab.producerNext();
+            assertEquals(0, sequence);
+            assertSame(first, cab.getEntry(sequence));
+            cab.producerCommit(sequence);
+            cab.send("hello");
+
+            assertEquals(MESSAGE_RECEIVED_SEQUENCE, cab.consumerNext());
+            assertEquals("hello", cab.getMessage());
+            cab.consumerCommit(MESSAGE_RECEIVED_SEQUENCE);
+            assertEquals(0, cab.consumerNext());
+            cab.consumerCommit(0);
+        });
+    }
+
+    @Test
+    public void testResetRequiresQuiescentCab() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabPool<Cab<String, Object>> pool = new CabPool<>(() -> new CabYielding<>(4), 0);
+
+            final Cab<String, Object> cab = pool.acquire();
+            final long sequence = cab.producerNext();
+            cab.setEntry(sequence, "entry");
+            cab.producerCommit(sequence);
+            assertThrows(IllegalStateException.class, () -> pool.release(cab));
+
+            assertEquals(sequence, cab.consumerNext());
+            cab.consumerCommit(sequence);
+            assertFalse(pool.release(cab)); // the pool keeps nothing
+            assertNull(cab.getEntry(sequence)); // the entries not created by a supplier are removed
+        });
+    }
+
+    @Test
+    public void testResetShrinksElasticCab() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabPool<CabElastic<Long, Object>> pool = new CabPool<>(() -> new CabElastic<>(2, 16, 10, 100), 1);
+            final CabElastic<Long, Object> cab = pool.acquire();
+
+            final int numberOfEntries = 200;
+
+            final Thread producer = new Thread(() -> {
+                try {
+                    for (long i = 0; i < numberOfEntries; i++) {
+                        final long sequence = cab.producerNext();
+                        cab.setEntry(sequence, i);
+                        cab.producerCommit(sequence);
+                    }
+                } catch (final ConsumerInterruptedException | InterruptedException e) {
+                    e.printStackTrace(System.err);
+                }
+            });
+            producer.start();
+
+            for (long i = 0; i < numberOfEntries; i++) { // a slow consumer grows the buffer
+                LockSupport.parkNanos(200_000);
+
+                final long sequence = cab.consumerNext();
+                assertEquals(i, cab.getEntry(sequence).longValue());
+                cab.consumerCommit(sequence);
+            }
+            producer.join();
+            assertTrue(cab.bufferSize() > 2);
+
+            assertTrue(pool.release(cab));
+            assertSame(cab, pool.acquire());
+            assertEquals(2, cab.bufferSize()); // the grown Ring Buffers are dropped
+
+            for (long i = 0; i < 4; i++) {
+                final long sequence = cab.producerNext();
+                assertEquals(i, sequence);
+                cab.setEntry(sequence, i);
+                cab.producerCommit(sequence);
+
+                assertEquals(i, cab.consumerNext());
+                assertEquals(i, cab.getEntry(i).longValue());
+                cab.consumerCommit(i);
+            }
+        });
+    }
+
+    @Test
+    public void testReuseAcrossThreads() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final int sessions = 200;
+            final int entriesPerSession = 1_000;
+
+            final CabPool<CabBackingOff<Integer, Object>> pool =
+                    new CabPool<>(() -> new CabBackingOff<>(64, 100, 100), 2);
+
+            for (int s = 0; s < sessions; s++) {
+                final CabBackingOff<Integer, Object> cab = pool.acquire();
+                final long[] sum = new long[1];
+
+                final Thread consumer = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < entriesPerSession; i++) {
+                            final long sequence = cab.consumerNext();
+                            sum[0] += cab.getEntry(sequence);
+                            cab.consumerCommit(sequence);
+                        }
+                    } catch (final InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                consumer.start();
+
+                for (int i = 0; i < entriesPerSession; i++) {
+                    final long sequence = cab.producerNext();
+                    cab.setEntry(sequence, i);
+                    cab.producerCommit(sequence);
+                }
+
+                consumer.join();
+                assertEquals((long) entriesPerSession * (entriesPerSession - 1) / 2, sum[0]);
+                pool.release(cab);
+            }
+            assertEquals(1, pool.idleCount());
+        });
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.Duration.ofSeconds;
+import static org.green.cab.Cab.MESSAGE_RECEIVED_SEQUENCE;
+import static org.green.cab.Cab.NOTHING_AVAILABLE_SEQUENCE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CabPriorityTest {
+    private static final int TEST_TIMEOUT = 30;
+
+    @Test
+    public void testStrictPriority() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabPriority<String, String> cab = new CabPriority<>(new int[]{2, 4}, 0, 0, null);
+            assertEquals(2, cab.laneCount());
+            assertEquals(4, cab.bufferSize(1));
+
+            for (int i = 0; i < 4; i++) { // the bulk lane is full
+                final long sequence = cab.producerNext(1);
+                cab.setEntry(sequence, "bulk" + i);
+                cab.producerCommit(sequence);
+            }
+
+            final long urgent = cab.producerNext(0); // doesn't wait for the bulk lane
+            assertEquals(0, CabPriority.lane(urgent));
+            cab.setEntry(urgent, "cancel");
+            cab.producerCommit(urgent);
+            cab.send("stop");
+
+            long sequence = cab.consumerNext();
+            assertEquals(MESSAGE_RECEIVED_SEQUENCE, sequence);
+            assertEquals("stop", cab.getMessage());
+            cab.consumerCommit(sequence);
+
+            sequence = cab.consumerNext();
+            assertEquals(0, CabPriority.lane(sequence));
+            assertEquals("cancel", cab.removeEntry(sequence));
+            cab.consumerCommit(sequence);
+
+            for (int i = 0; i < 4; i++) {
+                sequence = cab.consumerNext();
+                assertEquals(1, CabPriority.lane(sequence));
+                assertEquals("bulk" + i, cab.removeEntry(sequence));
+                cab.consumerCommit(sequence);
+            }
+            assertEquals(NOTHING_AVAILABLE_SEQUENCE, cab.consumerPoll());
+        });
+    }
+
+    @Test
+    public void testWeightedPriority() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabPriority<long[], Object> cab =
+                    new CabPriority<>(new int[]{16, 16}, new int[]{3, 1}, 0, 0, () -> new long[1]);
+
+            for (int lane = 0; lane < 2; lane++) {
+                for (int i = 0; i < 8; i++) {
+                    final long sequence = cab.producerNext(lane);
+                    cab.getEntry(sequence)[0] = i;
+                    cab.producerCommit(sequence);
+                }
+            }
+
+            final StringBuilder lanes = new StringBuilder();
+            final long[] expected = new long[2];
+            for (int i = 0; i < 16; i++) {
+                final long sequence = cab.consumerPoll();
+                final int lane = CabPriority.lane(sequence);
+                assertEquals(expected[lane]++, cab.getEntry(sequence)[0]);
+                cab.consumerCommit(sequence);
+                lanes.append(lane);
+            }
+            assertEquals("0001000100111111", lanes.toString()); // the bulk lane isn't starved
+        });
+    }
+
+    @Test
+    public void testWaitingConsumer() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final int producerCount = 3;
+            final int entriesPerProducer = 100_000;
+
+            final CabPriority<Integer, Object> cab = new CabPriority<>(new int[]{8, 64, 1024}, 0, 0, null);
+
+            final Thread[] producers = new Thread[producerCount];
+            for (int i = 0; i < producerCount; i++) {
+                final int lane = i;
+                producers[i] = new Thread(() -> {
+                    try {
+                        for (int e = 0; e < entriesPerProducer; e++) {
+                            final long sequence = cab.producerNext(lane);
+                            cab.setEntry(sequence, e);
+                            cab.producerCommit(sequence);
+                        }
+                    } catch (final Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                producers[i].start();
+            }
+
+            final int[] received = new int[producerCount];
+            for (long i = 0; i < (long) producerCount * entriesPerProducer; i++) {
+                final long sequence = cab.consumerNext();
+                final int lane = CabPriority.lane(sequence);
+                assertEquals(received[lane]++, (int) cab.removeEntry(sequence));
+                cab.consumerCommit(sequence);
+            }
+
+            for (final Thread producer : producers) {
+                producer.join();
+            }
+            assertEquals(NOTHING_AVAILABLE_SEQUENCE, cab.consumerPoll());
+        });
+    }
+
+    @Test
+    public void testProducerOfFullLaneDoesNotSpin() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (!threads.isCurrentThreadCpuTimeSupported()) {
+                return;
+            }
+
+            final CabPriority<Integer, Object> cab = new CabPriority<>(new int[]{1, 1}, 0, 0, null);
+
+            final long first = cab.producerNext(0);
+            cab.setEntry(first, 0);
+            cab.producerCommit(first);
+
+            final long[] cpuTime = new long[1];
+            final Thread producer = new Thread(() -> {
+                try {
+                    final long sequence = cab.producerNext(0); // waits until the consumer frees the lane
+                    cpuTime[0] = threads.getCurrentThreadCpuTime();
+                    cab.setEntry(sequence, 1);
+                    cab.producerCommit(sequence);
+                } catch (final Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            producer.start();
+
+            final long waitMillis = 500;
+            Thread.sleep(waitMillis);
+
+            for (int i = 0; i < 2; i++) {
+                final long sequence = cab.consumerNext();
+                assertEquals(i, (int) cab.getEntry(sequence));
+                cab.consumerCommit(sequence);
+            }
+            producer.join();
+
+            // the waiting producer is parked most of the time
+            assertTrue(cpuTime[0] < TimeUnit.MILLISECONDS.toNanos(waitMillis) / 2, "" + cpuTime[0]);
+        });
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+
+public class CabSelectorTest {
+    private static final int TEST_TIMEOUT = 30;
+
+    @Test
+    public void testPoll() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final Cab<Long, String> cab = new CabBlocking<>(4);
+
+            assertEquals(Cab.NOTHING_AVAILABLE_SEQUENCE, cab.consumerPoll());
+
+            final long aborted = cab.producerNext();
+            final long sequence = cab.producerNext();
+            cab.setEntry(sequence, 1L);
+            cab.producerCommit(sequence);
+
+            assertEquals(Cab.NOTHING_AVAILABLE_SEQUENCE, cab.consumerPoll()); // the first entry isn't committed
+
+            cab.producerAbort(aborted);
+            assertEquals(sequence, cab.consumerPoll());
+            cab.consumerCommit(sequence);
+
+            cab.send("message");
+            assertEquals(Cab.MESSAGE_RECEIVED_SEQUENCE, cab.consumerPoll());
+            assertEquals("message", cab.getMessage());
+            cab.consumerCommit(Cab.MESSAGE_RECEIVED_SEQUENCE);
+
+            assertEquals(Cab.NOTHING_AVAILABLE_SEQUENCE, cab.consumerPoll());
+        });
+    }
+
+    @Test
+    public void testBatchLimit() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final Cab<Long, String> cab1 = new CabYielding<>(64);
+            final Cab<Long, String> cab2 = new CabYielding<>(64);
+
+            final long[] counts = new long[2];
+
+            final CabSelector selector = new CabSelector(10);
+            selector.register(cab1, new CountingHandler(counts, 0));
+            selector.register(cab2, new CountingHandler(counts, 1), 5);
+
+            assertThrows(IllegalStateException.class, () -> new CabSelector(1).register(cab1, null));
+
+            for (int i = 0; i < 20; i++) {
+                cab1.producerCommit(cab1.producerNext());
+                cab2.producerCommit(cab2.producerNext());
+            }
+
+            assertEquals(15, selector.selectNow());
+            assertEquals(10, counts[0]);
+            assertEquals(5, counts[1]);
+
+            selector.unregister(cab1);
+
+            assertEquals(5, selector.selectNow());
+            assertEquals(10, counts[0]);
+            assertEquals(10, counts[1]);
+
+            assertEquals(10, cab1.consumerPoll()); // the unregistered Cab can be consumed directly
+        });
+    }
+
+    @Test
+    public void testOneThreadConsumesManyCabs() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final int cabCount = 8;
+            final long entriesPerCab = 100_000;
+
+            final CabSelector selector = new CabSelector(16);
+
+            @SuppressWarnings({"unchecked", "rawtypes"}) final Cab<Long, String>[] cabs = new Cab[cabCount];
+            final long[] nextExpected = new long[cabCount];
+            final AtomicLong failures = new AtomicLong();
+            final long[] messages = new long[1];
+
+            for (int i = 0; i < cabCount; i++) {
+                cabs[i] = i % 2 == 0 ? new CabBlocking<>(256) : new CabBackingOff<>(256, 100, 100);
+
+                final int cabIndex = i;
+                selector.register(cabs[i], new CabHandler<Long, String>() {
+                    @Override
+                    public void onEntry(final Cab<Long, String> cab, final long sequence) {
+                        if (cab.getEntry(sequence) != nextExpected[cabIndex]++) {
+                            failures.incrementAndGet();
+                        }
+                    }
+
+                    @Override
+                    public void onMessage(final Cab<Long, String> cab, final String message) {
+                        messages[0]++;
+                    }
+                });
+            }
+
+            final Thread[] producers = new Thread[cabCount];
+            for (int i = 0; i < cabCount; i++) {
+                final Cab<Long, String> cab = cabs[i];
+                producers[i] = new Thread(() -> {
+                    try {
+                        for (long value = 0; value < entriesPerCab; value++) {
+                            final long sequence = cab.producerNext();
+                            cab.setEntry(sequence, value);
+                            cab.producerCommit(sequence);
+                        }
+                        cab.send("done");
+                    } catch (final ConsumerInterruptedException | InterruptedException e) {
+                        e.printStackTrace(System.err);
+                    }
+                });
+                producers[i].start();
+            }
+
+            long processed = 0;
+            while (processed < cabCount * (entriesPerCab + 1)) {
+                processed += selector.select();
+            }
+
+            for (final Thread producer : producers) {
+                producer.join();
+            }
+
+            assertEquals(0, failures.get());
+            assertEquals(cabCount, messages[0]);
+            for (int i = 0; i < cabCount; i++) {
+                assertEquals(entriesPerCab, nextExpected[i]);
+            }
+        });
+    }
+
+    private static class CountingHandler implements CabHandler<Long, String> {
+        private final long[] counts;
+        private final int index;
+
+        CountingHandler(final long[] counts, final int index) {
+            this.counts = counts;
+            this.index = index;
+        }
+
+        @Override
+        public void onEntry(final Cab<Long, String> cab, final long sequence) {
+            counts[index]++;
+        }
+
+        @Override
+        public void onMessage(final Cab<Long, String> cab, final String message) {
+        }
+    }
+}
@@ -0,0 +1,325 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("try") // close() of the tested class may be interrupted
+public class CabShardedTest {
+    private static final int TEST_TIMEOUT = 30;
+
+    @Test
+    public void testConsistentHashingMovesFewKeys() throws InterruptedException {
+        assertThrows(IllegalArgumentException.class, () -> new CabSharded<Long, String>(0, true, null, null));
+
+        final int keyCount = 100_000;
+
+        try (CabSharded<Long, String> consistent = new CabSharded<>(4, true, () -> new CabBlocking<>(4), i -> null);
+                CabSharded<Long, String> modulo = new CabSharded<>(4, false, () -> new CabBlocking<>(4), i -> null)) {
+
+            final int[] consistentShards = new int[keyCount];
+            final int[] moduloShards = new int[keyCount];
+            for (int key = 0; key < keyCount; key++) {
+                consistentShards[key] = consistent.shardIndex(key);
+                moduloShards[key] = modulo.shardIndex(key);
+            }
+
+            assertEquals(4, consistent.addShard());
+            assertEquals(4, modulo.addShard());
+            assertEquals(5, consistent.shardCount());
+
+            int consistentMoved = 0;
+            int moduloMoved = 0;
+            for (int key = 0; key < keyCount; key++) {
+                final int shard = consistent.shardIndex(key);
+                if (shard != consistentShards[key]) {
+                    assertEquals(4, shard); // the ring moves keys to the new shard only
+                    consistentMoved++;
+                }
+                if (modulo.shardIndex(key) != moduloShards[key]) {
+                    moduloMoved++;
+                }
+            }
+
+            assertTrue(consistentMoved > keyCount / 10 && consistentMoved < keyCount / 3, "" + consistentMoved);
+            assertTrue(moduloMoved > keyCount / 2, "" + moduloMoved);
+        }
+    }
+
+    @Test
+    public void testAbortsEntryWhenTranslatorThrows() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final AtomicLong handled = new AtomicLong();
+
+            try (CabSharded<Long, String> sharded = new CabSharded<>(1, true, () -> new CabBlocking<>(4),
+                    index -> new CabHandler<Long, String>() {
+                        @Override
+                        public void onEntry(final Cab<Long, String> cab, final long sequence) {
+                            handled.addAndGet(cab.getEntry(sequence));
+                        }
+
+                        @Override
+                        public void onMessage(final Cab<Long, String> cab, final String message) {
+                        }
+                    })) {
+                sharded.start();
+
+                assertThrows(IllegalStateException.class, () -> sharded.publish(0, (entry, argument) -> {
+                    throw new IllegalStateException();
+                }, 1L));
+                sharded.publish(0, 2L); // the aborted sequence doesn't stall the consumer
+
+                while (sharded.shard(0).observedConsumerSequence() < 1) {
+                    Thread.sleep(1);
+                }
+            }
+
+            assertEquals(2, handled.get());
+        });
+    }
+
+    @Test
+    public void testPerKeyOrderWhileShardsAreAdded() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final int keyCount = 64;
+            final int producerCount = 4;
+            final long entriesPerProducer = 50_000;
+
+            final AtomicLongArray lastValues = new AtomicLongArray(keyCount * producerCount);
+            for (int i = 0; i < lastValues.length(); i++) {
+                lastValues.set(i, -1);
+            }
+            final AtomicLong failures = new AtomicLong();
+            final AtomicLong handled = new AtomicLong();
+            final AtomicLong messages = new AtomicLong();
+
+            final CabSharded<long[], String> sharded = new CabSharded<>(
+                    2, true, () -> new CabBackingOff<>(256, 100, 100, () -> new long[3]),
+                    index -> new CabHandler<long[], String>() {
+                        @Override
+                        public void onEntry(final Cab<long[], String> cab, final long sequence) {
+                            final long[] entry = cab.getEntry(sequence);
+                            // the values of every key from every producer must come one by one
+                            final int slot = (int) (entry[0] * producerCount + entry[1]);
+                            if (lastValues.getAndSet(slot, entry[2]) != entry[2] - 1) {
+                                failures.incrementAndGet();
+                            }
+                            handled.incrementAndGet();
+
+                            if (index < 2) { // the initial shards are slow to have a backlog when the shards are added
+                                final long deadline = System.nanoTime() + 10_000;
+                                while (System.nanoTime() < deadline) {
+                                    // spin
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void onMessage(final Cab<long[], String> cab, final String message) {
+                            messages.incrementAndGet();
+                        }
+                    });
+            sharded.start();
+
+            final Thread[] producers = new Thread[producerCount];
+            for (int p = 0; p < producerCount; p++) {
+                final long producer = p;
+                producers[p] = new Thread(() -> {
+                    final long[] argument = new long[3];
+                    final long[] values = new long[keyCount];
+                    try {
+                        for (long i = 0; i < entriesPerProducer; i++) {
+                            final int key = (int) (i % keyCount);
+                            argument[0] = key;
+                            argument[1] = producer;
+                            argument[2] = values[key]++;
+                            sharded.publish(key, (entry, arg) -> {
+                                System.arraycopy(arg, 0, entry, 0, 3);
+                                return entry;
+                            }, argument);
+                        }
+                    } catch (final ConsumerInterruptedException | InterruptedException e) {
+                        e.printStackTrace(System.err);
+                    }
+                });
+                producers[p].start();
+            }
+
+            for (long threshold = entriesPerProducer; threshold <= 2 * entriesPerProducer; threshold *= 2) {
+                while (handled.get() < threshold) {
+                    Thread.sleep(1);
+                }
+                sharded.addShard(); // while the producers are publishing
+            }
+
+            for (final Thread producer : producers) {
+                producer.join();
+            }
+
+            sharded.send("stop");
+            while (handled.get() < producerCount * entriesPerProducer || messages.get() < 4) {
+                Thread.sleep(1);
+            }
+            sharded.close();
+
+            assertEquals(0, failures.get());
+            assertEquals(4, sharded.shardCount());
+            assertThrows(ConsumerInterruptedException.class, () -> sharded.publish(0, new long[3]));
+        });
+    }
+
+    @Test
+    public void testStealingFromHotShard() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final int entryCount = 20_000;
+            final long hotKey = 7;
+
+            final AtomicIntegerArray handledValues = new AtomicIntegerArray(entryCount);
+            final AtomicLong stolen = new AtomicLong();
+            final AtomicLong failures = new AtomicLong();
+            final long[] lastOrdered = {-1};
+            final int[] hotIndex = new int[1];
+
+            // the odd values must be handled in order by the owner, the even ones may be stolen
+            final CabSharded<long[], String> sharded = new CabSharded<>(
+                    4, true, () -> new CabBlocking<>(1024, () -> new long[1]),
+                    index -> new CabHandler<long[], String>() {
+                        @Override
+                        public void onEntry(final Cab<long[], String> cab, final long sequence) {
+                            final long value = cab.getEntry(sequence)[0];
+                            handledValues.incrementAndGet((int) value);
+
+                            if (index != hotIndex[0]) {
+                                stolen.incrementAndGet();
+                                if (value % 2 == 1) {
+                                    failures.incrementAndGet();
+                                }
+                            } else if (value % 2 == 1) {
+                                if (value <= lastOrdered[0]) {
+                                    failures.incrementAndGet();
+                                }
+                                lastOrdered[0] = value;
+                            }
+
+                            final long deadline = System.nanoTime() + 10_000;
+                            while (System.nanoTime() < deadline) {
+                                // spin
+                            }
+                        }
+
+                        @Override
+                        public void onMessage(final Cab<long[], String> cab, final String message) {
+                        }
+                    },
+                    entry -> entry[0] % 2 == 0, 16);
+            hotIndex[0] = sharded.shardIndex(hotKey);
+            sharded.start();
+
+            final Cab<long[], String> hotCab = sharded.shard(hotIndex[0]);
+            for (long value = 0; value < entryCount; value++) {
+                sharded.publish(hotKey, (entry, argument) -> {
+                    entry[0] = argument;
+                    return entry;
+                }, value);
+            }
+
+            while (hotCab.observedConsumerSequence() < entryCount - 1) {
+                Thread.sleep(1);
+            }
+            sharded.close();
+
+            for (int value = 0; value < entryCount; value++) {
+                assertEquals(1, handledValues.get(value));
+            }
+            assertEquals(0, failures.get());
+            assertTrue(stolen.get() > 0);
+        });
+    }
+
+    @Test
+    public void testStealingRejectsSpillingShards() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final File spillFile = File.createTempFile("cab-spilling", null);
+            spillFile.deleteOnExit();
+            final CabHandler<long[], String> handler = new CabHandler<long[], String>() {
+                @Override
+                public void onEntry(final Cab<long[], String> cab, final long sequence) {
+                }
+
+                @Override
+                public void onMessage(final Cab<long[], String> cab, final String message) {
+                }
+            };
+
+            // the spilled entries are returned by consumerNext() only, which the stealing owners don't call
+            assertThrows(IllegalArgumentException.class, () -> new CabSharded<long[], String>(
+                    2, true, () -> newSpillingCab(spillFile),
+                    index -> handler, entry -> true, 16));
+
+            final CabSharded<long[], String> sharded = new CabSharded<>(
+                    2, true, () -> newSpillingCab(spillFile),
+                    index -> handler);
+            sharded.close();
+        });
+    }
+
+    private static Cab<long[], String> newSpillingCab(final File spillFile) {
+        try {
+            return new CabSpilling<>(16, 100, 100, spillFile, 1024, new LongArraySerializer());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class LongArraySerializer implements CabSerializer<long[]> {
+        @Override
+        public int sizeOf(final long[] value) {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void write(final long[] value, final ByteBuffer buffer) {
+            buffer.putLong(value[0]);
+        }
+
+        @Override
+        public long[] read(final ByteBuffer buffer, final long[] value) {
+            return new long[] {buffer.getLong()};
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CabSpillingTest {
+    private static final int TEST_TIMEOUT = 30;
+
+    private static final int RECORD_LENGTH = 4 + Long.BYTES;
+
+    @Test
+    public void testSpillsWhenFullAndReturnsToBuffer() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final File spillFile = File.createTempFile("cab-spilling", null);
+            try {
+                final CabSpilling<Long, Object> cab = newCab(4, spillFile, 1024);
+
+                for (long i = 0; i < 10; i++) {
+                    final long sequence = cab.producerNext();
+                    assertEquals(i < 4 ? i : CabSpilling.SPILLED_SEQUENCE, sequence);
+                    cab.setEntry(sequence, i);
+                    cab.producerCommit(sequence);
+                }
+
+                for (long i = 0; i < 10; i++) {
+                    final long sequence = cab.consumerNext();
+                    assertEquals(i < 4 ? i : CabSpilling.SPILLED_SEQUENCE, sequence);
+                    assertEquals(i, cab.getEntry(sequence).longValue());
+                    cab.consumerCommit(sequence);
+                }
+
+                // the backlog is cleared, so, the Ring Buffer is used again
+                final long sequence = cab.producerNext();
+                assertEquals(4, sequence);
+                cab.setEntry(sequence, 10L);
+                cab.producerCommit(sequence);
+
+                assertEquals(4, cab.consumerNext());
+                assertEquals(10L, cab.getEntry(4).longValue());
+                cab.consumerCommit(4);
+            } finally {
+                spillFile.delete();
+            }
+        });
+    }
+
+    @Test
+    public void testResetRewindsOverflowFile() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final File spillFile = File.createTempFile("cab-spilling", null);
+            try {
+                final CabSpilling<Long, Object> cab = newCab(4, spillFile, 1024);
+
+                for (int round = 0; round < 2; round++) {
+                    for (long i = 0; i < 10; i++) {
+                        final long sequence = cab.producerNext();
+                        assertEquals(i < 4 ? i : CabSpilling.SPILLED_SEQUENCE, sequence);
+                        cab.setEntry(sequence, i);
+                        cab.producerCommit(sequence);
+                    }
+                    assertThrows(IllegalStateException.class, cab::reset); // the spilled entries aren't consumed
+
+                    for (long i = 0; i < 10; i++) {
+                        final long sequence = cab.consumerNext();
+                        assertEquals(i, cab.getEntry(sequence).longValue());
+                        cab.consumerCommit(sequence);
+                    }
+                    cab.reset();
+                }
+
+                for (long i = 0; i < 10; i++) {
+                    final long sequence = cab.producerNext();
+                    cab.setEntry(sequence, i);
+                    cab.producerCommit(sequence);
+                }
+                cab.consumerInterrupt();
+                cab.reset(); // the spilling mode is dropped with the interrupted consumer
+
+                assertEquals(0, cab.producerNext());
+            } finally {
+                spillFile.delete();
+            }
+        });
+    }
+
+    @Test
+    public void testWrapsOverflowFile() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final File spillFile = File.createTempFile("cab-spilling", null);
+            try {
+                final CabSpilling<Long, Object> cab = newCab(2, spillFile, RECORD_LENGTH * 3 + 2);
+
+                long produced = 0;
+                long consumed = 0;
+                for (int i = 0; i < 3; i++) { // 2 entries go to the Ring Buffer and 1 is spilled
+                    final long sequence = cab.producerNext();
+                    cab.setEntry(sequence, produced++);
+                    cab.producerCommit(sequence);
+                }
+                for (int i = 0; i < 2; i++) {
+                    final long sequence = cab.consumerNext();
+                    assertEquals(consumed++, cab.getEntry(sequence).longValue());
+                    cab.consumerCommit(sequence);
+                }
+                for (int i = 0; i < 20; i++) { // a spilled entry always stays, so, the spilling mode is kept
+                    final long producerSequence = cab.producerNext();
+                    assertEquals(CabSpilling.SPILLED_SEQUENCE, producerSequence);
+                    cab.setEntry(producerSequence, produced++);
+                    cab.producerCommit(producerSequence);
+
+                    final long sequence = cab.consumerNext();
+                    assertEquals(CabSpilling.SPILLED_SEQUENCE, sequence);
+                    assertEquals(consumed++, cab.getEntry(sequence).longValue());
+                    cab.consumerCommit(sequence);
+                }
+                while (consumed < produced) {
+                    final long sequence = cab.consumerNext();
+                    assertEquals(CabSpilling.SPILLED_SEQUENCE, sequence);
+                    assertEquals(consumed++, cab.getEntry(sequence).longValue());
+                    cab.consumerCommit(sequence);
+                }
+            } finally {
+                spillFile.delete();
+            }
+        });
+    }
+
+    @Test
+    public void test3pScSlowConsumer() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final File spillFile = File.createTempFile("cab-spilling", null);
+            try {
+                final CabSpilling<Long, Object> cab = newCab(16, spillFile, RECORD_LENGTH * 64);
+
+                final int numberOfProducers = 3;
+                final int numberOfEntries = 5_000;
+
+                final Thread[] producers = new Thread[numberOfProducers];
+                final long[] spilled = new long[numberOfProducers];
+                for (int p = 0; p < numberOfProducers; p++) {
+                    final int id = p;
+                    producers[p] = new Thread(() -> {
+                        try {
+                            for (long i = 0; i < numberOfEntries; i++) {
+                                final long sequence = cab.producerNext();
+                                if (sequence == CabSpilling.SPILLED_SEQUENCE) {
+                                    spilled[id]++;
+                                }
+                                cab.setEntry(sequence, ((long) id << 32) | i);
+                                cab.producerCommit(sequence);
+                            }
+                        } catch (final ConsumerInterruptedException | InterruptedException e) {
+                            e.printStackTrace(System.err);
+                        }
+                    });
+                    producers[p].start();
+                }
+
+                final long[] expected = new long[numberOfProducers];
+                for (int i = 0; i < numberOfProducers * numberOfEntries; i++) {
+                    if (i % 100 == 0) {
+                        LockSupport.parkNanos(100_000);
+                    }
+
+                    final long sequence = cab.consumerNext();
+                    final long entry = cab.getEntry(sequence);
+                    final int id = (int) (entry >>> 32);
+                    assertEquals(expected[id]++, entry & 0xffffffffL);
+                    cab.consumerCommit(sequence);
+                }
+
+                for (final Thread producer : producers) {
+                    producer.join();
+                }
+
+                long totalSpilled = 0;
+                for (final long s : spilled) {
+                    totalSpilled += s;
+                }
+                assertTrue(totalSpilled > 0);
+            } finally {
+                spillFile.delete();
+            }
+        });
+    }
+
+    private static CabSpilling<Long, Object> newCab(
+            final int bufferSize,
+            final File spillFile,
+            final int spillSize) throws IOException {
+
+        return new CabSpilling<>(bufferSize, 1000, 10000, spillFile, spillSize, new LongSerializer());
+    }
+
+    private static final class LongSerializer implements CabSerializer<Long> {
+        @Override
+        public int sizeOf(final Long value) {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void write(final Long value, final ByteBuffer buffer) {
+            buffer.putLong(value);
+        }
+
+        @Override
+        public Long read(final ByteBuffer buffer, final Long value) {
+            return buffer.getLong();
+        }
+    }
+}
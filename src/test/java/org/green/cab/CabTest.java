@@ -23,14 +23,28 @@
  */
 package org.green.cab;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Supplier;
 
 import static java.time.Duration.ofSeconds;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class CabTest {
     private static final boolean MAX_MODE = Boolean.getBoolean("org.green.cab.test.max_mode");
@@ -117,6 +131,319 @@ public class CabTest {
         });
     }
 
+    @Test
+    public void testConsumerAvailableSequence() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final Cab<Long, Object> cab = new CabBusySpinning<>(4);
+
+            assertEquals(-1, cab.consumerAvailableSequence());
+
+            final long s0 = cab.producerNext();
+            final long s1 = cab.producerNext();
+            final long s2 = cab.producerNext();
+
+            cab.producerCommit(s0);
+            cab.producerCommit(s2);
+
+            assertEquals(s0, cab.consumerAvailableSequence()); // s1 isn't committed yet
+
+            cab.producerCommit(s1);
+
+            assertEquals(s2, cab.consumerAvailableSequence());
+
+            cab.consumerCommit(s2);
+
+            assertEquals(s2, cab.consumerAvailableSequence());
+        });
+    }
+
+    @Test
+    public void testManyLaps() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final Cab<Long, Object> cab = new CabBusySpinning<>(2);
+
+            for (long i = 0; i < 100; i++) {
+                final long sequence = cab.producerNext();
+                assertEquals(i, sequence);
+
+                cab.setEntry(sequence, i);
+                cab.producerCommit(sequence);
+
+                assertEquals(sequence, cab.consumerAvailableSequence());
+                assertEquals(sequence, cab.consumerNext());
+                assertEquals(i, cab.getEntry(sequence).longValue());
+
+                cab.consumerCommit(sequence);
+
+                assertEquals(sequence, cab.consumerAvailableSequence()); // a stamp of the previous lap is ignored
+            }
+        });
+    }
+
+    @Test
+    public void testSlotLayouts() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            for (final SlotLayout slotLayout : SlotLayout.values()) {
+                final Cab<Long, Object> cab = new CabYielding<>(BUFFER_SIZE, slotLayout);
+
+                for (long i = 0; i < cab.bufferSize(); i++) {
+                    cab.setEntry(i, i);
+                }
+                for (long i = 0; i < cab.bufferSize(); i++) { // every sequence of a lap has its own slot
+                    assertEquals(i, cab.getEntry(i + cab.bufferSize()).longValue());
+                }
+
+                for (long i = 0; i < cab.bufferSize() * 3L; i++) {
+                    final long sequence = cab.producerNext();
+                    cab.producerCommit(sequence);
+
+                    assertEquals(sequence, cab.consumerAvailableSequence());
+                    assertEquals(sequence, cab.consumerNext());
+                    cab.consumerCommit(sequence);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testMetrics() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final Cab<Long, Object> cab = new CabBackingOff<>(2, 10, 10, SlotLayout.DENSE, null, true);
+            final CabMetrics metrics = new CabMetrics();
+
+            final long s0 = cab.producerNext();
+            final long s1 = cab.producerNext();
+            cab.producerCommit(s0);
+
+            cab.metrics(metrics);
+            assertTrue(metrics.isEnabled());
+            assertEquals(2, metrics.getBufferSize());
+            assertEquals(2, metrics.getEntriesProduced());
+            assertEquals(0, metrics.getEntriesConsumed());
+            assertEquals(2, metrics.getOccupancy());
+            assertEquals(1, metrics.getConsumerLag()); // s1 isn't committed yet
+            assertEquals(1, metrics.getNotifications());
+
+            final Thread producer = new Thread(() -> { // the buffer is full, so, the producer waits
+                try {
+                    final long sequence = cab.producerNext();
+                    LockSupport.parkNanos(100_000_000); // the consumer backs off up to the mutex
+                    cab.producerCommit(sequence);
+                } catch (final ConsumerInterruptedException | InterruptedException e) {
+                    e.printStackTrace(System.err);
+                }
+            });
+            producer.start();
+
+            while (cab.metrics(metrics).getFullBufferWaits() < 1) {
+                Thread.yield();
+            }
+            assertEquals(3, metrics.getEntriesProduced()); // the claim of the waiting producer
+            assertEquals(2, metrics.getOccupancy());
+
+            assertEquals(s0, cab.consumerNext());
+            cab.consumerCommit(s0);
+
+            cab.producerCommit(s1);
+            assertEquals(s1, cab.consumerNext());
+            cab.consumerCommit(s1);
+
+            final long s2 = cab.consumerNext();
+            cab.consumerCommit(s2);
+
+            producer.join();
+
+            cab.send("message");
+            assertEquals(Cab.MESSAGE_RECEIVED_SEQUENCE, cab.consumerNext());
+            cab.consumerCommit(Cab.MESSAGE_RECEIVED_SEQUENCE);
+
+            cab.metrics(metrics);
+            assertEquals(3, metrics.getEntriesProduced());
+            assertEquals(3, metrics.getEntriesConsumed());
+            assertEquals(0, metrics.getOccupancy());
+            assertEquals(0, metrics.getConsumerLag());
+            assertEquals(1, metrics.getMessagesReceived());
+            assertTrue(metrics.getSpinningPhases() >= 1);
+            assertTrue(metrics.getYieldingPhases() >= 1);
+            assertTrue(metrics.getMutexWaits() >= 1);
+            assertEquals(5, metrics.getNotifications()); // 3 entries, the message sent and received
+
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName("org.green.cab:type=Cab,name=testMetrics");
+            CabMetrics.registerMBean(cab, name);
+            try {
+                assertEquals(3L, server.getAttribute(name, "EntriesConsumed"));
+                assertEquals(1L, server.getAttribute(name, "MessagesReceived"));
+            } finally {
+                server.unregisterMBean(name);
+            }
+
+            cab.consumerInterrupt();
+            assertTrue(cab.metrics(metrics).isConsumerInterrupted());
+        });
+    }
+
+    @Test
+    public void testMetricsDisabled() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final Cab<Long, Object> cab = new CabBlocking<>(4);
+
+            final long sequence = cab.producerNext();
+            cab.producerCommit(sequence);
+
+            final CabMetrics metrics = cab.metrics(new CabMetrics());
+            assertFalse(metrics.isEnabled());
+            assertEquals(1, metrics.getEntriesProduced());
+            assertEquals(1, metrics.getConsumerLag());
+            assertEquals(0, metrics.getNotifications());
+        });
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final Cab<Long, Object> cab = new CabYielding<>(4, SlotLayout.PADDED, null, false, true);
+
+            for (int i = 0; i < 100; i++) {
+                final long sequence = cab.producerNext();
+                cab.producerCommit(sequence);
+
+                cab.send("message"); // messages aren't recorded
+                assertEquals(Cab.MESSAGE_RECEIVED_SEQUENCE, cab.consumerNext());
+                cab.consumerCommit(Cab.MESSAGE_RECEIVED_SEQUENCE);
+
+                assertEquals(sequence, cab.consumerNext());
+                cab.consumerCommit(sequence);
+            }
+
+            final CabLatencyHistogram histogram = cab.latencyHistogram(new CabLatencyHistogram());
+            assertEquals(100, histogram.totalCount());
+            assertTrue(histogram.valueAtPercentile(50) > 0);
+
+            for (int i = 0; i < 3; i++) { // a batch
+                cab.producerCommit(cab.producerNext());
+            }
+            final long lastSequence = cab.consumerAvailableSequence();
+            assertEquals(lastSequence, cab.consumerAvailableSequence()); // recorded once
+            assertEquals(lastSequence - 2, cab.consumerNext()); // recorded by the batch already
+            cab.consumerCommit(lastSequence);
+            assertEquals(103, cab.latencyHistogram(histogram).totalCount());
+
+            assertThrows(IllegalStateException.class,
+                    () -> new CabYielding<>(4).latencyHistogram(new CabLatencyHistogram()));
+        });
+    }
+
+    @Test
+    public void testFlightRecorderEvents() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final Cab<Long, Object> cab = new CabBackingOff<>(1, 10, 10);
+
+            final File file = File.createTempFile("cab", ".jfr");
+            try (Recording recording = new Recording()) {
+                for (final String name : new String[]{
+                        "org.green.cab.ProducerWait",
+                        "org.green.cab.SenderWait",
+                        "org.green.cab.ConsumerWait",
+                        "org.green.cab.ConsumerStall"}) {
+                    recording.enable(name).withThreshold(Duration.ZERO);
+                }
+                recording.start();
+
+                // the consumer stalls on the claimed entry
+                final long s0 = cab.producerNext();
+                final Thread committer = new Thread(() -> {
+                    LockSupport.parkNanos(100_000_000);
+                    cab.producerCommit(s0);
+                });
+                committer.start();
+                assertEquals(s0, cab.consumerNext());
+                committer.join();
+
+                // the producer waits for the consumer, since the buffer is full
+                final Thread producer = new Thread(() -> {
+                    try {
+                        cab.producerCommit(cab.producerNext());
+                    } catch (final ConsumerInterruptedException | InterruptedException e) {
+                        e.printStackTrace(System.err);
+                    }
+                });
+                producer.start();
+                LockSupport.parkNanos(100_000_000);
+                cab.consumerCommit(s0);
+                assertEquals(s0 + 1, cab.consumerNext());
+                cab.consumerCommit(s0 + 1);
+                producer.join();
+
+                // the sender waits for the Channel
+                cab.send("first");
+                final Thread sender = new Thread(() -> {
+                    try {
+                        cab.send("second");
+                    } catch (final ConsumerInterruptedException | InterruptedException e) {
+                        e.printStackTrace(System.err);
+                    }
+                });
+                sender.start();
+                LockSupport.parkNanos(100_000_000);
+                for (int i = 0; i < 2; i++) {
+                    assertEquals(Cab.MESSAGE_RECEIVED_SEQUENCE, cab.consumerNext());
+                    cab.consumerCommit(Cab.MESSAGE_RECEIVED_SEQUENCE);
+                }
+                sender.join();
+
+                // the sender of a yielding Cab waits for the Channel as well
+                final Cab<Long, Object> yieldingCab = new CabYielding<>(1);
+                yieldingCab.send("first");
+                final Thread yieldingSender = new Thread(() -> {
+                    try {
+                        yieldingCab.send("second");
+                    } catch (final ConsumerInterruptedException | InterruptedException e) {
+                        e.printStackTrace(System.err);
+                    }
+                });
+                yieldingSender.start();
+                LockSupport.parkNanos(100_000_000);
+                for (int i = 0; i < 2; i++) {
+                    assertEquals(Cab.MESSAGE_RECEIVED_SEQUENCE, yieldingCab.consumerNext());
+                    yieldingCab.consumerCommit(Cab.MESSAGE_RECEIVED_SEQUENCE);
+                }
+                yieldingSender.join();
+
+                recording.stop();
+                recording.dump(file.toPath());
+
+                final Set<String> names = new HashSet<>();
+                int yieldingSenderWaits = 0;
+                for (final RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                    names.add(event.getEventType().getName());
+                    if (event.getEventType().getName().equals("org.green.cab.SenderWait") &&
+                            "yielding".equals(event.getString("phase"))) {
+                        yieldingSenderWaits++;
+                    }
+                }
+                assertTrue(yieldingSenderWaits >= 2, "backing off and yielding senders"); // both Cabs
+                assertTrue(names.contains("org.green.cab.ProducerWait"), names.toString());
+                assertTrue(names.contains("org.green.cab.SenderWait"), names.toString());
+                assertTrue(names.contains("org.green.cab.ConsumerWait"), names.toString());
+                assertTrue(names.contains("org.green.cab.ConsumerStall"), names.toString());
+            } finally {
+                file.delete();
+            }
+        });
+    }
+
+    @Test
+    public void test3pScYieldingScrambled() throws InterruptedException {
+        testNpSc(new CabYielding<>(BUFFER_SIZE, SlotLayout.SCRAMBLED), 3, NUMBER_OF_ENTRIES_FOR_EACH_PRODUCER, false);
+    }
+
+    @Test
+    public void test3pScBackingOffPadded() throws InterruptedException {
+        testNpSc(new CabBackingOff<>(BUFFER_SIZE, 1000, 10000, SlotLayout.PADDED),
+                3, NUMBER_OF_ENTRIES_FOR_EACH_PRODUCER, false);
+    }
+
     @Test
     public void testSpScBusySpinning() throws InterruptedException {
         testNpSc(new CabBusySpinning<>(BUFFER_SIZE), 1, NUMBER_OF_ENTRIES_FOR_EACH_PRODUCER, false);
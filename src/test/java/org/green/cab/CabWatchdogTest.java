@@ -0,0 +1,218 @@
+/**
+ * MIT License
+ * <p>
+ * Copyright (c) 2019 Anatoly Gudkov
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE  LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.green.cab;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("try") // close() of the tested class may be interrupted
+public class CabWatchdogTest {
+    private static final int TEST_TIMEOUT = 30;
+    private static final long STALL_THRESHOLD_MILLIS = 50;
+
+    @Test
+    public void testAbortsUncommittedEntry() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final Cab<Long, Object> cab = new CabBackingOff<>(4, 100, 10);
+
+            cab.producerNext(); // the producer dies without committing the sequence 0
+
+            final long sequence = cab.producerNext();
+            cab.setEntry(sequence, 1L);
+            cab.producerCommit(sequence);
+
+            final AtomicReference<String> stall = new AtomicReference<>();
+
+            try (CabWatchdog watchdog = new CabWatchdog(STALL_THRESHOLD_MILLIS, TimeUnit.MILLISECONDS, (c, s) -> {
+                stall.set(s.getKind() + " " + s.getStalledSequence() + " " + s.getWindowSize() + " " +
+                        s.isCommitted(0) + " " + s.isCommitted(1));
+                assertTrue(c.producerAbort(s.getStalledSequence()));
+            })) {
+                watchdog.watch(cab);
+                watchdog.start();
+
+                assertEquals(1, cab.consumerNext()); // the aborted sequence is skipped
+                assertEquals(1L, cab.getEntry(1).longValue());
+                cab.consumerCommit(1);
+            }
+
+            assertEquals("UNCOMMITTED_ENTRY 0 2 false true", stall.get());
+        });
+    }
+
+    @Test
+    public void testReportsFullBuffer() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final Cab<Long, Object> cab = new CabBackingOff<>(2, 100, 10);
+
+            for (long i = 0; i < 2; i++) {
+                final long sequence = cab.producerNext();
+                cab.setEntry(sequence, i);
+                cab.producerCommit(sequence);
+            }
+
+            final CountDownLatch reported = new CountDownLatch(1);
+            final AtomicReference<CabStallSnapshot.Kind> kind = new AtomicReference<>();
+
+            try (CabWatchdog watchdog = new CabWatchdog(STALL_THRESHOLD_MILLIS, TimeUnit.MILLISECONDS, (c, s) -> {
+                kind.set(s.getKind());
+                reported.countDown();
+            })) {
+                watchdog.watch(cab);
+                watchdog.start();
+
+                reported.await();
+            }
+
+            assertEquals(CabStallSnapshot.Kind.FULL_BUFFER, kind.get());
+        });
+    }
+
+    @Test
+    public void testAbortsInElasticCab() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabElastic<Long, Object> cab = new CabElastic<>(2, 8, 100, 10);
+
+            final long aborted = cab.producerNext();
+            final long sequence = cab.producerNext();
+            cab.setEntry(sequence, 1L);
+            cab.producerCommit(sequence);
+
+            assertFalse(cab.producerAbort(sequence)); // already committed
+            assertTrue(cab.producerAbort(aborted));
+            assertFalse(cab.producerAbort(aborted)); // already aborted
+
+            assertEquals(sequence, cab.consumerNext());
+            assertEquals(1L, cab.getEntry(sequence).longValue());
+            cab.consumerCommit(sequence);
+        });
+    }
+
+    @Test
+    public void testRefusesStaleAndFutureSequences() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            refuseStaleAndFutureSequences(new CabYielding<>(2));
+            refuseStaleAndFutureSequences(new CabElastic<>(2, 2, 100, 10));
+        });
+    }
+
+    @Test
+    public void testSkipsLongRunOfAbortedEntries() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final int numberOfEntries = 1 << 17;
+
+            skipAbortedEntries(new CabBackingOff<>(numberOfEntries, 100, 10), numberOfEntries);
+            skipAbortedEntries(new CabElastic<>(numberOfEntries, numberOfEntries, 100, 10), numberOfEntries);
+        });
+    }
+
+    @Test
+    public void testAbortsSequenceOfRetiredRing() {
+        assertTimeout(ofSeconds(TEST_TIMEOUT), () -> {
+            final CabElastic<Long, Object> cab = new CabElastic<>(2, 16, 10, 100);
+
+            final int numberOfEntries = 200;
+
+            final Thread producer = new Thread(() -> {
+                try {
+                    for (long i = 0; i < numberOfEntries; i++) {
+                        final long sequence = cab.producerNext();
+                        cab.setEntry(sequence, i);
+                        cab.producerCommit(sequence);
+                    }
+                } catch (final ConsumerInterruptedException | InterruptedException e) {
+                    e.printStackTrace(System.err);
+                }
+            });
+            producer.start();
+
+            for (long i = 0; i < numberOfEntries; i++) { // a slow consumer grows the buffer
+                LockSupport.parkNanos(200_000);
+
+                final long sequence = cab.consumerNext();
+                assertEquals(i, cab.getEntry(sequence).longValue());
+                cab.consumerCommit(sequence);
+            }
+
+            producer.join();
+
+            assertTrue(cab.bufferSize() > 2);
+            assertFalse(cab.producerAbort(0)); // the first ring is unlinked already
+        });
+    }
+
+    private static void refuseStaleAndFutureSequences(final Cab<Long, Object> cab)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        produce(cab, 0L);
+        assertEquals(0, cab.consumerNext());
+        cab.consumerCommit(0);
+
+        produce(cab, 1L);
+        produce(cab, 2L); // reuses the slot of the sequence 0
+
+        assertFalse(cab.producerAbort(0)); // consumed already, the stamp of the sequence 2 must be kept
+        assertFalse(cab.producerAbort(3)); // not claimed yet, the stamp of the sequence 1 must be kept
+
+        for (long sequence = 1; sequence <= 2; sequence++) {
+            assertEquals(sequence, cab.consumerPoll());
+            assertEquals(sequence, cab.getEntry(sequence).longValue());
+            cab.consumerCommit(sequence);
+        }
+        assertEquals(Cab.NOTHING_AVAILABLE_SEQUENCE, cab.consumerPoll());
+    }
+
+    private static void produce(final Cab<Long, Object> cab, final long entry)
+            throws ConsumerInterruptedException, InterruptedException {
+
+        final long sequence = cab.producerNext();
+        cab.setEntry(sequence, entry);
+        cab.producerCommit(sequence);
+    }
+
+    private static void skipAbortedEntries(final Cab<Long, Object> cab, final int numberOfEntries)
+            throws ConsumerInterruptedException, InterruptedException {
+        for (int i = 0; i < numberOfEntries - 1; i++) {
+            assertTrue(cab.producerAbort(cab.producerNext()));
+        }
+
+        final long sequence = cab.producerNext();
+        cab.setEntry(sequence, 1L);
+        cab.producerCommit(sequence);
+
+        assertEquals(sequence, cab.consumerNext()); // the aborted entries are skipped without a deep stack
+        assertEquals(1L, cab.getEntry(sequence).longValue());
+        cab.consumerCommit(sequence);
+    }
+}